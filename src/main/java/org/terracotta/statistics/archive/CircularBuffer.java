@@ -16,42 +16,98 @@
  */
 package org.terracotta.statistics.archive;
 
-import java.util.Arrays;
+import java.lang.reflect.Array;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ToLongFunction;
 
 /**
+ * A fixed capacity ring buffer, overwriting its oldest element when full.
+ * <p>
+ *   Writers (serialized against each other) announce the slot they are about to overwrite through a {@code reserved}
+ *   count before writing it, and publish it through a {@code published} count afterwards.  Readers never lock: they
+ *   copy the published elements and then re-check the reserved count, retrying if a writer overwrote any element
+ *   they copied.  Readers therefore never block the writer, and always see a state the buffer actually held.
+ * </p>
+ *
  * @author cdennis
  */
 public class CircularBuffer<E> {
 
-  private final E[] buffer;
-  private int writeIndex;
-  private int size;
+  private final AtomicReferenceArray<E> buffer;
+  private volatile long reserved;
+  private volatile long published;
 
-  @SuppressWarnings("unchecked")
   public CircularBuffer(int size) {
-    this.buffer = (E[]) new Object[size];
+    this.buffer = new AtomicReferenceArray<>(size);
   }
 
   public int capacity() {
-    return buffer.length;
+    return buffer.length();
   }
 
   public synchronized E insert(E object) {
-    E old = buffer[writeIndex];
-    buffer[writeIndex] = object;
-    writeIndex++;
-    size = Math.max(writeIndex, size);
-    writeIndex %= buffer.length;
+    long index = published;
+    reserved = index + 1;
+    E old = buffer.getAndSet(slot(index), object);
+    published = index + 1;
     return old;
   }
 
-  public synchronized <T> T[] toArray(Class<T[]> type) {
-    if (size < buffer.length) {
-      return Arrays.copyOfRange(buffer, 0, writeIndex, type);
-    } else {
-      T[] copy = Arrays.copyOfRange(buffer, writeIndex, writeIndex + buffer.length, type);
-      System.arraycopy(buffer, 0, copy, buffer.length - writeIndex, writeIndex);
-      return copy;
+  public <T> T[] toArray(Class<T[]> type) {
+    while (true) {
+      long end = published;
+      long start = Math.max(0L, end - buffer.length());
+      T[] copy = copy(type, start, end);
+      if (reserved - buffer.length() <= start) {
+        return copy;
+      }
+    }
+  }
+
+  /**
+   * Returns the (oldest first) suffix of the buffer whose keys are at or after {@code since}.
+   * <p>
+   *   The suffix is found by binary search over the ring, so elements must have been inserted in non-decreasing key
+   *   order.  Only the suffix is copied.
+   * </p>
+   *
+   * @param type the array type
+   * @param key  element key function
+   * @param since inclusive lower bound on the keys
+   * @param <T> the array component type
+   * @return the suffix with keys at or after {@code since}
+   */
+  public <T> T[] toArraySince(Class<T[]> type, ToLongFunction<? super E> key, long since) {
+    while (true) {
+      long end = published;
+      long start = Math.max(0L, end - buffer.length());
+      long low = start;
+      long high = end;
+      while (low < high) {
+        long mid = (low + high) >>> 1;
+        if (key.applyAsLong(buffer.get(slot(mid))) < since) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      T[] copy = copy(type, low, end);
+      if (reserved - buffer.length() <= start) {
+        return copy;
+      }
     }
   }
+
+  @SuppressWarnings("unchecked")
+  private <T> T[] copy(Class<T[]> type, long from, long to) {
+    T[] copy = (T[]) Array.newInstance(type.getComponentType(), (int) (to - from));
+    for (long i = from; i < to; i++) {
+      copy[(int) (i - from)] = (T) buffer.get(slot(i));
+    }
+    return copy;
+  }
+
+  private int slot(long index) {
+    return (int) (index % buffer.length());
+  }
 }
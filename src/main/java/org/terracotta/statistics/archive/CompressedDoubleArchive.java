@@ -0,0 +1,439 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.archive;
+
+import org.terracotta.statistics.Sample;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.lang.Double.doubleToRawLongBits;
+import static java.lang.Double.longBitsToDouble;
+import static java.lang.Long.numberOfLeadingZeros;
+import static java.lang.Long.numberOfTrailingZeros;
+
+/**
+ * A compressed equivalent of {@link DoubleStatisticArchive}.
+ * <p>
+ *   Samples are bit packed into fixed size blocks of {@code long} words using the Gorilla encoding: timestamps as
+ *   delta-of-deltas and values as the XOR against the previous value.  Periodic timestamps and slowly changing values,
+ *   as produced by a {@link StatisticSampler}, then cost a few bits per sample instead of sixteen bytes.  Retention is
+ *   measured in blocks rather than samples: once all blocks are full the oldest is decoded to the overspill and its
+ *   storage reused, so appends do not allocate once every block exists.
+ * </p>
+ * <p>
+ *   Readers never lock.  They decode through a {@link Cursor}, and samples in a block that is recycled while it is
+ *   being read are skipped.  Timestamps must be non-decreasing.
+ * </p>
+ */
+public class CompressedDoubleArchive {
+
+  private static final int DEFAULT_BLOCK_WORDS = 64;
+
+  /*
+   * Largest encoding of a sample after the first in a block: a 68 bit timestamp and a 77 bit value.
+   */
+  private static final int MAX_SAMPLE_BITS = 68 + 77;
+
+  private final DoubleSampleConsumer overspill;
+  private final Block[] blocks;
+  private final int blockBits;
+  private final Decoder evictor = new Decoder();
+
+  private volatile long head;
+  private volatile long tail;
+
+  private Block current; // guarded by this
+  private int position; // guarded by this
+  private long previousTimestamp; // guarded by this
+  private long previousDelta; // guarded by this
+  private long previousBits; // guarded by this
+  private int previousLeading; // guarded by this
+  private int previousTrailing; // guarded by this
+
+  public CompressedDoubleArchive(int blocks) {
+    this(blocks, DEFAULT_BLOCK_WORDS, (timestamp, value) -> {});
+  }
+
+  /**
+   * Creates an archive of {@code blocks} blocks, each of {@code blockWords} words.
+   *
+   * @param blocks number of blocks retained
+   * @param blockWords size of each block in {@code long} words
+   * @param overspill consumer of samples evicted with the oldest block
+   * @throws IllegalArgumentException if there are no blocks, or the blocks are smaller than eight words
+   */
+  public CompressedDoubleArchive(int blocks, int blockWords, DoubleSampleConsumer overspill) throws IllegalArgumentException {
+    if (blocks <= 0) {
+      throw new IllegalArgumentException("Block count must be positive: " + blocks);
+    } else if (blockWords < 8 || blockWords > Integer.MAX_VALUE / Long.SIZE) {
+      throw new IllegalArgumentException("Invalid block size: " + blockWords);
+    }
+    this.blocks = new Block[blocks];
+    this.blockBits = blockWords * Long.SIZE;
+    this.overspill = overspill;
+  }
+
+  public synchronized void add(long timestamp, double value) {
+    long bits = doubleToRawLongBits(value);
+    Block block = current;
+    if (block == null || position + MAX_SAMPLE_BITS > blockBits) {
+      block = open(timestamp);
+      position = write(block.words, position, timestamp, Long.SIZE);
+      position = write(block.words, position, bits, Long.SIZE);
+      previousDelta = 0;
+      previousLeading = Long.SIZE;
+      previousTrailing = 0;
+    } else {
+      long delta = timestamp - previousTimestamp;
+      encodeTimestamp(block.words, delta - previousDelta);
+      encodeValue(block.words, bits ^ previousBits);
+      previousDelta = delta;
+    }
+    previousTimestamp = timestamp;
+    previousBits = bits;
+    block.count = block.count + 1;
+  }
+
+  /**
+   * Adds a boxed sample.
+   * <p>
+   *   Samples with a {@code null} value cannot be represented, and are ignored.
+   * </p>
+   *
+   * @param sample the sample to add
+   */
+  public void add(Sample<? extends Number> sample) {
+    Number value = sample.getSample();
+    if (value != null) {
+      add(sample.getTimestamp(), value.doubleValue());
+    }
+  }
+
+  public synchronized void clear() {
+    head = tail;
+    current = null;
+  }
+
+  /**
+   * Returns a cursor over the archived samples with a timestamp at or after {@code since}, oldest first.
+   *
+   * @param since inclusive lower bound on the timestamps
+   * @return a sample cursor
+   */
+  public Cursor cursor(long since) {
+    return new Cursor(since);
+  }
+
+  /**
+   * Passes every archived sample to {@code action}, oldest first.
+   *
+   * @param action the sample consumer
+   */
+  public void forEach(DoubleSampleConsumer action) {
+    forEach(Long.MIN_VALUE, action);
+  }
+
+  /**
+   * Passes every archived sample with a timestamp at or after {@code since} to {@code action}, oldest first.
+   *
+   * @param since inclusive lower bound on the timestamps
+   * @param action the sample consumer
+   */
+  public void forEach(long since, DoubleSampleConsumer action) {
+    Cursor cursor = cursor(since);
+    while (cursor.next()) {
+      action.accept(cursor.timestamp(), cursor.value());
+    }
+  }
+
+  public List<Sample<Double>> getArchive() {
+    return getArchive(Long.MIN_VALUE);
+  }
+
+  public List<Sample<Double>> getArchive(long since) {
+    List<Sample<Double>> samples = new ArrayList<>();
+    forEach(since, (timestamp, value) -> samples.add(new Sample<>(timestamp, value)));
+    return Collections.unmodifiableList(samples);
+  }
+
+  private Block open(long timestamp) {
+    long sequence = tail;
+    if (sequence - head == blocks.length) {
+      Block oldest = blocks[slot(head)];
+      evictor.reset(oldest);
+      for (int i = 0, count = oldest.count; i < count; i++) {
+        evictor.decode();
+        overspill.accept(evictor.timestamp, longBitsToDouble(evictor.bits));
+      }
+      head = head + 1;
+    }
+    int slot = slot(sequence);
+    Block block = blocks[slot];
+    if (block == null) {
+      block = blocks[slot] = new Block(blockBits / Long.SIZE);
+      block.sequence = sequence;
+    } else {
+      block.recycle(sequence);
+    }
+    block.firstTimestamp = timestamp;
+    current = block;
+    position = 0;
+    tail = sequence + 1;
+    return block;
+  }
+
+  private void encodeTimestamp(AtomicLongArray words, long deltaOfDelta) {
+    if (deltaOfDelta == 0) {
+      position = write(words, position, 0b0, 1);
+    } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+      position = write(words, position, 0b10, 2);
+      position = write(words, position, deltaOfDelta + 63, 7);
+    } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+      position = write(words, position, 0b110, 3);
+      position = write(words, position, deltaOfDelta + 255, 9);
+    } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+      position = write(words, position, 0b1110, 4);
+      position = write(words, position, deltaOfDelta + 2047, 12);
+    } else {
+      position = write(words, position, 0b1111, 4);
+      position = write(words, position, deltaOfDelta, Long.SIZE);
+    }
+  }
+
+  private void encodeValue(AtomicLongArray words, long xor) {
+    if (xor == 0) {
+      position = write(words, position, 0b0, 1);
+    } else {
+      int leading = Math.min(numberOfLeadingZeros(xor), 31);
+      int trailing = numberOfTrailingZeros(xor);
+      if (leading >= previousLeading && trailing >= previousTrailing) {
+        position = write(words, position, 0b10, 2);
+        position = write(words, position, xor >>> previousTrailing, Long.SIZE - previousLeading - previousTrailing);
+      } else {
+        int significant = Long.SIZE - leading - trailing;
+        position = write(words, position, 0b11, 2);
+        position = write(words, position, leading, 5);
+        position = write(words, position, significant, 6);
+        position = write(words, position, xor >>> trailing, significant);
+        previousLeading = leading;
+        previousTrailing = trailing;
+      }
+    }
+  }
+
+  private int slot(long sequence) {
+    return (int) (sequence % blocks.length);
+  }
+
+  /*
+   * Writes the low order bits of value at the given bit position, returning the position after them.
+   */
+  private static int write(AtomicLongArray words, int position, long value, int bits) {
+    long masked = value & mask(bits);
+    int word = position >>> 6;
+    int available = Long.SIZE - (position & 63);
+    if (bits <= available) {
+      words.set(word, words.get(word) | (masked << (available - bits)));
+    } else {
+      int remaining = bits - available;
+      words.set(word, words.get(word) | (masked >>> remaining));
+      words.set(word + 1, masked << (Long.SIZE - remaining));
+    }
+    return position + bits;
+  }
+
+  /*
+   * Reads bits from the given bit position, reading past the end of the block as zeroes.
+   */
+  private static long read(AtomicLongArray words, int position, int bits) {
+    int word = position >>> 6;
+    if (word >= words.length()) {
+      return 0L;
+    }
+    int available = Long.SIZE - (position & 63);
+    long value = words.get(word) & mask(available);
+    if (bits <= available) {
+      return value >>> (available - bits);
+    } else {
+      int remaining = bits - available;
+      long low = word + 1 < words.length() ? words.get(word + 1) >>> (Long.SIZE - remaining) : 0L;
+      return (value << remaining) | low;
+    }
+  }
+
+  private static long mask(int bits) {
+    return bits == Long.SIZE ? -1L : (1L << bits) - 1;
+  }
+
+  private static final class Block {
+
+    private final AtomicLongArray words;
+    private volatile long sequence;
+    private volatile long firstTimestamp;
+    private volatile int count;
+
+    Block(int words) {
+      this.words = new AtomicLongArray(words);
+    }
+
+    /*
+     * The sequence is changed first, so a reader that sees any cleared word also sees the new sequence.
+     */
+    void recycle(long newSequence) {
+      sequence = newSequence;
+      count = 0;
+      for (int i = 0; i < words.length(); i++) {
+        words.set(i, 0L);
+      }
+    }
+  }
+
+  /*
+   * Streaming decoder state for a single block.  Decoding a recycled block yields garbage, but never fails.
+   */
+  private static final class Decoder {
+
+    private AtomicLongArray words;
+    private int index;
+    private int position;
+    private long timestamp;
+    private long delta;
+    private long bits;
+    private int leading;
+    private int trailing;
+
+    void reset(Block block) {
+      words = block.words;
+      index = 0;
+      position = 0;
+    }
+
+    void decode() {
+      if (index++ == 0) {
+        timestamp = read(Long.SIZE);
+        bits = read(Long.SIZE);
+        delta = 0;
+        leading = Long.SIZE;
+        trailing = 0;
+      } else {
+        delta += decodeDeltaOfDelta();
+        timestamp += delta;
+        if (read(1) != 0) {
+          if (read(1) != 0) {
+            leading = (int) read(5);
+            int significant = (int) read(6);
+            trailing = Long.SIZE - leading - (significant == 0 ? Long.SIZE : significant);
+          }
+          bits ^= read(Long.SIZE - leading - trailing) << trailing;
+        }
+      }
+    }
+
+    private long decodeDeltaOfDelta() {
+      if (read(1) == 0) {
+        return 0;
+      } else if (read(1) == 0) {
+        return read(7) - 63;
+      } else if (read(1) == 0) {
+        return read(9) - 255;
+      } else if (read(1) == 0) {
+        return read(12) - 2047;
+      } else {
+        return read(Long.SIZE);
+      }
+    }
+
+    private long read(int count) {
+      long value = CompressedDoubleArchive.read(words, position, count);
+      position += count;
+      return value;
+    }
+  }
+
+  /**
+   * A streaming, non-locking, view of the archived samples.
+   * <p>
+   *   The cursor is positioned before the first sample; each call to {@link #next()} decodes the next one.
+   * </p>
+   */
+  public final class Cursor {
+
+    private final long since;
+    private final long end;
+    private final Decoder decoder = new Decoder();
+
+    private long sequence;
+    private Block block;
+    private int count;
+
+    private Cursor(long since) {
+      this.since = since;
+      long start = head;
+      this.end = tail;
+      long first = Math.max(start, end - 1);
+      while (first > start) {
+        Block candidate = blocks[slot(first)];
+        if (candidate != null && candidate.sequence == first && candidate.firstTimestamp <= since) {
+          break;
+        }
+        first--;
+      }
+      this.sequence = first - 1;
+    }
+
+    /**
+     * Advances to the next sample.
+     *
+     * @return {@code true} if there was another sample
+     */
+    public boolean next() {
+      while (true) {
+        if (block == null || decoder.index >= count) {
+          if (++sequence >= end) {
+            block = null;
+            return false;
+          }
+          block = blocks[slot(sequence)];
+          if (block == null || block.sequence != sequence) {
+            block = null;
+          } else {
+            count = block.count;
+            decoder.reset(block);
+          }
+        } else {
+          decoder.decode();
+          if (block.sequence != sequence) {
+            block = null;
+          } else if (decoder.timestamp >= since) {
+            return true;
+          }
+        }
+      }
+    }
+
+    public long timestamp() {
+      return decoder.timestamp;
+    }
+
+    public double value() {
+      return longBitsToDouble(decoder.bits);
+    }
+  }
+}
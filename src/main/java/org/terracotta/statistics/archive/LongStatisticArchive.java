@@ -0,0 +1,97 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.archive;
+
+import org.terracotta.statistics.Sample;
+
+import java.util.List;
+
+/**
+ * A {@link StatisticArchive} equivalent for {@code long} samples.
+ * <p>
+ *   Samples are held in parallel primitive timestamp and value rings rather than as boxed {@link Sample} instances,
+ *   which is roughly a third of the footprint.  Readers never lock, and can consume the samples without allocation via
+ *   {@link #forEach(long, LongSampleConsumer)}.  The {@link Sample} based methods adapt to the {@link StatisticArchive}
+ *   API, so that for example {@code archive::add} can be used as a {@link StatisticSampler} sink.
+ * </p>
+ */
+public class LongStatisticArchive {
+
+  private final RawStatisticArchive archive;
+
+  public LongStatisticArchive(int size) {
+    this(size, (timestamp, value) -> {});
+  }
+
+  public LongStatisticArchive(int size, LongSampleConsumer overspill) {
+    this.archive = new RawStatisticArchive(size, overspill);
+  }
+
+  public void setCapacity(int samples) {
+    archive.setCapacity(samples);
+  }
+
+  public void add(long timestamp, long value) {
+    archive.add(timestamp, value);
+  }
+
+  /**
+   * Adds a boxed sample.
+   * <p>
+   *   Samples with a {@code null} value cannot be represented, and are ignored.
+   * </p>
+   *
+   * @param sample the sample to add
+   */
+  public void add(Sample<? extends Number> sample) {
+    Number value = sample.getSample();
+    if (value != null) {
+      add(sample.getTimestamp(), value.longValue());
+    }
+  }
+
+  public void clear() {
+    archive.clear();
+  }
+
+  /**
+   * Passes every archived sample to {@code action}, oldest first.
+   *
+   * @param action the sample consumer
+   */
+  public void forEach(LongSampleConsumer action) {
+    forEach(Long.MIN_VALUE, action);
+  }
+
+  /**
+   * Passes every archived sample with a timestamp at or after {@code since} to {@code action}, oldest first.
+   *
+   * @param since inclusive lower bound on the timestamps
+   * @param action the sample consumer
+   */
+  public void forEach(long since, LongSampleConsumer action) {
+    archive.forEach(since, action);
+  }
+
+  public List<Sample<Long>> getArchive() {
+    return getArchive(Long.MIN_VALUE);
+  }
+
+  public List<Sample<Long>> getArchive(long since) {
+    return archive.getArchive(since, Long::valueOf);
+  }
+}
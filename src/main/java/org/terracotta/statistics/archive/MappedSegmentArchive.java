@@ -0,0 +1,463 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.archive;
+
+import org.terracotta.statistics.Sample;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Consumer;
+
+import static java.lang.Double.doubleToRawLongBits;
+import static java.lang.Double.longBitsToDouble;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A persistent archive of timestamped primitive samples, stored in memory mapped segment files.
+ * <p>
+ *   Samples are appended as fixed width records (timestamp, value and a check word) to the newest segment.  When a
+ *   segment fills it is forced to disk and a new one is started, retiring the oldest segment once {@code maxSegments}
+ *   are held.  Segments are indexed by their first timestamp, so reads binary search for the segment and then the
+ *   record at which to start.  Nothing is serialized, and the records themselves live in mapped pages rather than the
+ *   heap.
+ * </p>
+ * <p>
+ *   Readers never lock, but pin each segment while reading it.  A retired segment is unmapped, and its file deleted,
+ *   only once the last reader has released it, so that files are never deleted while mapped (which fails on Windows).
+ *   Closing the archive retires every segment without deleting it.
+ * </p>
+ * <p>
+ *   Each segment file starts with a header recording its capacity, so an archive can be reopened with a different
+ *   {@code recordsPerSegment}.  On reopening a directory the newest segment is scanned for its last valid record, so a
+ *   record torn by a crash is discarded.  Values are stored as raw 64 bit words, so an archive should only be used for
+ *   one of {@code long} or {@code double} samples.  A typical use is as the overspill of a {@link LongStatisticArchive}
+ *   or {@link DoubleStatisticArchive} (e.g. {@code new DoubleStatisticArchive(3600, mapped::add)}).  A timestamp
+ *   earlier than the last one appended (e.g. after a clock step) is clamped to it, so that the records stay sorted.
+ * </p>
+ */
+public class MappedSegmentArchive implements Closeable {
+
+  private static final String SUFFIX = ".segment";
+  private static final int RECORD_SIZE = 3 * Long.BYTES;
+  private static final long CHECK = 0x5374617453616d70L;
+  private static final long MAGIC = 0x5365676d656e7431L;
+
+  private static final Consumer<ByteBuffer> UNMAPPER = unmapper();
+
+  private final Path directory;
+  private final int recordsPerSegment;
+  private final int maxSegments;
+
+  // guarded by this
+  private long lastTimestamp = Long.MIN_VALUE;
+
+  private volatile Segment[] segments;
+
+  /**
+   * Opens (or creates) an archive in the given directory.
+   *
+   * @param directory segment directory
+   * @param recordsPerSegment number of samples per new segment file
+   * @param maxSegments number of segments to retain
+   * @throws IOException if the existing segments cannot be opened
+   * @throws IllegalArgumentException if the segment size or count is not positive
+   */
+  public MappedSegmentArchive(Path directory, int recordsPerSegment, int maxSegments) throws IOException, IllegalArgumentException {
+    if (recordsPerSegment <= 0 || recordsPerSegment >= Integer.MAX_VALUE / RECORD_SIZE) {
+      throw new IllegalArgumentException("Invalid records per segment: " + recordsPerSegment);
+    } else if (maxSegments <= 0) {
+      throw new IllegalArgumentException("Segment count must be positive: " + maxSegments);
+    }
+    this.directory = Files.createDirectories(directory);
+    this.recordsPerSegment = recordsPerSegment;
+    this.maxSegments = maxSegments;
+
+    List<Long> numbers = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        try {
+          numbers.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length()), 16));
+        } catch (NumberFormatException e) {
+          //not one of ours
+        }
+      }
+    }
+    Collections.sort(numbers);
+    List<Segment> opened = new ArrayList<>();
+    for (int i = 0; i < numbers.size(); i++) {
+      Segment segment = open(numbers.get(i));
+      if (segment.recover(i == numbers.size() - 1)) {
+        opened.add(segment);
+      } else {
+        segment.retire(true);
+      }
+    }
+    while (opened.size() > maxSegments) {
+      opened.remove(0).retire(true);
+    }
+    if (!opened.isEmpty()) {
+      Segment newest = opened.get(opened.size() - 1);
+      lastTimestamp = newest.timestamp(newest.count - 1);
+    }
+    this.segments = opened.toArray(new Segment[0]);
+  }
+
+  /**
+   * Appends a sample, rolling to a new segment if the newest is full.
+   * <p>
+   *   A timestamp earlier than the last one appended is clamped to it.
+   * </p>
+   *
+   * @param timestamp sample timestamp
+   * @param value sample value
+   * @throws IllegalStateException if the archive is closed
+   * @throws UncheckedIOException if a new segment cannot be created
+   */
+  public synchronized void add(long timestamp, long value) {
+    Segment[] current = segments;
+    if (current == null) {
+      throw new IllegalStateException("Archive is closed");
+    }
+    Segment last = current.length == 0 ? null : current[current.length - 1];
+    if (last == null || last.count == last.capacity) {
+      last = roll(current, last);
+    }
+    lastTimestamp = Long.max(lastTimestamp, timestamp);
+    last.append(lastTimestamp, value);
+  }
+
+  /**
+   * Appends a sample, storing the raw bits of {@code value}.
+   *
+   * @param timestamp sample timestamp
+   * @param value sample value
+   */
+  public void add(long timestamp, double value) {
+    add(timestamp, doubleToRawLongBits(value));
+  }
+
+  /**
+   * Passes every archived sample with a timestamp at or after {@code since} to {@code action}, oldest first.
+   *
+   * @param since inclusive lower bound on the timestamps
+   * @param action the sample consumer
+   */
+  public void forEachLong(long since, LongSampleConsumer action) {
+    Segment[] read = segments;
+    if (read == null || read.length == 0) {
+      return;
+    }
+    int low = 0;
+    int high = read.length - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (read[mid].count > 0 && read[mid].firstTimestamp < since) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    for (int s = low; s < read.length; s++) {
+      Segment segment = read[s];
+      if (segment.acquire()) {
+        try {
+          int count = segment.count;
+          //segments that were empty when searched may since have filled with earlier samples
+          for (int i = segment.search(since, count); i < count; i++) {
+            action.accept(segment.timestamp(i), segment.value(i));
+          }
+        } finally {
+          segment.release();
+        }
+      }
+    }
+  }
+
+  /**
+   * Passes every archived sample with a timestamp at or after {@code since} to {@code action}, oldest first.
+   *
+   * @param since inclusive lower bound on the timestamps
+   * @param action the sample consumer
+   */
+  public void forEachDouble(long since, DoubleSampleConsumer action) {
+    forEachLong(since, (timestamp, value) -> action.accept(timestamp, longBitsToDouble(value)));
+  }
+
+  public List<Sample<Long>> getLongArchive(long since) {
+    List<Sample<Long>> samples = new ArrayList<>();
+    forEachLong(since, (timestamp, value) -> samples.add(new Sample<>(timestamp, value)));
+    return Collections.unmodifiableList(samples);
+  }
+
+  public List<Sample<Double>> getDoubleArchive(long since) {
+    List<Sample<Double>> samples = new ArrayList<>();
+    forEachDouble(since, (timestamp, value) -> samples.add(new Sample<>(timestamp, value)));
+    return Collections.unmodifiableList(samples);
+  }
+
+  /**
+   * Forces the newest segment to disk.
+   */
+  public synchronized void force() {
+    Segment[] current = segments;
+    if (current != null && current.length > 0) {
+      current[current.length - 1].buffer.force();
+    }
+  }
+
+  /**
+   * Forces the newest segment to disk and releases every mapping.
+   * <p>
+   *   Mappings still in use by a concurrent reader are released when that reader completes.
+   * </p>
+   */
+  @Override
+  public synchronized void close() {
+    force();
+    Segment[] closed = segments;
+    segments = null;
+    if (closed != null) {
+      for (Segment segment : closed) {
+        segment.retire(false);
+      }
+    }
+  }
+
+  private Segment roll(Segment[] current, Segment last) {
+    try {
+      if (last != null) {
+        last.buffer.force();
+      }
+      Segment next = create(last == null ? 0L : last.number + 1);
+      int retained = Math.min(current.length, maxSegments - 1);
+      Segment[] rolled = Arrays.copyOfRange(current, current.length - retained, current.length + 1);
+      rolled[retained] = next;
+      segments = rolled;
+      for (int i = 0; i < current.length - retained; i++) {
+        current[i].retire(true);
+      }
+      return next;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private Segment create(long number) throws IOException {
+    Path file = segmentFile(number);
+    Files.deleteIfExists(file);
+    try (FileChannel channel = FileChannel.open(file, CREATE_NEW, READ, WRITE)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (recordsPerSegment + 1L) * RECORD_SIZE);
+      buffer.putLong(0, MAGIC);
+      buffer.putLong(Long.BYTES, recordsPerSegment);
+      buffer.putLong(2 * Long.BYTES, MAGIC ^ recordsPerSegment ^ CHECK);
+      return new Segment(number, file, buffer, recordsPerSegment);
+    }
+  }
+
+  private Segment open(long number) throws IOException {
+    Path file = segmentFile(number);
+    try (FileChannel channel = FileChannel.open(file, READ, WRITE)) {
+      long size = Math.min(channel.size(), Integer.MAX_VALUE);
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      int capacity = 0;
+      if (size >= RECORD_SIZE && buffer.getLong(0) == MAGIC) {
+        long declared = buffer.getLong(Long.BYTES);
+        if ((MAGIC ^ declared ^ CHECK) == buffer.getLong(2 * Long.BYTES) && declared > 0 && (declared + 1) * RECORD_SIZE <= size) {
+          capacity = (int) declared;
+        }
+      }
+      return new Segment(number, file, buffer, capacity);
+    }
+  }
+
+  private Path segmentFile(long number) {
+    return directory.resolve(String.format("%016x", number) + SUFFIX);
+  }
+
+  /*
+   * Finds a way to eagerly unmap a buffer: Unsafe.invokeCleaner on Java 9+, the buffer's Cleaner on Java 8, and
+   * otherwise leaves the mapping to be released when the buffer is collected.
+   */
+  private static Consumer<ByteBuffer> unmapper() {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      Object unsafe = theUnsafe.get(null);
+      return buffer -> {
+        try {
+          invokeCleaner.invoke(unsafe, buffer);
+        } catch (ReflectiveOperationException e) {
+          //leave it to the garbage collector
+        }
+      };
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      try {
+        Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+        Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+        return buffer -> {
+          try {
+            clean.invoke(cleaner.invoke(buffer));
+          } catch (ReflectiveOperationException f) {
+            //leave it to the garbage collector
+          }
+        };
+      } catch (ReflectiveOperationException | RuntimeException f) {
+        return buffer -> {};
+      }
+    }
+  }
+
+  private static final class Segment {
+
+    private static final AtomicIntegerFieldUpdater<Segment> STATE_UPDATER = AtomicIntegerFieldUpdater.newUpdater(Segment.class, "state");
+    private static final int RETIRED = Integer.MIN_VALUE;
+
+    private final long number;
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private volatile int count;
+    private volatile long firstTimestamp;
+
+    /*
+     * The number of pinning readers, with the sign bit set once retired.
+     */
+    private volatile int state;
+    private volatile boolean delete;
+
+    Segment(long number, Path file, MappedByteBuffer buffer, int capacity) {
+      this.number = number;
+      this.file = file;
+      this.buffer = buffer;
+      this.capacity = capacity;
+    }
+
+    /*
+     * Counts the valid records, scanning the newest segment record by record.  Older segments were forced when full,
+     * so only their last record is checked.  Segment files are created zero filled, and a zero record fails the check
+     * word, so the scan stops at the first record that was never (or only partly) written.
+     */
+    boolean recover(boolean newest) {
+      int valid = 0;
+      if (newest || capacity == 0 || !isValid(capacity - 1)) {
+        while (valid < capacity && isValid(valid)) {
+          valid++;
+        }
+      } else {
+        valid = capacity;
+      }
+      if (valid > 0) {
+        firstTimestamp = timestamp(0);
+      }
+      count = valid;
+      return valid > 0;
+    }
+
+    void append(long timestamp, long value) {
+      int index = count;
+      int offset = (index + 1) * RECORD_SIZE;
+      buffer.putLong(offset, timestamp);
+      buffer.putLong(offset + Long.BYTES, value);
+      buffer.putLong(offset + 2 * Long.BYTES, timestamp ^ value ^ CHECK);
+      if (index == 0) {
+        firstTimestamp = timestamp;
+      }
+      count = index + 1;
+    }
+
+    boolean acquire() {
+      while (true) {
+        int current = state;
+        if (current < 0) {
+          return false;
+        } else if (STATE_UPDATER.compareAndSet(this, current, current + 1)) {
+          return true;
+        }
+      }
+    }
+
+    void release() {
+      if (STATE_UPDATER.decrementAndGet(this) == RETIRED) {
+        destroy();
+      }
+    }
+
+    void retire(boolean deleteFile) {
+      delete = deleteFile;
+      if (STATE_UPDATER.getAndUpdate(this, s -> s | RETIRED) == 0) {
+        destroy();
+      }
+    }
+
+    private void destroy() {
+      UNMAPPER.accept(buffer);
+      if (delete) {
+        try {
+          Files.deleteIfExists(file);
+        } catch (IOException e) {
+          //a surviving segment is trimmed by retention when the archive is next opened
+        }
+      }
+    }
+
+    long timestamp(int index) {
+      return buffer.getLong((index + 1) * RECORD_SIZE);
+    }
+
+    long value(int index) {
+      return buffer.getLong((index + 1) * RECORD_SIZE + Long.BYTES);
+    }
+
+    int search(long since, int count) {
+      int low = 0;
+      int high = count;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (timestamp(mid) < since) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    private boolean isValid(int index) {
+      int offset = (index + 1) * RECORD_SIZE;
+      return (buffer.getLong(offset) ^ buffer.getLong(offset + Long.BYTES) ^ CHECK) == buffer.getLong(offset + 2 * Long.BYTES);
+    }
+  }
+}
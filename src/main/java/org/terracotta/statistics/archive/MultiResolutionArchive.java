@@ -0,0 +1,250 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.archive;
+
+import org.terracotta.statistics.Sample;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.Double.doubleToRawLongBits;
+import static java.lang.Double.longBitsToDouble;
+import static java.lang.Math.floorDiv;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A round-robin archive of numeric samples kept at multiple resolutions.
+ * <p>
+ *   Samples are kept as is in a raw ring, and are also consolidated in to aligned time buckets for each coarser tier
+ *   (e.g. 1s samples for an hour, 1 minute averages for a day, and 10 minute averages for 30 days).  Each tier updates
+ *   a running count, sum, minimum, maximum and last value for its current bucket, and appends the consolidated value
+ *   when a sample arrives in a later bucket.  All of this is primitive, so appending never allocates.  Samples are
+ *   consolidated directly from the raw samples, so for example averages of averages are never taken.
+ * </p>
+ * <p>
+ *   Timestamps are in milliseconds, and are expected to be (mostly) increasing: late samples are folded in to the
+ *   current bucket of each tier.  Buckets still being consolidated are not visible in their tier, so reads fill in the
+ *   time since a tier's last completed bucket from the finer tiers.
+ * </p>
+ */
+public class MultiResolutionArchive {
+
+  private static final LongSampleConsumer DISCARD = (timestamp, value) -> {};
+
+  private final Consolidation[] consolidations;
+  private final PrimitiveRing[] rings;
+  private final long[] resolutions;
+
+  // guarded by this
+  private final long[] epochs;
+  private final long[] counts;
+  private final double[] sums;
+  private final double[] minima;
+  private final double[] maxima;
+  private final double[] lasts;
+
+  /**
+   * @param rawCapacity the number of raw samples to keep
+   * @param consolidation the consolidation function of any coarser tiers that do not specify their own
+   * @param tiers the coarser tiers, in increasing order of resolution
+   * @throws IllegalArgumentException if the tier resolutions are not increasing
+   */
+  public MultiResolutionArchive(int rawCapacity, Consolidation consolidation, Tier... tiers) throws IllegalArgumentException {
+    this.consolidations = new Consolidation[tiers.length + 1];
+    this.rings = new PrimitiveRing[tiers.length + 1];
+    this.resolutions = new long[tiers.length + 1];
+    this.rings[0] = new PrimitiveRing(rawCapacity);
+    for (int i = 0; i < tiers.length; i++) {
+      if (tiers[i].resolution <= resolutions[i]) {
+        throw new IllegalArgumentException("Tier resolutions must be increasing: " + tiers[i].resolution + "ms after " + resolutions[i] + "ms");
+      }
+      rings[i + 1] = new PrimitiveRing(tiers[i].capacity);
+      resolutions[i + 1] = tiers[i].resolution;
+      consolidations[i + 1] = tiers[i].consolidation == null ? consolidation : tiers[i].consolidation;
+    }
+    this.epochs = new long[rings.length];
+    this.counts = new long[rings.length];
+    this.sums = new double[rings.length];
+    this.minima = new double[rings.length];
+    this.maxima = new double[rings.length];
+    this.lasts = new double[rings.length];
+  }
+
+  public synchronized void add(long timestamp, double value) {
+    rings[0].insert(timestamp, doubleToRawLongBits(value), DISCARD);
+    for (int t = 1; t < rings.length; t++) {
+      long epoch = floorDiv(timestamp, resolutions[t]);
+      if (counts[t] == 0) {
+        epochs[t] = epoch;
+      } else if (epoch > epochs[t]) {
+        double consolidated = consolidations[t].consolidate(counts[t], sums[t], minima[t], maxima[t], lasts[t]);
+        rings[t].insert(epochs[t] * resolutions[t], doubleToRawLongBits(consolidated), DISCARD);
+        epochs[t] = epoch;
+        counts[t] = 0;
+      }
+      if (counts[t]++ == 0) {
+        sums[t] = value;
+        minima[t] = value;
+        maxima[t] = value;
+      } else {
+        sums[t] += value;
+        minima[t] = Math.min(minima[t], value);
+        maxima[t] = Math.max(maxima[t], value);
+      }
+      lasts[t] = value;
+    }
+  }
+
+  /**
+   * Adds a boxed sample.
+   * <p>
+   *   Samples with a {@code null} value cannot be represented, and are ignored.
+   * </p>
+   *
+   * @param sample the sample to add
+   */
+  public void add(Sample<? extends Number> sample) {
+    Number value = sample.getSample();
+    if (value != null) {
+      add(sample.getTimestamp(), value.doubleValue());
+    }
+  }
+
+  /**
+   * Passes the archived samples with a timestamp at or after {@code since} to {@code action}, oldest first.
+   * <p>
+   *   Samples are read from the finest tier that still holds everything since {@code since}, or the coarsest tier if
+   *   none do.  A consolidated tier only holds completed buckets, so the samples after its last completed bucket are
+   *   then read from the finer tiers (and ultimately the raw samples) in the same way.
+   * </p>
+   *
+   * @param since inclusive lower bound on the timestamps
+   * @param action the sample consumer
+   */
+  public void forEach(long since, DoubleSampleConsumer action) {
+    forEachBits(since, (timestamp, value) -> action.accept(timestamp, longBitsToDouble(value)));
+  }
+
+  public List<Sample<Double>> getArchive() {
+    return getArchive(Long.MIN_VALUE);
+  }
+
+  public List<Sample<Double>> getArchive(long since) {
+    List<Sample<Double>> samples = new ArrayList<>();
+    forEach(since, (timestamp, value) -> samples.add(new Sample<>(timestamp, value)));
+    return Collections.unmodifiableList(samples);
+  }
+
+  private void forEachBits(long since, LongSampleConsumer action) {
+    long[] pending = pendingBuckets();
+    int tier = tierCovering(since, rings.length);
+    while (tier > 0) {
+      long end = pending[tier];
+      rings[tier].forEach(since, (timestamp, value) -> {
+        if (timestamp < end) {
+          action.accept(timestamp, value);
+        }
+      });
+      if (end == Long.MAX_VALUE) {
+        return;
+      }
+      since = Long.max(since, end);
+      tier = tierCovering(since, tier);
+    }
+    rings[0].forEach(since, action);
+  }
+
+  /*
+   * The finest tier below limit that holds everything since since, or the coarsest tier below limit if none do.
+   */
+  private int tierCovering(long since, int limit) {
+    for (int t = 0; t < limit; t++) {
+      if (rings[t].covers(since)) {
+        return t;
+      }
+    }
+    return limit - 1;
+  }
+
+  /*
+   * The start of the bucket each tier is still consolidating, or Long.MAX_VALUE if it has none.
+   */
+  private synchronized long[] pendingBuckets() {
+    long[] pending = new long[rings.length];
+    for (int t = 1; t < rings.length; t++) {
+      pending[t] = counts[t] == 0 ? Long.MAX_VALUE : epochs[t] * resolutions[t];
+    }
+    return pending;
+  }
+
+  /**
+   * A consolidated tier of the archive.
+   */
+  public static final class Tier {
+
+    private final long resolution;
+    private final int capacity;
+    private final Consolidation consolidation;
+
+    private Tier(long resolution, int capacity, Consolidation consolidation) {
+      this.resolution = resolution;
+      this.capacity = capacity;
+      this.consolidation = consolidation;
+    }
+
+    /**
+     * Creates a tier holding {@code capacity} buckets of the given resolution, consolidated using the archive's
+     * consolidation function.
+     *
+     * @param resolution bucket length
+     * @param unit bucket length unit
+     * @param capacity number of buckets
+     * @return a tier definition
+     * @throws IllegalArgumentException if the resolution is less than a millisecond, or the capacity is not positive
+     */
+    public static Tier of(long resolution, TimeUnit unit, int capacity) throws IllegalArgumentException {
+      return create(resolution, unit, capacity, null);
+    }
+
+    /**
+     * Creates a tier holding {@code capacity} buckets of the given resolution, consolidated using
+     * {@code consolidation}.
+     *
+     * @param resolution bucket length
+     * @param unit bucket length unit
+     * @param capacity number of buckets
+     * @param consolidation the consolidation function of this tier
+     * @return a tier definition
+     * @throws IllegalArgumentException if the resolution is less than a millisecond, or the capacity is not positive
+     */
+    public static Tier of(long resolution, TimeUnit unit, int capacity, Consolidation consolidation) throws IllegalArgumentException {
+      return create(resolution, unit, capacity, requireNonNull(consolidation));
+    }
+
+    private static Tier create(long resolution, TimeUnit unit, int capacity, Consolidation consolidation) throws IllegalArgumentException {
+      long millis = unit.toMillis(resolution);
+      if (millis <= 0) {
+        throw new IllegalArgumentException("Tier resolution must be at least 1ms: " + resolution + " " + unit);
+      } else if (capacity <= 0) {
+        throw new IllegalArgumentException("Tier capacity must be positive: " + capacity);
+      }
+      return new Tier(millis, capacity, consolidation);
+    }
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.archive;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed capacity ring of timestamped {@code long} values held in a pair of parallel primitive arrays.
+ * <p>
+ *   This follows the same protocol as {@link CircularBuffer}: writers (serialized against each other) reserve a slot
+ *   before overwriting it and publish it afterwards, and readers validate what they read against the reservation
+ *   count without ever locking.
+ * </p>
+ */
+final class PrimitiveRing {
+
+  private final AtomicLongArray timestamps;
+  private final AtomicLongArray values;
+  private volatile long reserved;
+  private volatile long published;
+
+  PrimitiveRing(int capacity) {
+    this.timestamps = new AtomicLongArray(capacity);
+    this.values = new AtomicLongArray(capacity);
+  }
+
+  int capacity() {
+    return timestamps.length();
+  }
+
+  /**
+   * @return the number of values currently held
+   */
+  int size() {
+    return (int) Math.min(published, capacity());
+  }
+
+  /**
+   * Returns {@code true} if this ring holds every value inserted at or after {@code since}.
+   * <p>
+   *   That is either because nothing has been overwritten yet, or because the oldest value held is at or before
+   *   {@code since}, and so everything overwritten preceded it.
+   * </p>
+   *
+   * @param since timestamp
+   * @return {@code true} if no values at or after {@code since} have been overwritten
+   */
+  boolean covers(long since) {
+    while (true) {
+      long end = published;
+      if (end <= capacity()) {
+        return true;
+      }
+      long oldest = end - capacity();
+      long timestamp = timestamps.get(slot(oldest));
+      if (reserved - capacity() <= oldest) {
+        return timestamp <= since;
+      }
+    }
+  }
+
+  /**
+   * Appends a value, passing any value it displaces to {@code overspill}.
+   *
+   * @param timestamp sample timestamp
+   * @param value sample value
+   * @param overspill consumer of displaced samples
+   */
+  synchronized void insert(long timestamp, long value, LongSampleConsumer overspill) {
+    long index = published;
+    int slot = slot(index);
+    reserved = index + 1;
+    long oldTimestamp = timestamps.getAndSet(slot, timestamp);
+    long oldValue = values.getAndSet(slot, value);
+    published = index + 1;
+    if (index >= capacity()) {
+      overspill.accept(oldTimestamp, oldValue);
+    }
+  }
+
+  /**
+   * Passes each value with a timestamp at or after {@code since} to {@code action}, oldest first.
+   * <p>
+   *   The first value is found by binary search, so values must have been inserted in non-decreasing timestamp order.
+   *   Values overwritten while the iteration is in progress are skipped, but every value passed to {@code action} is
+   *   one the ring actually held.
+   * </p>
+   *
+   * @param since inclusive lower bound on the timestamps
+   * @param action the sample consumer
+   */
+  void forEach(long since, LongSampleConsumer action) {
+    long end;
+    long index;
+    while (true) {
+      end = published;
+      long start = Math.max(0L, end - capacity());
+      index = search(since, start, end);
+      if (reserved - capacity() <= start) {
+        break;
+      }
+    }
+    while (index < end) {
+      int slot = slot(index);
+      long timestamp = timestamps.get(slot);
+      long value = values.get(slot);
+      long oldest = reserved - capacity();
+      if (index >= oldest) {
+        action.accept(timestamp, value);
+        index++;
+      } else {
+        index = oldest;
+      }
+    }
+  }
+
+  /*
+   * Binary search for the first logical index in [low, high) with a timestamp at or after since.
+   */
+  private long search(long since, long low, long high) {
+    while (low < high) {
+      long mid = (low + high) >>> 1;
+      if (timestamps.get(slot(mid)) < since) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private int slot(long index) {
+    return (int) (index % capacity());
+  }
+}
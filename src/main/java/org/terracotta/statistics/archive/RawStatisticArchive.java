@@ -0,0 +1,86 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.archive;
+
+import org.terracotta.statistics.Sample;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/**
+ * The shared implementation of the primitive statistic archives, holding samples as raw 64 bit words.
+ * <p>
+ *   {@link LongStatisticArchive} and {@link DoubleStatisticArchive} are thin views over this, converting values to and
+ *   from their raw bits at the edges.
+ * </p>
+ */
+final class RawStatisticArchive {
+
+  private final LongSampleConsumer overspill;
+
+  private volatile int size;
+  private volatile PrimitiveRing ring;
+
+  RawStatisticArchive(int size, LongSampleConsumer overspill) {
+    this.size = size;
+    this.overspill = overspill;
+  }
+
+  synchronized void setCapacity(int samples) {
+    if (samples != size) {
+      size = samples;
+      PrimitiveRing read = ring;
+      if (read != null) {
+        PrimitiveRing newRing = new PrimitiveRing(size);
+        read.forEach(Long.MIN_VALUE, (timestamp, value) -> newRing.insert(timestamp, value, overspill));
+        ring = newRing;
+      }
+    }
+  }
+
+  synchronized void add(long timestamp, long bits) {
+    if (ring == null) {
+      ring = new PrimitiveRing(size);
+    }
+    ring.insert(timestamp, bits, overspill);
+  }
+
+  synchronized void clear() {
+    ring = null;
+  }
+
+  void forEach(long since, LongSampleConsumer action) {
+    PrimitiveRing read = ring;
+    if (read != null) {
+      read.forEach(since, action);
+    }
+  }
+
+  <T extends Serializable> List<Sample<T>> getArchive(long since, LongFunction<T> decoder) {
+    PrimitiveRing read = ring;
+    if (read == null) {
+      return Collections.emptyList();
+    } else {
+      List<Sample<T>> samples = new ArrayList<>(read.size());
+      read.forEach(since, (timestamp, value) -> samples.add(new Sample<>(timestamp, decoder.apply(value))));
+      return Collections.unmodifiableList(samples);
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.archive;
+
+/**
+ * The standard functions for consolidating the samples in a time bucket in to a single value.
+ */
+public enum StandardConsolidation implements Consolidation {
+
+  MINIMUM {
+    @Override
+    public double consolidate(long count, double sum, double minimum, double maximum, double last) {
+      return minimum;
+    }
+  },
+  MAXIMUM {
+    @Override
+    public double consolidate(long count, double sum, double minimum, double maximum, double last) {
+      return maximum;
+    }
+  },
+  AVERAGE {
+    @Override
+    public double consolidate(long count, double sum, double minimum, double maximum, double last) {
+      return sum / count;
+    }
+  },
+  LAST {
+    @Override
+    public double consolidate(long count, double sum, double minimum, double maximum, double last) {
+      return last;
+    }
+  },
+  SUM {
+    @Override
+    public double consolidate(long count, double sum, double minimum, double maximum, double last) {
+      return sum;
+    }
+  }
+}
@@ -21,7 +21,6 @@ import org.terracotta.statistics.Sample;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.function.Consumer;
 
@@ -30,8 +29,6 @@ import java.util.function.Consumer;
  */
 public class StatisticArchive<T extends Serializable> {
 
-  private static final Comparator<Sample<?>> TIMESTAMPED_COMPARATOR = Comparator.comparingLong(Sample::getTimestamp);
-
   private final Consumer<? super Sample<T>> overspill;
 
   private volatile int size;
@@ -85,17 +82,12 @@ public class StatisticArchive<T extends Serializable> {
     if (read == null) {
       return Collections.emptyList();
     } else {
-      Sample<T> e = new Sample<>(since, null);
       @SuppressWarnings("unchecked")
-      Sample<T>[] array = (Sample<T>[]) read.toArray(Sample[].class);
-      int pos = Arrays.binarySearch(array, e, TIMESTAMPED_COMPARATOR);
-      if (pos < 0) {
-        pos = -pos - 1;
-      }
-      if (pos >= array.length) {
+      Sample<T>[] suffix = (Sample<T>[]) read.toArraySince(Sample[].class, Sample::getTimestamp, since);
+      if (suffix.length == 0) {
         return Collections.emptyList();
       } else {
-        return Collections.unmodifiableList(Arrays.asList(Arrays.copyOfRange(array, pos, array.length)));
+        return Collections.unmodifiableList(Arrays.asList(suffix));
       }
     }
   }
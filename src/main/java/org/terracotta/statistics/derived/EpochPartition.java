@@ -0,0 +1,87 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A reusable slice of a sliding window, stamped with the epoch (time / partition size) it currently holds.
+ * <p>
+ *   Writers claim a partition for their epoch before recording in to it.  The first writer of a later epoch resets the
+ *   partition in place, while writers of an earlier epoch find it has moved on and drop their event.  A partition is
+ *   live while its end lies after the start of the window.
+ * </p>
+ */
+public abstract class EpochPartition {
+
+  private static final long RESETTING = Long.MIN_VALUE;
+  private static final long UNUSED = Long.MIN_VALUE + 1;
+
+  private static final AtomicLongFieldUpdater<EpochPartition> EPOCH_UPDATER = AtomicLongFieldUpdater.newUpdater(EpochPartition.class, "epoch");
+
+  private volatile long epoch = UNUSED;
+
+  /**
+   * Returns the epoch this partition holds.
+   *
+   * @return the current epoch, or {@code Long.MIN_VALUE} if unused or being reset
+   */
+  public final long epoch() {
+    long current = epoch;
+    return current == UNUSED ? RESETTING : current;
+  }
+
+  /**
+   * Returns {@code true} if this partition holds an epoch that ends after {@code startTime}.
+   *
+   * @param startTime the start of the window
+   * @param partitionSize the partition size
+   * @return {@code true} if this partition is within the window
+   */
+  public final boolean isLive(long startTime, long partitionSize) {
+    long current = epoch;
+    return current != UNUSED && current != RESETTING && (current + 1) * partitionSize > startTime;
+  }
+
+  /**
+   * Claims this partition for {@code target}, lazily resetting it if it holds an older epoch.
+   *
+   * @param target the epoch to record
+   * @return {@code false} if the partition has already moved on to a later epoch
+   */
+  public final boolean claim(long target) {
+    while (true) {
+      long current = epoch;
+      if (current == target) {
+        return true;
+      } else if (current == RESETTING) {
+        Thread.yield();
+      } else if (current > target) {
+        return false;
+      } else if (EPOCH_UPDATER.compareAndSet(this, current, RESETTING)) {
+        reset();
+        epoch = target;
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Clears the partition's content ahead of it holding a new epoch.
+   */
+  protected abstract void reset();
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import org.terracotta.statistics.StatisticType;
+import org.terracotta.statistics.ValueStatistic;
+import org.terracotta.statistics.derived.histogram.StripedExponentialHistogram;
+import org.terracotta.statistics.observer.ChainedEventObserver;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.terracotta.statistics.Time.time;
+
+/**
+ * Counts the events observed over a sliding time window.
+ * <p>
+ *   Counts are maintained by a striped {@link org.terracotta.statistics.derived.histogram.ExponentialHistogram}, and so
+ *   are accurate to within a relative error of {@code epsilon} while occupying only {@code O(log(N) / epsilon)} space.
+ *   Attach an instance through an {@link OperationResultFilter} to count a specific set of operation outcomes.
+ * </p>
+ */
+public class EventCountSlidingWindow implements ChainedEventObserver, ValueStatistic<Long> {
+
+  private static final double DEFAULT_EPSILON = 0.01;
+
+  private final StripedExponentialHistogram histogram;
+
+  public EventCountSlidingWindow(long time, TimeUnit unit) {
+    this(DEFAULT_EPSILON, time, unit);
+  }
+
+  public EventCountSlidingWindow(double epsilon, long time, TimeUnit unit) {
+    this.histogram = new StripedExponentialHistogram(epsilon, unit.toNanos(time));
+  }
+
+  @Override
+  public Long value() {
+    return histogram.expire(time());
+  }
+
+  @Override
+  public StatisticType type() {
+    return StatisticType.COUNTER;
+  }
+
+  @Override
+  public void event(long time, long latency) {
+    histogram.insert(time);
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import org.terracotta.statistics.StatisticType;
+import org.terracotta.statistics.ValueStatistic;
+import org.terracotta.statistics.observer.ChainedEventObserver;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.lang.Math.exp;
+import static java.lang.Math.pow;
+import static org.terracotta.statistics.Time.time;
+
+/**
+ * An exponentially weighted moving average of an event rate.
+ * <p>
+ *   Events are counted in to a single striped counter, which is folded in to the average once per tick.  Ticks happen
+ *   lazily, on the first event or read after each tick boundary, so the statistic holds constant state regardless of
+ *   the averaging period.
+ * </p>
+ */
+public class EventRateExponentialMovingAverage implements ChainedEventObserver, ValueStatistic<Double> {
+
+  private static final long DEFAULT_TICK_SECONDS = 5;
+
+  private final LongAdder uncounted = new LongAdder();
+  private final AtomicLong lastTick;
+  private final long tickNanos;
+  private final double alpha;
+
+  private volatile boolean initialized;
+  private volatile double rate;
+
+  /**
+   * Creates a rate average with the given time constant, ticking every 5 seconds.
+   *
+   * @param time averaging time constant
+   * @param unit time constant unit
+   */
+  public EventRateExponentialMovingAverage(long time, TimeUnit unit) {
+    this(time, unit, DEFAULT_TICK_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Creates a rate average with the given time constant and tick interval.
+   *
+   * @param time averaging time constant
+   * @param unit time constant unit
+   * @param tick tick interval
+   * @param tickUnit tick interval unit
+   * @throws IllegalArgumentException if the tick interval is shorter than a nanosecond
+   */
+  public EventRateExponentialMovingAverage(long time, TimeUnit unit, long tick, TimeUnit tickUnit) throws IllegalArgumentException {
+    this.tickNanos = tickUnit.toNanos(tick);
+    if (tickNanos <= 0) {
+      throw new IllegalArgumentException("Tick interval must be at least 1ns: " + tick + " " + tickUnit);
+    }
+    this.alpha = 1 - exp(-((double) tickNanos) / unit.toNanos(time));
+    this.lastTick = new AtomicLong(time());
+  }
+
+  public static EventRateExponentialMovingAverage oneMinute() {
+    return new EventRateExponentialMovingAverage(1, TimeUnit.MINUTES);
+  }
+
+  public static EventRateExponentialMovingAverage fiveMinute() {
+    return new EventRateExponentialMovingAverage(5, TimeUnit.MINUTES);
+  }
+
+  public static EventRateExponentialMovingAverage fifteenMinute() {
+    return new EventRateExponentialMovingAverage(15, TimeUnit.MINUTES);
+  }
+
+  @Override
+  public Double value() {
+    return rateUsingSeconds();
+  }
+
+  @Override
+  public StatisticType type() {
+    return StatisticType.RATE;
+  }
+
+  public Double rateUsingSeconds() {
+    tickIfNecessary(time());
+    return rate * TimeUnit.SECONDS.toNanos(1);
+  }
+
+  public Double rate(TimeUnit base) {
+    return rateUsingSeconds() * ((double) base.toNanos(1) / TimeUnit.SECONDS.toNanos(1));
+  }
+
+  @Override
+  public void event(long time, long latency) {
+    tickIfNecessary(time);
+    uncounted.increment();
+  }
+
+  /*
+   * The thread that claims a tick boundary folds the pending count in to the first elapsed tick, and decays the average
+   * over any further (idle) ticks.
+   */
+  private void tickIfNecessary(long now) {
+    long last = lastTick.get();
+    long age = now - last;
+    if (age >= tickNanos) {
+      long ticks = age / tickNanos;
+      if (lastTick.compareAndSet(last, last + ticks * tickNanos)) {
+        double instantRate = ((double) uncounted.sumThenReset()) / tickNanos;
+        double folded = initialized ? rate + alpha * (instantRate - rate) : instantRate;
+        initialized = true;
+        rate = folded * pow(1 - alpha, ticks - 1);
+      }
+    }
+  }
+}
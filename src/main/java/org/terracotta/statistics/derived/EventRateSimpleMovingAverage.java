@@ -20,37 +20,53 @@ import org.terracotta.statistics.StatisticType;
 import org.terracotta.statistics.ValueStatistic;
 import org.terracotta.statistics.observer.ChainedEventObserver;
 
-import java.util.Iterator;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
 
+import static java.lang.Math.floorDiv;
+import static java.lang.Math.floorMod;
 import static org.terracotta.statistics.Time.time;
 
 /**
+ * An event rate averaged over a sliding window.
+ * <p>
+ *   Events are counted in to a fixed ring of partitions, each covering an aligned {@code window / 10} slice of time.
+ *   Partitions are reused in place as the window slides, so recording an event never allocates, and reading the rate
+ *   is a scan of the ring.
+ * </p>
+ *
  * @author cdennis
  */
 public class EventRateSimpleMovingAverage implements ChainedEventObserver, ValueStatistic<Double> {
 
   private static final int PARTITION_COUNT = 10;
 
-  private final Queue<CounterPartition> archive = new ConcurrentLinkedQueue<>();
-  private final AtomicReference<CounterPartition> activePartition;
-
-  private volatile long windowSize;
-  private volatile long partitionSize;
+  private volatile Ring ring;
 
   public EventRateSimpleMovingAverage(long time, TimeUnit unit) {
-    this.windowSize = unit.toNanos(time);
-    this.partitionSize = windowSize / PARTITION_COUNT;
-    this.activePartition = new AtomicReference<>(new CounterPartition(time(), partitionSize));
+    this.ring = new Ring(unit.toNanos(time), PARTITION_COUNT);
   }
 
-  public void setWindow(long time, TimeUnit unit) {
-    this.windowSize = unit.toNanos(time);
-    this.partitionSize = windowSize / PARTITION_COUNT;
+  /**
+   * Changes the window size.
+   * <p>
+   *   Counts already recorded are carried over in to the partitions of the new window that contain their start time.
+   *   Events that race with the change may be lost.
+   * </p>
+   *
+   * @param time window size
+   * @param unit window size unit
+   */
+  public synchronized void setWindow(long time, TimeUnit unit) {
+    Ring previous = ring;
+    Ring next = new Ring(unit.toNanos(time), PARTITION_COUNT);
+    for (CounterPartition partition : previous.partitions) {
+      long epoch = partition.epoch();
+      if (epoch != Long.MIN_VALUE) {
+        next.add(epoch * previous.partitionSize, partition.sum());
+      }
+    }
+    this.ring = next;
   }
 
   @Override
@@ -64,26 +80,15 @@ public class EventRateSimpleMovingAverage implements ChainedEventObserver, Value
   }
 
   public Double rateUsingSeconds() {
+    final Ring r = ring;
     final long endTime = time();
-    final long startTime = endTime - windowSize;
+    final long startTime = endTime - r.windowSize;
 
-    CounterPartition current = activePartition.get();
-    long count;
+    long count = 0;
     long actualStartTime = startTime;
-    if (current.isBefore(startTime)) {
-      count = 0;
-    } else {
-      count = current.sum();
-      actualStartTime = Math.min(actualStartTime, current.start());
-    }
-    for (Iterator<CounterPartition> it = archive.iterator(); it.hasNext(); ) {
-      CounterPartition partition = it.next();
-      if (partition == current) {
-        break;
-      } else if (partition.isBefore(startTime)) {
-        it.remove();
-      } else {
-        actualStartTime = Math.min(actualStartTime, partition.start());
+    for (CounterPartition partition : r.partitions) {
+      if (partition.isLive(startTime, r.partitionSize)) {
+        actualStartTime = Math.min(actualStartTime, partition.epoch() * r.partitionSize);
         count += partition.sum();
       }
     }
@@ -101,59 +106,52 @@ public class EventRateSimpleMovingAverage implements ChainedEventObserver, Value
 
   @Override
   public void event(long time, long latency) {
-    while (true) {
-      CounterPartition partition = activePartition.get();
-      if (partition.targetFor(time)) {
-        partition.increment();
-        return;
-      } else {
-        CounterPartition newPartition = new CounterPartition(time, partitionSize);
-        if (activePartition.compareAndSet(partition, newPartition)) {
-          archive(partition);
-          newPartition.increment();
-          return;
-        }
-      }
-    }
+    ring.add(time, 1L);
   }
 
-  private void archive(CounterPartition partition) {
-    archive.add(partition);
+  private static final class Ring {
+
+    private final long windowSize;
+    private final long partitionSize;
+    private final CounterPartition[] partitions;
 
-    long startTime = partition.end() - windowSize;
-    for (CounterPartition earliest = archive.peek(); earliest != null && earliest.isBefore(startTime); earliest = archive.peek()) {
-      if (archive.remove(earliest)) {
-        break;
+    Ring(long windowSize, int partitionCount) {
+      this.windowSize = windowSize;
+      this.partitionSize = Math.max(1L, windowSize / partitionCount);
+      //one extra partition holds the partially expired slice at the start of the window
+      this.partitions = new CounterPartition[partitionCount + 1];
+      for (int i = 0; i < partitions.length; i++) {
+        partitions[i] = new CounterPartition();
       }
     }
-  }
-
-  static class CounterPartition extends LongAdder {
-
-    private static final long serialVersionUID = 1L;
-
-    private final long start;
-    private final long end;
 
-    CounterPartition(long start, long length) {
-      this.start = start;
-      this.end = start + length;
+    void add(long time, long count) {
+      long epoch = floorDiv(time, partitionSize);
+      CounterPartition partition = partitions[(int) floorMod(epoch, (long) partitions.length)];
+      if (partition.claim(epoch)) {
+        partition.add(count);
+      }
     }
+  }
 
-    public boolean targetFor(long time) {
-      return end > time;
-    }
+  /**
+   * A reusable counter, stamped with the epoch (time / partition size) it is currently counting.
+   */
+  static class CounterPartition extends EpochPartition {
+
+    private final LongAdder count = new LongAdder();
 
-    public boolean isBefore(long time) {
-      return end < time;
+    long sum() {
+      return count.sum();
     }
 
-    public long start() {
-      return start;
+    void add(long x) {
+      count.add(x);
     }
 
-    public long end() {
-      return end;
+    @Override
+    protected void reset() {
+      count.reset();
     }
   }
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import org.terracotta.statistics.derived.latency.DefaultLatencyHistogramStatistic;
+import org.terracotta.statistics.derived.latency.LatencyHistogramStatistic;
+import org.terracotta.statistics.observer.ChainedOperationObserver;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+
+/**
+ * Samples the CPU time and allocated bytes of one in every {@code n} operations (per thread).
+ * <p>
+ *   Sampled operations read the thread's CPU time and allocated bytes in {@link #begin(long)} and again in
+ *   {@link #end(long, long, Enum)}, and record the differences in to per-result histograms.  Unsampled operations
+ *   only decrement a thread local countdown, the JMX calls are skipped entirely.  Allocated bytes are only available
+ *   on JVMs exposing {@code com.sun.management.ThreadMXBean}, and each measurement is only made if it is both
+ *   supported and enabled when the sampler is created.
+ * </p>
+ * <p>
+ *   Operations nested within another on the same thread (e.g. an instrumented operation that calls another) are not
+ *   sampled, nor do they count towards the interval.  Their usage is included in that of the outermost operation, whose
+ *   baseline they would otherwise overwrite.
+ * </p>
+ *
+ * @param <T> operation result type
+ */
+public class OperationResourceSampler<T extends Enum<T>> implements ChainedOperationObserver<T> {
+
+  private static final int COUNTDOWN = 0;
+  private static final int CPU_TIME = 1;
+  private static final int ALLOCATED = 2;
+  private static final int SAMPLED = 3;
+  private static final int DEPTH = 4;
+
+  private final int interval;
+  private final ThreadMXBean threads;
+  private final com.sun.management.ThreadMXBean allocations;
+  private final boolean cpuTimeEnabled;
+  private final DefaultLatencyHistogramStatistic[] cpuTime;
+  private final DefaultLatencyHistogramStatistic[] allocatedBytes;
+  private final ThreadLocal<long[]> state;
+
+  /**
+   * @param type        operation result type
+   * @param interval    sample one in {@code interval} operations
+   * @param phi         histogram bucket bias factor
+   * @param bucketCount number of histogram buckets
+   * @param window      histogram sliding window
+   */
+  public OperationResourceSampler(Class<T> type, int interval, double phi, int bucketCount, Duration window) {
+    if (interval <= 0) {
+      throw new IllegalArgumentException("Sampling interval must be positive: " + interval);
+    }
+    this.interval = interval;
+    this.state = ThreadLocal.withInitial(() -> new long[] {interval, 0L, 0L, 0L, 0L});
+    this.threads = ManagementFactory.getThreadMXBean();
+    this.cpuTimeEnabled = threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean extended = (com.sun.management.ThreadMXBean) threads;
+      this.allocations = extended.isThreadAllocatedMemorySupported() && extended.isThreadAllocatedMemoryEnabled() ? extended : null;
+    } else {
+      this.allocations = null;
+    }
+
+    int results = type.getEnumConstants().length;
+    this.cpuTime = new DefaultLatencyHistogramStatistic[results];
+    this.allocatedBytes = new DefaultLatencyHistogramStatistic[results];
+    for (int i = 0; i < results; i++) {
+      cpuTime[i] = new DefaultLatencyHistogramStatistic(phi, bucketCount, window);
+      allocatedBytes[i] = new DefaultLatencyHistogramStatistic(phi, bucketCount, window);
+    }
+  }
+
+  @Override
+  public void begin(long time) {
+    long[] s = state.get();
+    if (s[DEPTH]++ > 0) {
+      return;
+    }
+    if (--s[COUNTDOWN] <= 0) {
+      s[COUNTDOWN] = interval;
+      s[SAMPLED] = 1L;
+      s[ALLOCATED] = allocations == null ? 0L : allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+      s[CPU_TIME] = cpuTimeEnabled ? threads.getCurrentThreadCpuTime() : 0L;
+    } else {
+      s[SAMPLED] = 0L;
+    }
+  }
+
+  @Override
+  public void end(long time, long latency, T result) {
+    long[] s = state.get();
+    if (s[DEPTH] > 0 && --s[DEPTH] > 0) {
+      return;
+    }
+    if (s[SAMPLED] != 0L) {
+      s[SAMPLED] = 0L;
+      if (cpuTimeEnabled) {
+        cpuTime[result.ordinal()].event(time, threads.getCurrentThreadCpuTime() - s[CPU_TIME]);
+      }
+      if (allocations != null) {
+        allocatedBytes[result.ordinal()].event(time, allocations.getThreadAllocatedBytes(Thread.currentThread().getId()) - s[ALLOCATED]);
+      }
+    }
+  }
+
+  /**
+   * Returns the distribution of CPU time (in nanoseconds) consumed by sampled operations with the given result.
+   *
+   * @param result operation result
+   * @return CPU time distribution
+   */
+  public LatencyHistogramStatistic cpuTime(T result) {
+    return cpuTime[result.ordinal()];
+  }
+
+  /**
+   * Returns the distribution of bytes allocated by sampled operations with the given result.
+   *
+   * @param result operation result
+   * @return allocated bytes distribution
+   */
+  public LatencyHistogramStatistic allocatedBytes(T result) {
+    return allocatedBytes[result.ordinal()];
+  }
+
+  /**
+   * @return {@code true} if CPU time is being measured
+   */
+  public boolean isCpuTimeMeasured() {
+    return cpuTimeEnabled;
+  }
+
+  /**
+   * @return {@code true} if allocated bytes are being measured
+   */
+  public boolean isAllocationMeasured() {
+    return allocations != null;
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import org.terracotta.statistics.Time;
+import org.terracotta.statistics.observer.ChainedOperationObserver;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static java.lang.Math.floorDiv;
+
+/**
+ * Captures the {@code k} slowest operations in each (aligned) tumbling window as exemplars.
+ * <p>
+ *   The latency of the current k<sup>th</sup> slowest exemplar is published as a volatile threshold, so ordinary
+ *   operations are rejected with a single volatile read and comparison.  Only operations slower than the threshold (or
+ *   the first operations in a new window) take the lock and enter the fixed size min-heap of exemplars.  For randomly
+ *   ordered latencies that is only {@code O(k log(n))} of the {@code n} operations in a window.
+ * </p>
+ *
+ * @param <T> operation result type
+ */
+public class SlowestOperations<T extends Enum<T>> implements ChainedOperationObserver<T> {
+
+  private static final Comparator<Exemplar<?>> SLOWEST_FIRST = Comparator.comparingLong(Exemplar::latency);
+
+  private final long window;
+  private final Supplier<? extends Serializable> tagSupplier;
+  private final Exemplar<?>[] heap;
+
+  private volatile long threshold = Long.MIN_VALUE;
+
+  // guarded by this, and published (for the fast path) by the write to threshold
+  private long windowEnd = Long.MIN_VALUE;
+  private int size;
+  private List<Exemplar<T>> previous = Collections.emptyList();
+
+  /**
+   * @param k      number of exemplars to keep per window
+   * @param window window size
+   * @param unit   window size unit
+   */
+  public SlowestOperations(int k, long window, TimeUnit unit) {
+    this(k, window, unit, () -> null);
+  }
+
+  /**
+   * @param k           number of exemplars to keep per window
+   * @param window      window size
+   * @param unit        window size unit
+   * @param tagSupplier supplies a tag for each captured exemplar (evaluated on the operation's thread, and only for
+   *                    captured operations)
+   */
+  public SlowestOperations(int k, long window, TimeUnit unit, Supplier<? extends Serializable> tagSupplier) {
+    if (k <= 0) {
+      throw new IllegalArgumentException("Exemplar count must be positive: " + k);
+    }
+    this.window = unit.toNanos(window);
+    if (this.window <= 0) {
+      throw new IllegalArgumentException("Window must be positive: " + window + " " + unit);
+    }
+    this.tagSupplier = tagSupplier;
+    this.heap = new Exemplar<?>[k];
+  }
+
+  @Override
+  public void begin(long time) {
+    //no-op
+  }
+
+  @Override
+  public void end(long time, long latency, T result) {
+    if (latency <= threshold && time < windowEnd) {
+      return;
+    }
+    capture(time, latency, result);
+  }
+
+  private synchronized void capture(long time, long latency, T result) {
+    if (time >= windowEnd) {
+      rotate(time);
+    } else if (size == heap.length && latency <= heap[0].latency) {
+      return;
+    }
+    Exemplar<T> exemplar = new Exemplar<>(time, latency, result, Thread.currentThread().getName(), tagSupplier.get());
+    if (size < heap.length) {
+      heap[size] = exemplar;
+      siftUp(size++);
+    } else {
+      heap[0] = exemplar;
+      siftDown(0);
+    }
+    threshold = size == heap.length ? heap[0].latency : Long.MIN_VALUE;
+  }
+
+  /**
+   * Returns the slowest operations of the current window, slowest first.
+   *
+   * @return current window exemplars
+   */
+  public synchronized List<Exemplar<T>> current() {
+    long now = Time.time();
+    if (now >= windowEnd) {
+      rotate(now);
+    }
+    return sorted(Arrays.asList(heap).subList(0, size));
+  }
+
+  /**
+   * Returns the slowest operations of the most recently completed window, slowest first.
+   *
+   * @return previous window exemplars
+   */
+  public synchronized List<Exemplar<T>> previous() {
+    long now = Time.time();
+    if (now >= windowEnd) {
+      rotate(now);
+    }
+    return previous;
+  }
+
+  private void rotate(long time) {
+    long end = (floorDiv(time, window) + 1) * window;
+    previous = end - window == windowEnd ? sorted(Arrays.asList(heap).subList(0, size)) : Collections.emptyList();
+    Arrays.fill(heap, null);
+    size = 0;
+    windowEnd = end;
+    threshold = Long.MIN_VALUE;
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Exemplar<T>> sorted(List<Exemplar<?>> exemplars) {
+    List<Exemplar<T>> list = new ArrayList<>(exemplars.size());
+    for (Exemplar<?> exemplar : exemplars) {
+      list.add((Exemplar<T>) exemplar);
+    }
+    list.sort(SLOWEST_FIRST.reversed());
+    return Collections.unmodifiableList(list);
+  }
+
+  private void siftUp(int index) {
+    Exemplar<?> exemplar = heap[index];
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      if (heap[parent].latency <= exemplar.latency) {
+        break;
+      }
+      heap[index] = heap[parent];
+      index = parent;
+    }
+    heap[index] = exemplar;
+  }
+
+  private void siftDown(int index) {
+    Exemplar<?> exemplar = heap[index];
+    int half = size >>> 1;
+    while (index < half) {
+      int child = 2 * index + 1;
+      if (child + 1 < size && heap[child + 1].latency < heap[child].latency) {
+        child++;
+      }
+      if (exemplar.latency <= heap[child].latency) {
+        break;
+      }
+      heap[index] = heap[child];
+      index = child;
+    }
+    heap[index] = exemplar;
+  }
+
+  /**
+   * A captured operation.
+   *
+   * @param <T> operation result type
+   */
+  public static final class Exemplar<T extends Enum<T>> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long time;
+    private final long latency;
+    private final T result;
+    private final String thread;
+    private final Serializable tag;
+
+    Exemplar(long time, long latency, T result, String thread, Serializable tag) {
+      this.time = time;
+      this.latency = latency;
+      this.result = result;
+      this.thread = thread;
+      this.tag = tag;
+    }
+
+    /**
+     * @return operation end time
+     */
+    public long time() {
+      return time;
+    }
+
+    public long latency() {
+      return latency;
+    }
+
+    public T result() {
+      return result;
+    }
+
+    /**
+     * @return name of the thread that completed the operation
+     */
+    public String thread() {
+      return thread;
+    }
+
+    /**
+     * @return the caller supplied tag, or {@code null}
+     */
+    public Serializable tag() {
+      return tag;
+    }
+
+    @Override
+    public String toString() {
+      return "Exemplar{" +
+          "time=" + time +
+          ", latency=" + latency +
+          ", result=" + result +
+          ", thread='" + thread + '\'' +
+          ", tag=" + tag +
+          '}';
+    }
+  }
+}
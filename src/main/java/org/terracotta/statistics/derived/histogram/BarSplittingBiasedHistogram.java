@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.function.Supplier;
 
 import static java.lang.Math.nextDown;
 import static java.lang.Math.nextUp;
@@ -46,7 +47,7 @@ public class BarSplittingBiasedHistogram implements Histogram {
   private final int barCount;
   private final int bucketCount;
   private final double barEpsilon;
-  private final long window;
+  private final Supplier<Bar> barFactory;
   private final double phi;
   private final double alphaPhi;
   private final double ratio;
@@ -54,6 +55,8 @@ public class BarSplittingBiasedHistogram implements Histogram {
   private final double[] maxSizeTable;
 
   private long size;
+  private Bar spare;
+  private long nextExpiry = Long.MAX_VALUE;
 
   /**
    * Create a histogram maintained over a sliding time window.
@@ -77,13 +80,38 @@ public class BarSplittingBiasedHistogram implements Histogram {
    * @param window sliding window size
    */
   public BarSplittingBiasedHistogram(double maxCoefficient, double phi, int expansionFactor, int bucketCount, double barEpsilon, long window) {
+    this(maxCoefficient, phi, expansionFactor, bucketCount, barEpsilon, () -> new Bar(barEpsilon, window));
+  }
+
+  /**
+   * Create a histogram maintained over a sliding time window, whose bars store event times compactly.
+   * <p>
+   *   The constructed histogram is as {@link #BarSplittingBiasedHistogram(double, double, int, int, double, long)},
+   *   but with bar event times quantized to {@code granularity}.
+   * </p>
+   *
+   * @param maxCoefficient relative split threshold
+   * @param phi histogram bucket bias factor
+   * @param expansionFactor number of bars per bucket
+   * @param bucketCount number of buckets
+   * @param barEpsilon bar count relative error
+   * @param window sliding window size
+   * @param granularity bar event time granularity
+   * @throws IllegalArgumentException if the granularity is not supported for this window
+   * @see ExponentialHistogram#ExponentialHistogram(double, long, long)
+   */
+  public BarSplittingBiasedHistogram(double maxCoefficient, double phi, int expansionFactor, int bucketCount, double barEpsilon, long window, long granularity) throws IllegalArgumentException {
+    this(maxCoefficient, phi, expansionFactor, bucketCount, barEpsilon, () -> new Bar(barEpsilon, window, granularity));
+  }
+
+  private BarSplittingBiasedHistogram(double maxCoefficient, double phi, int expansionFactor, int bucketCount, double barEpsilon, Supplier<Bar> barFactory) {
     this.bucketCount = bucketCount;
     this.barEpsilon = barEpsilon;
-    this.window = window;
+    this.barFactory = barFactory;
     this.barCount = bucketCount * expansionFactor;
 
     this.bars = new ArrayList<>(barCount);
-    this.bars.add(new Bar(barEpsilon, window));
+    this.bars.add(barFactory.get());
     this.phi = phi;
 
     /*
@@ -138,6 +166,49 @@ public class BarSplittingBiasedHistogram implements Histogram {
     this(DEFAULT_MAX_COEFFICIENT, phi, DEFAULT_EXPANSION_FACTOR, bucketCount, DEFAULT_EXP_HISTOGRAM_EPSILON, window);
   }
 
+  /**
+   * Create a histogram that is not windowed, and so never expires events.
+   * <p>
+   *   The constructed histogram is:
+   * </p>
+   * <ul>
+   *   <li>consists of {@code bucketCount} buckets</li>
+   *   <li>where {@code b1.size() ~= b0.size * phi}</li>
+   *   <li>with each bucket internally composed of {@code expansionFactor} bars</li>
+   *   <li>with each bar maintaining an exact count</li>
+   *   <li>where bars are split when there size exceeds {@code maxCoefficient} of their target size</li>
+   * </ul>
+   * Unwindowed histograms are intended as the building blocks of coarser windowing schemes, such as
+   * {@link TimeSlicedHistogram}.
+   *
+   * @param maxCoefficient relative split threshold
+   * @param phi histogram bucket bias factor
+   * @param expansionFactor number of bars per bucket
+   * @param bucketCount number of buckets
+   * @return an unwindowed histogram
+   */
+  public static BarSplittingBiasedHistogram unwindowed(double maxCoefficient, double phi, int expansionFactor, int bucketCount) {
+    return new BarSplittingBiasedHistogram(maxCoefficient, phi, expansionFactor, bucketCount, 0.0, Bar::new);
+  }
+
+  /**
+   * Create a histogram that is not windowed, and so never expires events.
+   * <p>
+   *   The constructed histogram is:
+   * </p>
+   * <ul>
+   *   <li>consists of {@code bucketCount} buckets</li>
+   *   <li>where {@code b1.size() ~= b0.size * phi}</li>
+   * </ul>
+   *
+   * @param phi histogram bucket bias factor
+   * @param bucketCount number of buckets
+   * @return an unwindowed histogram
+   */
+  public static BarSplittingBiasedHistogram unwindowed(double phi, int bucketCount) {
+    return unwindowed(DEFAULT_MAX_COEFFICIENT, phi, DEFAULT_EXPANSION_FACTOR, bucketCount);
+  }
+
   /**
    * Record an event of the given {@code value} occuring at he given {@code time}
    *
@@ -149,6 +220,35 @@ public class BarSplittingBiasedHistogram implements Histogram {
     Bar bar = bars.get(barIndex);
     long before = bar.count();
     bar.insert(value, time);
+    inserted(bar, barIndex, before);
+  }
+
+  /**
+   * Record {@code count} events of the given {@code value} occuring at the given {@code time}
+   * <p>
+   *   The events are inserted in to their bar in bulk.
+   * </p>
+   *
+   * @param value event value
+   * @param time event time
+   * @param count event count
+   * @throws IllegalArgumentException if {@code count} is negative
+   */
+  @Override
+  public void event(double value, long time, long count) throws IllegalArgumentException {
+    if (count < 0) {
+      throw new IllegalArgumentException("negative count");
+    } else if (count > 0) {
+      int barIndex = getBarIndex(value);
+      Bar bar = bars.get(barIndex);
+      long before = bar.count();
+      bar.insert(value, time, count);
+      inserted(bar, barIndex, before);
+    }
+  }
+
+  private void inserted(Bar bar, int barIndex, long before) {
+    nextExpiry = Long.min(nextExpiry, bar.nextExpiry());
     long after = bar.count();
     size += (after - before);
     if (after > maxBarSize(barIndex)) {
@@ -158,25 +258,46 @@ public class BarSplittingBiasedHistogram implements Histogram {
 
   /**
    * Expire old events from all buckets.
+   * <p>
+   *   This returns immediately if no bar has events due to expire by {@code time}.
+   * </p>
    *
    * @param time current timestamp
    */
   public void expire(long time) {
+    if (time < nextExpiry) {
+      return;
+    }
     long calculatedSize = 0;
+    long calculatedExpiry = Long.MAX_VALUE;
     Iterator<Bar> it = bars.iterator();
     while (it.hasNext()) {
-      long barSize = it.next().expire(time);
+      Bar bar = it.next();
+      long barSize = bar.expire(time);
       if (barSize == 0) {
         it.remove();
+      } else {
+        calculatedExpiry = Long.min(calculatedExpiry, bar.nextExpiry());
       }
       calculatedSize += barSize;
     }
     this.size = calculatedSize;
+    this.nextExpiry = calculatedExpiry;
     if (bars.isEmpty()) {
-      bars.add(new Bar(barEpsilon, window));
+      bars.add(barFactory.get());
     }
   }
 
+  /**
+   * Discard all events.
+   */
+  void clear() {
+    bars.clear();
+    bars.add(barFactory.get());
+    size = 0;
+    nextExpiry = Long.MAX_VALUE;
+  }
+
   @Override
   public String toString() {
     return bars.toString();
@@ -291,7 +412,8 @@ public class BarSplittingBiasedHistogram implements Histogram {
     int mergePoint = Integer.MAX_VALUE;
     if (bars.size() < barCount || (mergePoint = mergeBars()) >= 0) {
       long before = x.count();
-      Bar split = x.split(ratio);
+      Bar split = x.split(ratio, spare);
+      spare = null;
       size += (x.count() + split.count()) - before;
 
       if (xIndex < mergePoint) {
@@ -323,6 +445,7 @@ public class BarSplittingBiasedHistogram implements Histogram {
       Bar lower = bars.get(lowestAggregateIndex);
       long before = lower.count() + upper.count();
       lower.merge(upper);
+      spare = upper;
       size += lower.count() - before;
       return lowestAggregateIndex + 1;
     } else {
@@ -378,7 +501,11 @@ public class BarSplittingBiasedHistogram implements Histogram {
 
   static final class Bar {
 
+    /*
+     * Windowed bars track their count in an exponential histogram, unwindowed bars (where eh is null) in count.
+     */
     private final ExponentialHistogram eh;
+    private long count;
     private double minimum = Double.NaN;
     private double maximum = Double.NaN;
 
@@ -386,10 +513,16 @@ public class BarSplittingBiasedHistogram implements Histogram {
       this.eh = new ExponentialHistogram(epsilon, window);
     }
 
-    private Bar(ExponentialHistogram eh, double minimum, double maximum) {
+    Bar(double epsilon, long window, long granularity) {
+      this.eh = new ExponentialHistogram(epsilon, window, granularity);
+    }
+
+    Bar() {
+      this.eh = null;
+    }
+
+    private Bar(ExponentialHistogram eh) {
       this.eh = eh;
-      this.minimum = minimum;
-      this.maximum = maximum;
     }
 
     void insert(double value, long time) {
@@ -399,15 +532,37 @@ public class BarSplittingBiasedHistogram implements Histogram {
       if (!(value < maximum)) {
         maximum = nextUp(value);
       }
-      eh.insert(time);
+      if (eh == null) {
+        count++;
+      } else {
+        eh.insert(time);
+      }
+    }
+
+    void insert(double value, long time, long count) {
+      if (!(value >= minimum)) {
+        minimum = value;
+      }
+      if (!(value < maximum)) {
+        maximum = nextUp(value);
+      }
+      if (eh == null) {
+        this.count += count;
+      } else {
+        eh.insert(time, count);
+      }
     }
 
     long expire(long time) {
-      return eh.expire(time);
+      return eh == null ? count : eh.expire(time);
+    }
+
+    long nextExpiry() {
+      return eh == null ? Long.MAX_VALUE : eh.nextExpiry();
     }
 
     long count() {
-      return eh.count();
+      return eh == null ? count : eh.count();
     }
 
     @Override
@@ -482,19 +637,40 @@ public class BarSplittingBiasedHistogram implements Histogram {
      * have net -ve slope.
      *
      * I therefore declare everything safe, and sweep all this nonsense under the rug.
+     *
+     * The spare bar (if non-null) is a bar discarded by an earlier merge, whose storage is reused to avoid allocating.
      */
-    Bar split(double targetRatio) {
-      ExponentialHistogram split = eh.split(targetRatio);
-      double ratio = ((double) split.count()) / (eh.count() + split.count());
+    Bar split(double targetRatio, Bar spare) {
+      Bar split;
+      double ratio;
+      if (eh == null) {
+        split = spare == null ? new Bar() : spare;
+        split.count = Math.round(count * targetRatio);
+        ratio = ((double) split.count) / count;
+        count -= split.count;
+      } else {
+        if (spare == null) {
+          split = new Bar(eh.split(targetRatio));
+        } else {
+          split = spare;
+          eh.split(targetRatio, split.eh);
+        }
+        ratio = ((double) split.count()) / (eh.count() + split.count());
+      }
       double upperMinimum = maximum - ((maximum - minimum) * ratio);
-      double upperMaximum = maximum;
+      split.minimum = upperMinimum;
+      split.maximum = maximum;
       this.maximum = upperMinimum;
       
-      return new Bar(split, upperMinimum, upperMaximum);
+      return split;
     }
 
     void merge(Bar higher) {
-      eh.merge(higher.eh);
+      if (eh == null) {
+        count += higher.count;
+      } else {
+        eh.merge(higher.eh);
+      }
       maximum = higher.maximum;
     }
 
@@ -507,7 +683,7 @@ public class BarSplittingBiasedHistogram implements Histogram {
     }
 
     double epsilon() {
-      return eh.epsilon();
+      return eh == null ? 0.0 : eh.epsilon();
     }
   }
 }
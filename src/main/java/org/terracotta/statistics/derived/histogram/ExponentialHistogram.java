@@ -16,13 +16,13 @@
  */
 package org.terracotta.statistics.derived.histogram;
 
-import java.util.Arrays;
-
 import static java.lang.Integer.max;
 import static java.lang.Long.MIN_VALUE;
 import static java.lang.Long.highestOneBit;
 import static java.lang.Long.numberOfLeadingZeros;
 import static java.lang.Long.numberOfTrailingZeros;
+import static java.lang.Math.floorDiv;
+import static java.lang.Math.floorMod;
 import static java.lang.Math.round;
 import static java.lang.System.arraycopy;
 import static java.util.Arrays.copyOf;
@@ -35,22 +35,57 @@ import static java.util.Arrays.fill;
  *   external locking.
  * </p>
  *
+ * <p>
+ *   Histograms constructed with a time granularity store their boxes compactly, as 32-bit offsets (in units of the
+ *   granularity) from a per-histogram epoch that is rebased as the window slides.  This halves the size of the box
+ *   storage at the cost of quantizing event times down to the granularity, and so loosening the window boundary by
+ *   up to one granule.
+ * </p>
+ * <p>
+ *   Histograms constructed with a time quantum coalesce events: consecutive events within the same quantum are counted
+ *   in to a pending run that is committed as a bulk insert at the start of the quantum, either when a later event
+ *   rolls the quantum over or when the histogram is expired, merged or split.  This keeps the per-event cost to an
+ *   increment under bursty load, at the cost of loosening the window boundary by up to one quantum.  Coalescing does
+ *   not require compact storage: see {@link #coalescing(double, long, long)}.
+ * </p>
+ *
  * @see <a href="http://citeseerx.ist.psu.edu/viewdoc/summary?doi=10.1.1.24.7941">
  *   Maintaining Stream Statistics over Sliding Windows</a>
  */
 public class ExponentialHistogram {
   
   private static final long[] EMPTY_LONG_ARRAY = new long[0];
+  private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+  private static final int EMPTY_OFFSET = Integer.MIN_VALUE;
+  private static final int OLDEST_OFFSET = Integer.MIN_VALUE + 1;
+  private static final long MAX_COMPACT_WINDOW = 1L << 30;
+  private static final long MAX_GRANULARITY = 1L << 31;
 
   private final double epsilon;
   private final int mergeThreshold;
   private final long window;
-  
+  private final long granularity;
+  private final long quantum;
+
+  /*
+   * Boxes are held as absolute times in boxes, or when compact (granularity != 0) as offsets from epoch in offsets.
+   */
   private long[] boxes;
+  private int[] offsets;
+  private long epoch;
   private int[] insert;
   
   private long total;
   private long last;
+  /*
+   * A lower bound on the time of every box (Long.MAX_VALUE when empty), so that expiry can skip histograms with
+   * nothing due.
+   */
+  private long oldest = Long.MAX_VALUE;
+
+  private long pendingTime;
+  private long pendingCount;
 
   /**
    * Creates an exponential histogram maintaining a count over {@code window} to within @{epsilon} fractional accuracy.
@@ -59,55 +94,104 @@ public class ExponentialHistogram {
    * @param window sliding window size
    */
   public ExponentialHistogram(double epsilon, long window) {
-    this(epsilon, (int) (Math.ceil(Math.ceil(1.0 / epsilon) / 2) + 1), window, 0);
+    this(epsilon, mergeThreshold(epsilon), window, 0L, 0L, 0);
+  }
+
+  /**
+   * Creates a compact exponential histogram maintaining a count over {@code window} to within @{epsilon} fractional
+   * accuracy, with event times quantized to {@code granularity}.
+   *
+   * @param epsilon fractional accuracy
+   * @param window sliding window size
+   * @param granularity event time granularity
+   * @throws IllegalArgumentException if the granularity is not in the range [1..2^31], or the window spans more than
+   * 2^30 granules
+   */
+  public ExponentialHistogram(double epsilon, long window, long granularity) throws IllegalArgumentException {
+    this(epsilon, mergeThreshold(epsilon), window, checkGranularity(window, granularity), 0L, 0);
+  }
+
+  /**
+   * Creates a compact exponential histogram maintaining a count over {@code window} to within @{epsilon} fractional
+   * accuracy, with event times quantized to {@code granularity}, and events coalesced within each {@code quantum}.
+   *
+   * @param epsilon fractional accuracy
+   * @param window sliding window size
+   * @param granularity event time granularity
+   * @param quantum event coalescing quantum
+   * @throws IllegalArgumentException if the granularity is not in the range [1..2^31], the window spans more than
+   * 2^30 granules, or the quantum is not positive
+   */
+  public ExponentialHistogram(double epsilon, long window, long granularity, long quantum) throws IllegalArgumentException {
+    this(epsilon, mergeThreshold(epsilon), window, checkGranularity(window, granularity), checkQuantum(quantum), 0);
+  }
+
+  /**
+   * Creates an exponential histogram maintaining a count over {@code window} to within @{epsilon} fractional accuracy,
+   * with events coalesced within each {@code quantum}.
+   * <p>
+   *   Unlike {@link #ExponentialHistogram(double, long, long, long)} event times are not quantized, and the boxes are
+   *   not stored compactly.
+   * </p>
+   *
+   * @param epsilon fractional accuracy
+   * @param window sliding window size
+   * @param quantum event coalescing quantum
+   * @return a coalescing exponential histogram
+   * @throws IllegalArgumentException if the quantum is not positive
+   */
+  public static ExponentialHistogram coalescing(double epsilon, long window, long quantum) throws IllegalArgumentException {
+    return new ExponentialHistogram(epsilon, mergeThreshold(epsilon), window, 0L, checkQuantum(quantum), 0);
   }
 
-  private ExponentialHistogram(double epsilon, int mergeThreshold, long window, int initialSize) {
+  private ExponentialHistogram(double epsilon, int mergeThreshold, long window, long granularity, long quantum, int initialSize) {
     this.epsilon = epsilon;
     this.mergeThreshold = mergeThreshold;
     this.window = window;
+    this.granularity = granularity;
+    this.quantum = quantum;
     initializeArrays(initialSize);
   }
 
+  private static int mergeThreshold(double epsilon) {
+    return (int) (Math.ceil(Math.ceil(1.0 / epsilon) / 2) + 1);
+  }
+
+  private static long checkGranularity(long window, long granularity) throws IllegalArgumentException {
+    if (granularity < 1 || granularity > MAX_GRANULARITY) {
+      throw new IllegalArgumentException("Granularity must be in the range [1.." + MAX_GRANULARITY + "]: " + granularity);
+    } else if (window / granularity > MAX_COMPACT_WINDOW) {
+      throw new IllegalArgumentException("Window spans too many granules: " + window + " / " + granularity);
+    } else {
+      return granularity;
+    }
+  }
+
+  private static long checkQuantum(long quantum) throws IllegalArgumentException {
+    if (quantum < 1) {
+      throw new IllegalArgumentException("Quantum must be positive: " + quantum);
+    } else {
+      return quantum;
+    }
+  }
+
   /**
    * Merge the supplied ExponentialHistogram in to this one.
    *
    * @param b histogram to merge
-   * @throws IllegalArgumentException if the two merge-thresholds are not equals
+   * @throws IllegalArgumentException if the two merge-thresholds or granularities are not equal
    */
   public void merge(ExponentialHistogram b) {
-    if (b.mergeThreshold != mergeThreshold) {
+    if (b.mergeThreshold != mergeThreshold || b.granularity != granularity) {
       throw new IllegalArgumentException();
     }
-    merge(b.boxes, b.total);
-  }
-
-  private void merge(long[] bBoxes, long bTotal) {
-    long[] aBoxes = this.boxes;
-    long aTotal = this.total;
-
-    int[] canonical = tailedLCanonical(mergeThreshold - 1, aTotal + bTotal);
-
-    initializeArrays(canonical.length - 1);
-    this.total = aTotal + bTotal;
-    this.last = this.total == 0 ? 0 : 1L << (canonical.length - 1);
-
-    long[] overflow = EMPTY_LONG_ARRAY;
-    for (int logSize = 0; logSize < canonical.length; logSize++) {
-      int boxCount = canonical[logSize];
-
-      int min = min_l(logSize);
-      int max = max_l(logSize);
-      long[] merged = merge(aBoxes, bBoxes, min, max, overflow);
-      int limit = reverseSort(merged);
-      System.arraycopy(merged, 0, boxes, min, boxCount);
-
-      int overflowSize = limit - boxCount;
-      overflow = new long[overflowSize >> 1];
-      for (int j = 0; j < overflow.length; j++) {
-        overflow[j] = merged[boxCount + (2 * j)];
-      }
+    flush();
+    b.flush();
+    if (b.capacity() > capacity()) {
+      //keep the larger storage, so that discarded histograms hold the smaller
+      swapStorage(b);
     }
+    rebuild(b, 0L, b.total);
   }
 
   /**
@@ -125,72 +209,131 @@ public class ExponentialHistogram {
         //MIN_VALUE means a box is unused so we avoid it
         time++;
       }
-      merge(makeBoxes(time, count), count);
+      if (quantum == 0) {
+        rebuild(null, time, count);
+      } else {
+        coalesce(time, count);
+      }
     }
   }
 
-  private long[] makeBoxes(long time, long count) {
-    int[] canonical = tailedLCanonical(mergeThreshold - 1, count);
-
-
-    long[] boxes = new long[min_l(canonical.length)];
-    Arrays.fill(boxes, MIN_VALUE);
-
-    for (int i = 0; i < canonical.length; i++) {
-      int min = min_l(i);
-      fill(boxes, min, min + canonical[i], time);
+  /*
+   * Counts events in to the pending run, first committing the run if the events fall in a different quantum.
+   */
+  private void coalesce(long time, long count) {
+    long start = time - floorMod(time, quantum);
+    if (pendingCount != 0 && start != pendingTime) {
+      flush();
     }
-    return boxes;
+    pendingTime = start;
+    pendingCount += count;
   }
 
-  private static int[] tailedLCanonical(int l, long count) {
-    if (count <= l) {
-      return new int[]{(int) count};
-    } else {
-      int[] form = lCanonical(l, count - l);
-      form[0] += l;
-      return form;
+  /*
+   * Commits the pending run, if any.
+   */
+  private void flush() {
+    long count = pendingCount;
+    if (count != 0) {
+      pendingCount = 0;
+      if (count == 1) {
+        commit(pendingTime);
+      } else {
+        rebuild(null, pendingTime, count);
+      }
     }
   }
 
-  private static int[] lCanonical(int l, long count) {
-    long num = count + l;
-    long denom = l + 1;
-    int j = numberOfTrailingZeros(highestOneBit(num / denom));
+  /*
+   * Rebuilds this histogram in place as the merge of its own boxes with either b's boxes, or if that is null, the
+   * canonical boxes for bCount events at bTime.  Each level is gathered (along with the overflow from the level below)
+   * in to a thread-local work buffer before it is written, so no allocation occurs unless the histogram grows.
+   */
+  private void rebuild(ExponentialHistogram b, long bTime, long bCount) {
+    long newTotal = total + bCount;
+    int levels = canonicalLevels(newTotal);
+
+    if (b == null) {
+      ensureEncodable(bTime);
+      extendOldest(bTime);
+    } else {
+      if (granularity != 0) {
+        ensureEncodable(b.newest());
+      }
+      extendOldest(b.oldest);
+    }
+    ensureCapacity(levels - 1);
+    this.total = newTotal;
+    this.last = newTotal == 0 ? 0 : 1L << (levels - 1);
+
+    Scratch scratch = SCRATCH.get();
+    int overflow = 0;
+    for (int logSize = 0; logSize < levels; logSize++) {
+      int boxCount = canonicalBoxes(newTotal, logSize);
+      int min = min_l(logSize);
+      int max = max_l(logSize);
+      int width = max - min;
 
-    long offset = (num - (denom << j));
-    long prefixRep = offset & ((1L << j) - 1);
+      long[] work = scratch.work(overflow + 2 * width);
+      int size = overflow;
+      if (max <= capacity()) {
+        readBoxes(min, work, size, width);
+        size += width;
+      }
+      if (b == null) {
+        int bBoxCount = canonicalBoxes(bCount, logSize);
+        fill(work, size, size + bBoxCount, bTime);
+        size += bBoxCount;
+      } else if (max <= b.capacity()) {
+        b.readBoxes(min, work, size, width);
+        size += width;
+      }
+      int limit = size == 0 ? 0 : reverseSort(work, 0, size);
 
-    int[] canonical = new int[j + 1];
+      writeBoxes(work, min, boxCount);
+      clearBoxes(min + boxCount, max);
+      insert[logSize] = max - 1;
 
-    for (int i = 0; i < j; i++) {
-      canonical[i] = l + (int) (((prefixRep >>> i) & 1));
+      overflow = max(0, limit - boxCount) >> 1;
+      for (int j = 0; j < overflow; j++) {
+        work[j] = work[boxCount + (2 * j)];
+      }
     }
+    clearBoxes(max_l(levels - 1), capacity());
+    for (int logSize = levels; logSize < insert.length; logSize++) {
+      insert[logSize] = max_l(logSize) - 1;
+    }
+  }
 
-    canonical[j] = (int) ((offset >>> j) + 1);
-
-    return canonical;
+  /*
+   * The number of levels in the tailed l-canonical representation of count.
+   */
+  private int canonicalLevels(long count) {
+    int l = mergeThreshold - 1;
+    if (count <= l) {
+      return 1;
+    } else {
+      return numberOfTrailingZeros(highestOneBit(count / (l + 1))) + 1;
+    }
   }
 
-  private static long[] merge(long[] a, long[] b, int min, int max, long[] c) {
-    int width = max - min;
-    if (max <= a.length) {
-      if (max <= b.length) {
-        long[] merged = copyOf(c, c.length + 2 * width);
-        arraycopy(a, min, merged, c.length, width);
-        arraycopy(b, min, merged, c.length + width, width);
-        return merged;
+  /*
+   * The number of boxes at logSize in the tailed l-canonical representation of count.
+   */
+  private int canonicalBoxes(long count, int logSize) {
+    int l = mergeThreshold - 1;
+    if (count <= l) {
+      return logSize == 0 ? (int) count : 0;
+    } else {
+      long denom = l + 1;
+      int j = numberOfTrailingZeros(highestOneBit(count / denom));
+      if (logSize > j) {
+        return 0;
       } else {
-        long[] merged = copyOf(c, c.length + width);
-        arraycopy(a, min, merged, c.length, width);
-        return merged;
+        long offset = count - (denom << j);
+        int boxes = logSize == j ? (int) ((offset >>> j) + 1) : l + (int) ((offset >>> logSize) & 1);
+        return logSize == 0 ? boxes + l : boxes;
       }
-    } else if (max <= b.length) {
-      long[] merged = copyOf(c, c.length + width);
-      arraycopy(b, min, merged, c.length, width);
-      return merged;
-    } else {
-      return c;
     }
   }
 
@@ -203,13 +346,23 @@ public class ExponentialHistogram {
     if (time == MIN_VALUE) {
       time++;
     }
+    if (quantum == 0) {
+      commit(time);
+    } else {
+      coalesce(time, 1L);
+    }
+  }
+
+  private void commit(long time) {
+    ensureEncodable(time);
+    extendOldest(time);
     total += 1L;
     for (int logSize = 0; ; logSize++) {
       ensureCapacity(logSize);
       
       int insertIndex = insert[logSize];
-      long previous = boxes[insertIndex];
-      boxes[insertIndex--] = time;
+      long previous = box(insertIndex);
+      box(insertIndex--, time);
       if (insertIndex < min_l(logSize)) {
         insertIndex = max_l(logSize) - 1;
       }
@@ -224,13 +377,13 @@ public class ExponentialHistogram {
         return;
       } else if ((time - previous) < window) {
         //no space available - time to merge
-        time = boxes[insertIndex];
+        time = box(insertIndex);
         if (time == MIN_VALUE) {
           //previous expired - assume expiry of it's partner
           total -= 1L << logSize;
           return;
         } else {
-          boxes[insertIndex] = MIN_VALUE;
+          box(insertIndex, MIN_VALUE);
         }
       } else {
         //previous aged out - decrement size
@@ -242,33 +395,67 @@ public class ExponentialHistogram {
 
   /**
    * Expire old events.
+   * <p>
+   *   This returns immediately if no event can have expired by {@code time}.
+   * </p>
    *
    * @param time current timestamp
    * @return the count following expiry
    */
   public long expire(long time) {
+    flush();
+    if (time < nextExpiry()) {
+      return count();
+    }
     for (int logSize = (Long.SIZE - 1) - numberOfLeadingZeros(last); logSize >= 0; logSize--) {
-      boolean live = false;
+      long oldestLive = Long.MAX_VALUE;
       for (int i = min_l(logSize); i < max_l(logSize); i++) {
-        long end = boxes[i];
+        long end = box(i);
         if (end != MIN_VALUE) {
           if ((time - end) >= window) {
             total -= 1L << logSize;
-            boxes[i] = MIN_VALUE;
-          } else {
-            live = true;
+            box(i, MIN_VALUE);
+          } else if (end < oldestLive) {
+            oldestLive = end;
           }
         }
       }
-      if (live) {
+      if (oldestLive != Long.MAX_VALUE) {
         last = 1L << logSize;
+        oldest = oldestLive;
         return count();
       }
     }
     last = 0;
+    oldest = Long.MAX_VALUE;
     return 0;
   }
 
+  /**
+   * Returns the earliest time at which an expiry could remove events from this histogram.
+   *
+   * @return the next expiry time, or {@code Long.MAX_VALUE} if nothing will expire
+   */
+  long nextExpiry() {
+    long bound = pendingCount == 0 ? oldest : Long.min(oldest, pendingTime - granularity);
+    if (bound > Long.MAX_VALUE - window) {
+      return Long.MAX_VALUE;
+    } else {
+      return bound + window;
+    }
+  }
+
+  private void extendOldest(long time) {
+    if (time == Long.MAX_VALUE) {
+      return;
+    } else if (granularity != 0) {
+      time = decode(encode(time));
+    }
+    if (time < oldest) {
+      oldest = time;
+    }
+  }
+
   private int min_l(int logSize) {
     if (logSize == 0) {
       return 0;
@@ -283,11 +470,14 @@ public class ExponentialHistogram {
 
   /**
    * Returns the approximate current count.
+   * <p>
+   *   This includes any pending (uncommitted) events.
+   * </p>
    *
    * @return the approximate count
    */
   public long count() {
-    return total - (last >>> 1);
+    return total - (last >>> 1) + pendingCount;
   }
 
   /**
@@ -299,24 +489,54 @@ public class ExponentialHistogram {
    * @return the new histogram
    */
   public ExponentialHistogram split(double fraction) {
-    long[] originalBoxes = boxes;
+    ExponentialHistogram that = new ExponentialHistogram(epsilon, mergeThreshold, window, granularity, quantum, insert.length - 1);
+    split(fraction, that);
+    return that;
+  }
 
-    ExponentialHistogram that = new ExponentialHistogram(epsilon, window);
+  /**
+   * Split events off this histogram in to {@code that}, discarding its current contents.
+   * <p>
+   *   This reuses the storage of both histograms, and so does not allocate unless either needs to grow.
+   * </p>
+   *
+   * @param fraction splitting fraction
+   * @param that the histogram to split in to
+   * @throws IllegalArgumentException if the two histograms are not identically configured
+   */
+  void split(double fraction, ExponentialHistogram that) throws IllegalArgumentException {
+    if (that.mergeThreshold != mergeThreshold || that.window != window || that.granularity != granularity) {
+      throw new IllegalArgumentException();
+    }
+    flush();
+    that.pendingCount = 0;
+    Scratch scratch = SCRATCH.get();
+    int originalLength = capacity();
+    long[] originalBoxes = scratch.original(originalLength);
+    readBoxes(0, originalBoxes, 0, originalLength);
+    long originalEpoch = epoch;
 
     that.total = round(this.total * fraction);
     this.total -= that.total;
 
-    int[] thisCanonical = tailedLCanonical(mergeThreshold - 1, this.total);
-    int[] thatCanonical = tailedLCanonical(mergeThreshold - 1, that.total);
-    this.last = this.total == 0 ? 0 : 1L << (thisCanonical.length - 1);
-    that.last = that.total == 0 ? 0 : 1L << (thatCanonical.length - 1);
+    int thisLevels = canonicalLevels(this.total);
+    int thatLevels = canonicalLevels(that.total);
+    this.last = this.total == 0 ? 0 : 1L << (thisLevels - 1);
+    that.last = that.total == 0 ? 0 : 1L << (thatLevels - 1);
 
-    this.initializeArrays(thisCanonical.length - 1);
-    that.initializeArrays(thatCanonical.length - 1);
+    if ((thatLevels > thisLevels) == (that.capacity() < capacity())) {
+      //give the larger storage to the larger histogram
+      swapStorage(that);
+    }
+    this.clear(thisLevels - 1);
+    that.clear(thatLevels - 1);
+    this.epoch = originalEpoch;
+    that.epoch = originalEpoch;
+    that.oldest = this.oldest;
 
-    for (int logSize = 0; logSize < max(thisCanonical.length, thatCanonical.length); logSize++) {
-      int thisBoxCount = logSize < thisCanonical.length ? thisCanonical[logSize] : 0;
-      int thatBoxCount = logSize < thatCanonical.length ? thatCanonical[logSize] : 0;
+    for (int logSize = 0; logSize < max(thisLevels, thatLevels); logSize++) {
+      int thisBoxCount = logSize < thisLevels ? canonicalBoxes(this.total, logSize) : 0;
+      int thatBoxCount = logSize < thatLevels ? canonicalBoxes(that.total, logSize) : 0;
 
       /*
        * transfer(...) reverse-sorts putting the highest (i.e. most recent) stuff first.  This means we bias recent stuff
@@ -327,88 +547,71 @@ public class ExponentialHistogram {
        * just life.  Sorry!
        */
       if (fraction < 0.5) {
-        transfer(originalBoxes, that.boxes, logSize, thatBoxCount);
-        transfer(originalBoxes, this.boxes, logSize, thisBoxCount);
+        transfer(scratch, originalBoxes, originalLength, that, logSize, thatBoxCount);
+        transfer(scratch, originalBoxes, originalLength, this, logSize, thisBoxCount);
       } else {
-        transfer(originalBoxes, this.boxes, logSize, thisBoxCount);
-        transfer(originalBoxes, that.boxes, logSize, thatBoxCount);
+        transfer(scratch, originalBoxes, originalLength, this, logSize, thisBoxCount);
+        transfer(scratch, originalBoxes, originalLength, that, logSize, thatBoxCount);
       }
     }
-
-    return that;
   }
 
-  private void transfer(long[] originalBoxes, long[] targetBoxes, int logSize, int count) {
+  private void transfer(Scratch scratch, long[] originalBoxes, int originalLength, ExponentialHistogram target, int logSize, int count) {
     if (count > 0) {
-      int min = min_l(logSize);
-      int max = max_l(logSize);
-      int limit = min + count;
+      long[] work = scratch.work(2 * count + Long.SIZE);
+      pull(originalBoxes, originalLength, logSize, count, work, 0);
+      target.writeBoxes(work, min_l(logSize), count);
+    }
+  }
 
+  /*
+   * Pulls count boxes of logSize out of originalBoxes in to out[offset...], splitting boxes pulled down from higher
+   * levels in two.  The area following out[offset + count] is used as a stack for the recursive pulls.
+   */
+  private void pull(long[] originalBoxes, int originalLength, int logSize, int count, long[] out, int offset) {
+    int min = min_l(logSize);
+    int max = max_l(logSize);
+    if (max > originalLength) {
+      fill(out, offset, offset + count, MIN_VALUE);
+    } else {
       int available = reverseSort(originalBoxes, min, max) - min;
 
       int pulldown = count - available;
       if (pulldown > 0) {
+        arraycopy(originalBoxes, min, out, offset, available);
+        fill(originalBoxes, min, min + available, MIN_VALUE);
 
-        long[] pulled = doubleUp(pull(originalBoxes, logSize + 1, (pulldown + 1) >> 1));
-
-        System.arraycopy(originalBoxes, min, targetBoxes, min, available);
-        Arrays.fill(originalBoxes, min, min + available, Long.MIN_VALUE);
-
-        System.arraycopy(pulled, 0, targetBoxes, min + available, pulldown);
-        System.arraycopy(pulled, pulldown, originalBoxes, min, pulled.length - pulldown);
+        int stack = offset + count;
+        pull(originalBoxes, originalLength, logSize + 1, (pulldown + 1) >> 1, out, stack);
+        for (int k = 0; k < pulldown; k++) {
+          out[offset + available + k] = out[stack + (k >> 1)];
+        }
+        if ((pulldown & 1) != 0) {
+          originalBoxes[min] = out[stack + (pulldown >> 1)];
+        }
       } else {
-        System.arraycopy(originalBoxes, min, targetBoxes, min, count);
-        Arrays.fill(originalBoxes, min, limit, Long.MIN_VALUE);
+        arraycopy(originalBoxes, min, out, offset, count);
+        fill(originalBoxes, min, min + count, MIN_VALUE);
       }
     }
   }
 
-  private long[] pull(long[] originalBoxes, int logSize, int count) {
-    int min = min_l(logSize);
-    int max = max_l(logSize);
-    int limit = min + count;
-
-    int available = reverseSort(originalBoxes, min, max) - min;
-
-    int pulldown = count - available;
-    if (pulldown > 0) {
-
-      long[] pulled = doubleUp(pull(originalBoxes, logSize + 1, (pulldown + 1) >> 1));
-
-      long[] boxes = Arrays.copyOfRange(originalBoxes, min, limit);
-      Arrays.fill(originalBoxes, min, min + available, Long.MIN_VALUE);
-
-      System.arraycopy(pulled, 0, boxes, available, pulldown);
-      System.arraycopy(pulled, pulldown, originalBoxes, min, pulled.length - pulldown);
-      return boxes;
-    } else {
-      long[] boxes = Arrays.copyOfRange(originalBoxes, min, limit);
-      Arrays.fill(originalBoxes, min, limit, Long.MIN_VALUE);
-      return boxes;
-    }
-  }
-
-  private long[] doubleUp(long[] a) {
-    long[] da = new long[a.length << 1];
-    for (int i = 0; i < a.length; i++) {
-      da[(i << 1) + 1] = da[i << 1] = a[i];
-    }
-    return da;
-  }
-
   @Override
   public String toString() {
     StringBuilder sb = new StringBuilder();
     sb.append("count = ").append(count()).append(" : ");
+    if (pendingCount != 0) {
+      sb.append("[").append(pendingCount).append("@").append(pendingTime).append(" pending], ");
+    }
     for (int logSize = 0; logSize < insert.length; logSize++) {
       for (int i = insert[logSize] + 1; i < max_l(logSize); i++) {
-        long time = boxes[i];
+        long time = box(i);
         if (time != MIN_VALUE) {
           sb.append("[").append(1L << logSize).append("@").append(time).append("], ");
         }
       }
       for (int i = min_l(logSize); i < insert[logSize] + 1; i++) {
-        long time = boxes[i];
+        long time = box(i);
         if (time != MIN_VALUE) {
           sb.append("[").append(1L << logSize).append("@").append(time).append("], ");
         }
@@ -418,10 +621,6 @@ public class ExponentialHistogram {
     return sb.toString();
   }
   
-  private static int reverseSort(long[] a) {
-    return reverseSort(a, 0, a.length);
-  }
-
   private static int reverseSort(long[] a, int fromIndex, int toIndex) {
     if (fromIndex < 0 || toIndex > a.length) {
       throw new ArrayIndexOutOfBoundsException();
@@ -452,27 +651,189 @@ public class ExponentialHistogram {
     }
   }
 
-  private void ensureCapacity(int logSize) {
-    int max = max_l(logSize);
-    if (max > boxes.length) {
-      long[] newBoxes = copyOf(boxes, max);
-      int[] newInsert = copyOf(insert, logSize + 1);
-      fill(newBoxes, boxes.length, newBoxes.length, MIN_VALUE);
-      this.boxes = newBoxes;
-      this.insert = newInsert;
-      insert[logSize] = max - 1;
+  /*
+   * Growth allocates a level of headroom, so that histograms hovering around a level boundary settle quickly.
+   */
+  private void ensureCapacity(int logMax) {
+    if (max_l(logMax) > capacity()) {
+      int oldLength = capacity();
+      int oldLevels = insert.length;
+      int newLevels = logMax + 2;
+      int max = max_l(newLevels - 1);
+      if (granularity == 0) {
+        this.boxes = copyOf(boxes, max);
+      } else {
+        this.offsets = copyOf(offsets, max);
+      }
+      this.insert = copyOf(insert, newLevels);
+      clearBoxes(oldLength, max);
+      for (int i = oldLevels; i < newLevels; i++) {
+        insert[i] = max_l(i) - 1;
+      }
+    }
+  }
+
+  private void swapStorage(ExponentialHistogram other) {
+    long[] otherBoxes = other.boxes;
+    int[] otherOffsets = other.offsets;
+    long otherEpoch = other.epoch;
+    int[] otherInsert = other.insert;
+    other.boxes = this.boxes;
+    other.offsets = this.offsets;
+    other.epoch = this.epoch;
+    other.insert = this.insert;
+    this.boxes = otherBoxes;
+    this.offsets = otherOffsets;
+    this.epoch = otherEpoch;
+    this.insert = otherInsert;
+  }
+
+  private void clear(int logMax) {
+    ensureCapacity(logMax);
+    clearBoxes(0, capacity());
+    for (int i = 0; i < insert.length; i++) {
+      insert[i] = max_l(i) - 1;
     }
   }
 
   private void initializeArrays(int logMax) {
-    this.boxes = new long[max_l(logMax)];
-    fill(boxes, Long.MIN_VALUE);
+    if (granularity == 0) {
+      this.boxes = new long[max_l(logMax)];
+    } else {
+      this.offsets = new int[max_l(logMax)];
+    }
+    clearBoxes(0, capacity());
     this.insert = new int[logMax + 1];
     for (int i = 0; i < logMax + 1; i++) {
       this.insert[i] = max_l(i) - 1;
     }
   }
 
+  private int capacity() {
+    return granularity == 0 ? boxes.length : offsets.length;
+  }
+
+  private long box(int index) {
+    return granularity == 0 ? boxes[index] : decode(offsets[index]);
+  }
+
+  private void box(int index, long time) {
+    if (granularity == 0) {
+      boxes[index] = time;
+    } else {
+      offsets[index] = encode(time);
+    }
+  }
+
+  private void readBoxes(int from, long[] dest, int destPos, int length) {
+    if (granularity == 0) {
+      arraycopy(boxes, from, dest, destPos, length);
+    } else {
+      for (int i = 0; i < length; i++) {
+        dest[destPos + i] = decode(offsets[from + i]);
+      }
+    }
+  }
+
+  private void writeBoxes(long[] src, int to, int length) {
+    if (granularity == 0) {
+      arraycopy(src, 0, boxes, to, length);
+    } else {
+      for (int i = 0; i < length; i++) {
+        offsets[to + i] = encode(src[i]);
+      }
+    }
+  }
+
+  private void clearBoxes(int from, int to) {
+    if (granularity == 0) {
+      fill(boxes, from, to, MIN_VALUE);
+    } else {
+      fill(offsets, from, to, EMPTY_OFFSET);
+    }
+  }
+
+  private long newest() {
+    long newest = MIN_VALUE;
+    for (int i = 0; i < capacity(); i++) {
+      newest = Long.max(newest, box(i));
+    }
+    return newest;
+  }
+
+  /*
+   * The offset of time from the epoch in granules, saturating if the subtraction overflows.
+   */
+  private long offset(long time) {
+    return offset(time, epoch, granularity);
+  }
+
+  private static long offset(long time, long epoch, long granularity) {
+    long delta = time - epoch;
+    if (((time ^ epoch) & (time ^ delta)) < 0) {
+      return time < epoch ? Long.MIN_VALUE : Long.MAX_VALUE;
+    } else {
+      return floorDiv(delta, granularity);
+    }
+  }
+
+  private int encode(long time) {
+    if (time == MIN_VALUE) {
+      return EMPTY_OFFSET;
+    } else {
+      long offset = offset(time);
+      if (offset <= OLDEST_OFFSET) {
+        //anything this old is long expired
+        return OLDEST_OFFSET;
+      } else {
+        return (int) Long.min(offset, Integer.MAX_VALUE);
+      }
+    }
+  }
+
+  private long decode(int offset) {
+    return offset == EMPTY_OFFSET ? MIN_VALUE : epoch + offset * granularity;
+  }
+
+  /*
+   * Rebases a compact histogram if time lies outside the range of its offsets.  An empty histogram is rebased on to
+   * time itself.  Otherwise a later time moves the epoch to the start of the window ending at time, so every live box
+   * remains exactly encodable.  An earlier time moves the epoch back far enough to hold it, unless that would push the
+   * newest box out of range, in which case time is over two windows stale and is left to saturate.
+   */
+  private void ensureEncodable(long time) {
+    if (granularity != 0) {
+      long offset = offset(time);
+      if (total == 0) {
+        epoch = floorDiv(time, granularity) * granularity;
+      } else if (offset > Integer.MAX_VALUE) {
+        long shift = offset(time - window);
+        epoch += shift * granularity;
+        for (int i = 0; i < offsets.length; i++) {
+          int current = offsets[i];
+          if (current != EMPTY_OFFSET) {
+            offsets[i] = (int) Long.max(current - shift, OLDEST_OFFSET);
+          }
+          if (offsets[i] == OLDEST_OFFSET) {
+            extendOldest(MIN_VALUE + 1);
+          }
+        }
+      } else if (offset <= OLDEST_OFFSET) {
+        long rebased = floorDiv(time, granularity) * granularity - (OLDEST_OFFSET + 1L) * granularity;
+        if (offset(newest(), rebased, granularity) <= Integer.MAX_VALUE) {
+          long shift = offset(epoch, rebased, granularity);
+          epoch = rebased;
+          for (int i = 0; i < offsets.length; i++) {
+            int current = offsets[i];
+            if (current != EMPTY_OFFSET && current != OLDEST_OFFSET) {
+              offsets[i] = (int) (current + shift);
+            }
+          }
+        }
+      }
+    }
+  }
+
   /**
    * Return the fractional accuracy of this exponential histogram
    *
@@ -481,4 +842,27 @@ public class ExponentialHistogram {
   public double epsilon() {
     return epsilon;
   }
+
+  /**
+   * Per-thread work buffers for merging and splitting.
+   */
+  private static final class Scratch {
+
+    private long[] work = EMPTY_LONG_ARRAY;
+    private long[] original = EMPTY_LONG_ARRAY;
+
+    long[] work(int size) {
+      if (work.length < size) {
+        work = copyOf(work, max(size, work.length << 1));
+      }
+      return work;
+    }
+
+    long[] original(int size) {
+      if (original.length < size) {
+        original = new long[max(size, original.length << 1)];
+      }
+      return original;
+    }
+  }
 }
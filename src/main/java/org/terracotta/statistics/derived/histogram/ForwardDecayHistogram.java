@@ -0,0 +1,319 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.Math.exp;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.nextUp;
+
+/**
+ * A recency weighted histogram using the forward decay model described in:
+ * 'Forward Decay: A Practical Time Decay Model for Streaming Systems' [G. Cormode, V. Shkapenyuk, D. Srivastava &amp; B. Xu]
+ * <p>
+ *   Rather than maintaining a hard sliding window, each event is weighted by {@code exp(α(t - L))} where {@code L} is a
+ *   landmark time, and {@code α} is the reciprocal of the mean lifetime.  Weights are accumulated in logarithmically
+ *   sized buckets, so quantiles are bounded to within a relative error of {@code relativeAccuracy}.  At query time all
+ *   weights are scaled by the same factor, so an event counts as one when it occurs, and decays by {@code 1/e} every
+ *   mean lifetime.
+ * </p>
+ * <p>
+ *   Insertion is constant time, and expiry is free: {@link #expire(long)} only advances the clock.  The landmark is
+ *   periodically moved forward to keep the weights in range, and negligible weights are discarded when it does.
+ * </p>
+ * <p>
+ *   This class is *not thread-safe*, safe consumption in a multi-threaded environment will require some form of
+ *   external locking.
+ * </p>
+ *
+ * @see <a href="https://doi.org/10.1109/ICDE.2009.65">
+ *   Forward Decay: A Practical Time Decay Model for Streaming Systems</a>
+ */
+public class ForwardDecayHistogram implements Histogram {
+
+  /*
+   * Decayed weights below this are considered to have left the histogram.
+   */
+  private static final double NEGLIGIBLE_WEIGHT = 0.01;
+  private static final double RESCALE_THRESHOLD = 32.0;
+
+  private final LogarithmicMapping mapping;
+  private final double alpha;
+
+  private final WeightStore positive = new WeightStore();
+  private final WeightStore negative = new WeightStore();
+  private double zeroWeight;
+
+  private long landmark;
+  private long now;
+  private boolean started;
+
+  /**
+   * Create a forward decaying histogram.
+   *
+   * @param relativeAccuracy quantile relative accuracy
+   * @param meanLifetime mean lifetime of an event
+   * @throws IllegalArgumentException if any of the parameters are out of range
+   */
+  public ForwardDecayHistogram(double relativeAccuracy, long meanLifetime) throws IllegalArgumentException {
+    if (meanLifetime <= 0) {
+      throw new IllegalArgumentException("Mean lifetime must be positive: " + meanLifetime);
+    }
+    this.mapping = new LogarithmicMapping(relativeAccuracy);
+    this.alpha = 1.0 / meanLifetime;
+  }
+
+  /**
+   * Record an event of the given {@code value} occuring at he given {@code time}
+   *
+   * @param value event value
+   * @param time event time
+   * @throws IllegalArgumentException if {@code value} is not finite
+   */
+  @Override
+  public void event(double value, long time) throws IllegalArgumentException {
+    event(value, time, 1L);
+  }
+
+  /**
+   * Record {@code count} events of the given {@code value} occuring at he given {@code time}
+   *
+   * @param value event value
+   * @param time event time
+   * @param count event count
+   * @throws IllegalArgumentException if {@code value} is not finite, or {@code count} is negative
+   */
+  @Override
+  public void event(double value, long time, long count) throws IllegalArgumentException {
+    if (count < 0) {
+      throw new IllegalArgumentException("negative count");
+    }
+    if (!Double.isFinite(value)) {
+      throw new IllegalArgumentException("Non-finite value: " + value);
+    } else if (count == 0) {
+      return;
+    }
+    if (!started) {
+      landmark = now = time;
+      started = true;
+    } else if (alpha * (time - landmark) > RESCALE_THRESHOLD) {
+      rescale(time);
+    }
+    if (time > now) {
+      now = time;
+    }
+
+    double weight = count * exp(alpha * (time - landmark));
+    if (value >= mapping.minIndexableValue()) {
+      positive.add(mapping.index(value), weight);
+    } else if (value <= -mapping.minIndexableValue()) {
+      negative.add(mapping.index(-value), weight);
+    } else {
+      zeroWeight += weight;
+    }
+  }
+
+  /**
+   * Advances the decay clock to {@code time}.
+   * <p>
+   *   No events are examined, decayed weights are evaluated lazily at query time.
+   * </p>
+   *
+   * @param time current timestamp
+   */
+  @Override
+  public void expire(long time) {
+    if (time > now) {
+      now = time;
+    }
+  }
+
+  private void rescale(long time) {
+    double factor = exp(-alpha * (time - landmark));
+    positive.rescale(factor);
+    negative.rescale(factor);
+    zeroWeight *= factor;
+    if (zeroWeight < NEGLIGIBLE_WEIGHT) {
+      zeroWeight = 0.0;
+    }
+    landmark = time;
+  }
+
+  private double scale() {
+    return started ? exp(-alpha * (now - landmark)) : 0.0;
+  }
+
+  @Override
+  public List<Bucket> getBuckets() {
+    double scale = scale();
+    List<Bucket> buckets = new ArrayList<>();
+    if (!negative.empty) {
+      for (int i = negative.maxIndex; i >= negative.minIndex; i--) {
+        double weight = negative.weight(i) * scale;
+        if (weight >= NEGLIGIBLE_WEIGHT) {
+          buckets.add(new ImmutableBucket(nextUp(-mapping.upperBound(i)), nextUp(-mapping.lowerBound(i)), weight));
+        }
+      }
+    }
+    double weight = zeroWeight * scale;
+    if (weight >= NEGLIGIBLE_WEIGHT) {
+      buckets.add(new ImmutableBucket(nextUp(-mapping.minIndexableValue()), mapping.minIndexableValue(), weight));
+    }
+    if (!positive.empty) {
+      for (int i = positive.minIndex; i <= positive.maxIndex; i++) {
+        weight = positive.weight(i) * scale;
+        if (weight >= NEGLIGIBLE_WEIGHT) {
+          buckets.add(new ImmutableBucket(mapping.lowerBound(i), mapping.upperBound(i), weight));
+        }
+      }
+    }
+    return buckets;
+  }
+
+  @Override
+  public double[] getQuantileBounds(double quantile) throws IllegalArgumentException {
+    if (quantile > 1.0 || quantile < 0.0) {
+      throw new IllegalArgumentException("Invalid quantile requested: " + quantile);
+    } else {
+      List<Bucket> buckets = getBuckets();
+      if (buckets.isEmpty()) {
+        return new double[] {Double.NaN, Double.NaN};
+      } else {
+        double threshold = quantile * buckets.stream().mapToDouble(Bucket::count).sum();
+        double cumulative = 0.0;
+        for (Bucket bucket : buckets.subList(0, buckets.size() - 1)) {
+          cumulative += bucket.count();
+          if (cumulative >= threshold) {
+            return new double[] {bucket.minimum(), bucket.maximum()};
+          }
+        }
+        Bucket last = buckets.get(buckets.size() - 1);
+        return new double[] {last.minimum(), last.maximum()};
+      }
+    }
+  }
+
+  /**
+   * Returns the decayed event count, rounded to the nearest integer.
+   *
+   * @return the decayed event count
+   */
+  @Override
+  public long size() {
+    return Math.round(decayedSize());
+  }
+
+  /**
+   * Returns the decayed event count as both upper and lower bound.
+   *
+   * @return the decayed event count bounds
+   */
+  @Override
+  public double[] getSizeBounds() {
+    double size = decayedSize();
+    return new double[] {size, size};
+  }
+
+  private double decayedSize() {
+    return (positive.total + negative.total + zeroWeight) * scale();
+  }
+
+  @Override
+  public String toString() {
+    return getBuckets().toString();
+  }
+
+  /**
+   * A dense array of bucket weights.
+   */
+  static final class WeightStore {
+
+    private static final double[] EMPTY_DOUBLE_ARRAY = new double[0];
+    private static final int CHUNK_SIZE = 64;
+
+    private double[] weights = EMPTY_DOUBLE_ARRAY;
+    private int offset;
+    private int minIndex;
+    private int maxIndex;
+    private double total;
+    private boolean empty = true;
+
+    double weight(int index) {
+      return weights[index - offset];
+    }
+
+    void add(int index, double weight) {
+      if (empty) {
+        ensureCapacity(index, index);
+        minIndex = maxIndex = index;
+        empty = false;
+      } else if (index < minIndex) {
+        ensureCapacity(index, maxIndex);
+        minIndex = index;
+      } else if (index > maxIndex) {
+        ensureCapacity(minIndex, index);
+        maxIndex = index;
+      }
+      weights[index - offset] += weight;
+      total += weight;
+    }
+
+    void rescale(double factor) {
+      if (!empty) {
+        int lowest = Integer.MAX_VALUE;
+        int highest = Integer.MIN_VALUE;
+        total = 0.0;
+        for (int i = minIndex; i <= maxIndex; i++) {
+          double weight = weights[i - offset] * factor;
+          if (weight < NEGLIGIBLE_WEIGHT) {
+            weights[i - offset] = 0.0;
+          } else {
+            weights[i - offset] = weight;
+            total += weight;
+            lowest = min(lowest, i);
+            highest = max(highest, i);
+          }
+        }
+        if (lowest > highest) {
+          empty = true;
+        } else {
+          minIndex = lowest;
+          maxIndex = highest;
+        }
+      }
+    }
+
+    private void ensureCapacity(int lowest, int highest) {
+      if (lowest < offset || highest >= offset + weights.length) {
+        int required = highest - lowest + 1;
+        int length = (required + CHUNK_SIZE + (CHUNK_SIZE - 1)) & -CHUNK_SIZE;
+        int newOffset = lowest - ((length - required) >> 1);
+        double[] newWeights = new double[length];
+        int from = max(offset, newOffset);
+        int to = min(offset + weights.length, newOffset + length);
+        if (from < to) {
+          System.arraycopy(weights, from - offset, newWeights, from - newOffset, to - from);
+        }
+        this.weights = newWeights;
+        this.offset = newOffset;
+      }
+    }
+  }
+}
@@ -76,6 +76,26 @@ public interface Histogram {
 
   void event(double value, long time);
 
+  /**
+   * Record {@code count} events of the given {@code value} occurring at the given {@code time}.
+   * <p>
+   *   The default implementation records each event individually.
+   * </p>
+   *
+   * @param value event value
+   * @param time event time
+   * @param count event count
+   * @throws IllegalArgumentException if {@code count} is negative
+   */
+  default void event(double value, long time, long count) throws IllegalArgumentException {
+    if (count < 0) {
+      throw new IllegalArgumentException("negative count");
+    }
+    for (long i = 0; i < count; i++) {
+      event(value, time);
+    }
+  }
+
   void expire(long time);
 
   /**
@@ -0,0 +1,105 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.histogram;
+
+import static java.lang.Math.ceil;
+import static java.lang.Math.exp;
+import static java.lang.Math.floor;
+import static java.lang.Math.log;
+
+/**
+ * Maps positive magnitudes on to logarithmically sized buckets.
+ * <p>
+ *   Bucket {@code i} covers the magnitudes {@code [γ^i, γ^(i+1))} where {@code γ = (1 + α) / (1 - α)}, so any value
+ *   within a bucket is within a relative distance {@code α} of the bucket's representative value.  Magnitudes below
+ *   {@link #minIndexableValue()} cannot be indexed and must be accounted for separately.
+ * </p>
+ */
+final class LogarithmicMapping {
+
+  private final double relativeAccuracy;
+  private final double gamma;
+  private final double logGamma;
+  private final double multiplier;
+  private final int minIndex;
+  private final double minIndexableValue;
+
+  LogarithmicMapping(double relativeAccuracy) {
+    if (!(relativeAccuracy > 0.0 && relativeAccuracy < 1.0)) {
+      throw new IllegalArgumentException("Relative accuracy must be in the range (0.0..1.0): " + relativeAccuracy);
+    }
+    this.relativeAccuracy = relativeAccuracy;
+    this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+    this.logGamma = log(gamma);
+    this.multiplier = 1.0 / logGamma;
+    this.minIndex = (int) ceil(log(Double.MIN_NORMAL) * multiplier);
+    this.minIndexableValue = lowerBound(minIndex);
+  }
+
+  /**
+   * Returns the index of the bucket containing {@code magnitude}.
+   * <p>
+   *   The result is corrected for rounding in the logarithm so that it is always consistent with
+   *   {@link #lowerBound(int)}.
+   * </p>
+   *
+   * @param magnitude an indexable magnitude
+   * @return the bucket index
+   */
+  int index(double magnitude) {
+    int index = (int) floor(log(magnitude) * multiplier);
+    if (magnitude < lowerBound(index)) {
+      return index - 1;
+    } else if (magnitude >= lowerBound(index + 1)) {
+      return index + 1;
+    } else {
+      return index;
+    }
+  }
+
+  /**
+   * Returns the inclusive lower bound of the given bucket.
+   *
+   * @param index bucket index
+   * @return the bucket lower bound
+   */
+  double lowerBound(int index) {
+    return exp(index * logGamma);
+  }
+
+  /**
+   * Returns the exclusive upper bound of the given bucket.
+   *
+   * @param index bucket index
+   * @return the bucket upper bound
+   */
+  double upperBound(int index) {
+    return lowerBound(index + 1);
+  }
+
+  double minIndexableValue() {
+    return minIndexableValue;
+  }
+
+  double relativeAccuracy() {
+    return relativeAccuracy;
+  }
+
+  double gamma() {
+    return gamma;
+  }
+}
@@ -0,0 +1,630 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.histogram;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.nextUp;
+import static java.util.Arrays.copyOf;
+import static java.util.Arrays.fill;
+
+/**
+ * A relative-error quantile sketch based on the algorithm described in:
+ * 'DDSketch: A Fast and Fully-Mergeable Quantile Sketch with Relative-Error Guarantees' [C. Masson, J. E. Rim &amp; H. K. Lee]
+ * <p>
+ *   Events are counted exactly in logarithmically sized buckets, so every quantile is bounded to within a relative error
+ *   of {@code relativeAccuracy}.  Memory grows with the logarithm of the range of recorded values, and is capped by
+ *   collapsing the lowest buckets together (which preserves the accuracy of the high quantiles).  Two sketches with the
+ *   same accuracy and slicing merge exactly.
+ * </p>
+ * <p>
+ *   The sliding window is split in to a number of rotating sub-sketches (time slices) aligned on multiples of the slice
+ *   length.  Recording only touches the slice covering the event time, and expiry drops whole slices, so the window
+ *   boundary is only known to within one slice.
+ * </p>
+ * <p>
+ *   This class is *not thread-safe*, safe consumption in a multi-threaded environment will require some form of
+ *   external locking.
+ * </p>
+ *
+ * @see <a href="https://arxiv.org/abs/1908.10693">
+ *   DDSketch: A Fast and Fully-Mergeable Quantile Sketch with Relative-Error Guarantees</a>
+ */
+public class RelativeErrorHistogram implements Histogram {
+
+  private static final int DEFAULT_MAX_BUCKET_COUNT = 2048;
+  private static final int DEFAULT_SLICE_COUNT = 10;
+  private static final byte ENCODING_VERSION = 1;
+
+  private final LogarithmicMapping mapping;
+  private final int maxBucketCount;
+  private final TimeSlices<Sketch> slices;
+
+  private final Sketch merged;
+  private boolean mergedValid;
+  private double[] bucketMinimums = new double[0];
+  private double[] bucketMaximums = new double[0];
+  private long[] bucketCounts = new long[0];
+  private int bucketSize;
+
+  /**
+   * Create a relative-error histogram maintained over a sliding time window.
+   * <p>
+   *   The constructed histogram is:
+   * </p>
+   * <ul>
+   *   <li>maintained over {@code window} sliding window</li>
+   *   <li>split in to {@code sliceCount} rotating time slices</li>
+   *   <li>reports quantiles to within a relative error of {@code relativeAccuracy}</li>
+   *   <li>where each sign is limited to {@code maxBucketCount} buckets</li>
+   * </ul>
+   *
+   * @param relativeAccuracy quantile relative accuracy
+   * @param maxBucketCount maximum number of buckets per sign
+   * @param window sliding window size
+   * @param sliceCount number of window slices
+   * @throws IllegalArgumentException if any of the parameters are out of range
+   */
+  public RelativeErrorHistogram(double relativeAccuracy, int maxBucketCount, long window, int sliceCount) throws IllegalArgumentException {
+    if (maxBucketCount <= 0) {
+      throw new IllegalArgumentException("Bucket count must be positive: " + maxBucketCount);
+    }
+    this.mapping = new LogarithmicMapping(relativeAccuracy);
+    this.maxBucketCount = maxBucketCount;
+    this.slices = new TimeSlices<>(window, sliceCount, () -> new Sketch(mapping, maxBucketCount), Sketch::clear);
+    this.merged = new Sketch(mapping, maxBucketCount);
+  }
+
+  /**
+   * Create a relative-error histogram maintained over a sliding time window.
+   * <p>
+   *   The constructed histogram is:
+   * </p>
+   * <ul>
+   *   <li>maintained over {@code window} sliding window</li>
+   *   <li>split in to 10 rotating time slices</li>
+   *   <li>reports quantiles to within a relative error of {@code relativeAccuracy}</li>
+   *   <li>where each sign is limited to 2048 buckets</li>
+   * </ul>
+   *
+   * @param relativeAccuracy quantile relative accuracy
+   * @param window sliding window size
+   */
+  public RelativeErrorHistogram(double relativeAccuracy, long window) {
+    this(relativeAccuracy, DEFAULT_MAX_BUCKET_COUNT, window, DEFAULT_SLICE_COUNT);
+  }
+
+  /**
+   * Record an event of the given {@code value} occuring at he given {@code time}
+   *
+   * @param value event value
+   * @param time event time
+   * @throws IllegalArgumentException if {@code value} is not finite
+   */
+  @Override
+  public void event(double value, long time) throws IllegalArgumentException {
+    if (!Double.isFinite(value)) {
+      throw new IllegalArgumentException("Non-finite value: " + value);
+    }
+    Sketch slice = slices.slice(time);
+    if (slice != null) {
+      slice.insert(value, 1L);
+      mergedValid = false;
+    }
+  }
+
+  /**
+   * Record {@code count} events of the given {@code value} occuring at the given {@code time}
+   *
+   * @param value event value
+   * @param time event time
+   * @param count event count
+   * @throws IllegalArgumentException if {@code value} is not finite, or {@code count} is negative
+   */
+  @Override
+  public void event(double value, long time, long count) throws IllegalArgumentException {
+    if (count < 0) {
+      throw new IllegalArgumentException("negative count");
+    }
+    if (!Double.isFinite(value)) {
+      throw new IllegalArgumentException("Non-finite value: " + value);
+    }
+    Sketch slice = slices.slice(time);
+    if (slice != null && count > 0) {
+      slice.insert(value, count);
+      mergedValid = false;
+    }
+  }
+
+  /**
+   * Expire the slices that have fully left the window.
+   *
+   * @param time current timestamp
+   */
+  @Override
+  public void expire(long time) {
+    if (slices.expire(time)) {
+      mergedValid = false;
+    }
+  }
+
+  /**
+   * Merge the supplied histogram in to this one.
+   * <p>
+   *   Slices are merged with the slice covering the same time period in this histogram.  Slices that are too old to be
+   *   held by this histogram are ignored.
+   * </p>
+   *
+   * @param other histogram to merge
+   * @throws IllegalArgumentException if the two histograms have different accuracies or slice lengths
+   */
+  public void merge(RelativeErrorHistogram other) throws IllegalArgumentException {
+    if (other.mapping.relativeAccuracy() != mapping.relativeAccuracy() || other.slices.sliceLength() != slices.sliceLength()) {
+      throw new IllegalArgumentException("Incompatible histograms");
+    }
+    other.slices.forEach((slice, epoch) -> {
+      Sketch target = slices.sliceForEpoch(epoch);
+      if (target != null) {
+        target.merge(slice);
+        mergedValid = false;
+      }
+    });
+  }
+
+  @Override
+  public List<Bucket> getBuckets() {
+    refresh();
+    List<Bucket> buckets = new ArrayList<>(bucketSize);
+    for (int i = 0; i < bucketSize; i++) {
+      buckets.add(new ImmutableBucket(bucketMinimums[i], bucketMaximums[i], bucketCounts[i]));
+    }
+    return buckets;
+  }
+
+  @Override
+  public double getMinimum() {
+    refresh();
+    return merged.minimum;
+  }
+
+  @Override
+  public double getMaximum() {
+    refresh();
+    return merged.maximum;
+  }
+
+  @Override
+  public double[] getQuantileBounds(double quantile) throws IllegalArgumentException {
+    if (quantile > 1.0 || quantile < 0.0) {
+      throw new IllegalArgumentException("Invalid quantile requested: " + quantile);
+    } else {
+      refresh();
+      if (bucketSize == 0) {
+        return new double[] {Double.NaN, Double.NaN};
+      } else {
+        double threshold = quantile * merged.count;
+        long cumulative = 0;
+        for (int i = 0; i < bucketSize - 1; i++) {
+          cumulative += bucketCounts[i];
+          if (cumulative >= threshold) {
+            return new double[] {bucketMinimums[i], bucketMaximums[i]};
+          }
+        }
+        return new double[] {bucketMinimums[bucketSize - 1], bucketMaximums[bucketSize - 1]};
+      }
+    }
+  }
+
+  @Override
+  public long size() {
+    return slices.stream().mapToLong(slice -> slice.count).sum();
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   *   The lower bound excludes the slice straddling the start of the window as of the last call to
+   *   {@link #expire(long)}.
+   * </p>
+   */
+  @Override
+  public double[] getSizeBounds() {
+    long size = size();
+    Sketch straddling = slices.straddling();
+    return new double[] {straddling == null ? size : size - straddling.count, size};
+  }
+
+  /**
+   * Returns the relative accuracy of the quantiles reported by this histogram.
+   *
+   * @return the relative accuracy
+   */
+  public double relativeAccuracy() {
+    return mapping.relativeAccuracy();
+  }
+
+  private void refresh() {
+    if (!mergedValid) {
+      merged.clear();
+      slices.stream().forEach(merged::merge);
+      flatten();
+      mergedValid = true;
+    }
+  }
+
+  private void flatten() {
+    bucketSize = 0;
+    Store negative = merged.negative;
+    if (negative.total > 0) {
+      for (int i = negative.maxIndex; i >= negative.minIndex; i--) {
+        long count = negative.count(i);
+        if (count > 0) {
+          double upper = (negative.collapsed && i == negative.minIndex) ? mapping.minIndexableValue() : mapping.lowerBound(i);
+          addBucket(nextUp(-mapping.upperBound(i)), nextUp(-upper), count);
+        }
+      }
+    }
+    if (merged.zeroCount > 0) {
+      addBucket(nextUp(-mapping.minIndexableValue()), mapping.minIndexableValue(), merged.zeroCount);
+    }
+    Store positive = merged.positive;
+    if (positive.total > 0) {
+      for (int i = positive.minIndex; i <= positive.maxIndex; i++) {
+        long count = positive.count(i);
+        if (count > 0) {
+          double lower = (positive.collapsed && i == positive.minIndex) ? mapping.minIndexableValue() : mapping.lowerBound(i);
+          addBucket(lower, mapping.upperBound(i), count);
+        }
+      }
+    }
+  }
+
+  private void addBucket(double minimum, double maximum, long count) {
+    if (bucketSize == bucketCounts.length) {
+      int length = max(16, bucketSize << 1);
+      bucketMinimums = copyOf(bucketMinimums, length);
+      bucketMaximums = copyOf(bucketMaximums, length);
+      bucketCounts = copyOf(bucketCounts, length);
+    }
+    double lower = max(minimum, merged.minimum);
+    double upper = min(maximum, nextUp(merged.maximum));
+    bucketMinimums[bucketSize] = lower;
+    bucketMaximums[bucketSize] = upper > lower ? upper : nextUp(lower);
+    bucketCounts[bucketSize] = count;
+    bucketSize++;
+  }
+
+  /**
+   * Encodes this histogram in a compact binary form.
+   * <p>
+   *   Only the occupied slices and bucket ranges are encoded, with counts and indices written as variable length
+   *   integers.
+   * </p>
+   *
+   * @return the encoded histogram
+   * @see #fromBytes(byte[])
+   */
+  public byte[] toBytes() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(ENCODING_VERSION);
+    writeFixed(out, Double.doubleToLongBits(mapping.relativeAccuracy()));
+    writeVarLong(out, maxBucketCount);
+    writeVarLong(out, slices.window());
+    writeVarLong(out, slices.sliceCount());
+
+    writeVarLong(out, slices.stream().filter(slice -> slice.count > 0).count());
+    slices.forEach((slice, epoch) -> {
+      if (slice.count > 0) {
+        writeVarLong(out, zigZag(epoch));
+        writeFixed(out, Double.doubleToLongBits(slice.minimum));
+        writeFixed(out, Double.doubleToLongBits(slice.maximum));
+        writeVarLong(out, slice.zeroCount);
+        writeStore(out, slice.positive);
+        writeStore(out, slice.negative);
+      }
+    });
+    return out.toByteArray();
+  }
+
+  /**
+   * Decodes a histogram previously encoded using {@link #toBytes()}.
+   *
+   * @param bytes the encoded histogram
+   * @return the decoded histogram
+   * @throws IllegalArgumentException if {@code bytes} is not a valid histogram encoding
+   */
+  public static RelativeErrorHistogram fromBytes(byte[] bytes) throws IllegalArgumentException {
+    ByteBuffer in = ByteBuffer.wrap(bytes);
+    try {
+      byte version = in.get();
+      if (version != ENCODING_VERSION) {
+        throw new IllegalArgumentException("Unsupported encoding version: " + version);
+      }
+      double relativeAccuracy = Double.longBitsToDouble(in.getLong());
+      int maxBucketCount = (int) readVarLong(in);
+      long window = readVarLong(in);
+      int sliceCount = (int) readVarLong(in);
+      RelativeErrorHistogram histogram = new RelativeErrorHistogram(relativeAccuracy, maxBucketCount, window, sliceCount);
+
+      long occupied = readVarLong(in);
+      for (long i = 0; i < occupied; i++) {
+        long epoch = unZigZag(readVarLong(in));
+        Sketch slice = histogram.slices.sliceForEpoch(epoch);
+        if (slice == null || slice.count > 0) {
+          throw new IllegalArgumentException("Conflicting slices for epoch " + epoch);
+        }
+        slice.minimum = Double.longBitsToDouble(in.getLong());
+        slice.maximum = Double.longBitsToDouble(in.getLong());
+        slice.zeroCount = readVarLong(in);
+        readStore(in, slice.positive);
+        readStore(in, slice.negative);
+        slice.count = slice.zeroCount + slice.positive.total + slice.negative.total;
+      }
+      if (in.hasRemaining()) {
+        throw new IllegalArgumentException("Trailing bytes in histogram encoding");
+      }
+      return histogram;
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Truncated histogram encoding", e);
+    }
+  }
+
+  private static void writeStore(ByteArrayOutputStream out, Store store) {
+    boolean occupied = store.total > 0;
+    writeVarLong(out, (store.collapsed ? 1 : 0) | (occupied ? 2 : 0));
+    if (occupied) {
+      writeVarLong(out, zigZag(store.minIndex));
+      writeVarLong(out, store.maxIndex - store.minIndex + 1L);
+      for (int i = store.minIndex; i <= store.maxIndex; i++) {
+        writeVarLong(out, store.count(i));
+      }
+    }
+  }
+
+  private static void readStore(ByteBuffer in, Store store) {
+    long flags = readVarLong(in);
+    if ((flags & 2) != 0) {
+      int minIndex = (int) unZigZag(readVarLong(in));
+      long length = readVarLong(in);
+      for (long i = 0; i < length; i++) {
+        long count = readVarLong(in);
+        if (count > 0) {
+          store.add((int) (minIndex + i), count);
+        }
+      }
+    }
+    store.collapsed = (flags & 1) != 0;
+  }
+
+  private static void writeFixed(ByteArrayOutputStream out, long value) {
+    for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+      out.write((int) (value >>> shift));
+    }
+  }
+
+  private static void writeVarLong(ByteArrayOutputStream out, long value) {
+    while ((value & ~0x7fL) != 0) {
+      out.write((int) ((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  private static long readVarLong(ByteBuffer in) {
+    long value = 0;
+    for (int shift = 0; shift < Long.SIZE; shift += 7) {
+      byte b = in.get();
+      value |= (b & 0x7fL) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Malformed variable length integer");
+  }
+
+  private static long zigZag(long value) {
+    return (value << 1) ^ (value >> (Long.SIZE - 1));
+  }
+
+  private static long unZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  @Override
+  public String toString() {
+    return getBuckets().toString();
+  }
+
+  /**
+   * A single time slice: a pair of bucket stores for each sign, and a count of the near-zero values.
+   */
+  static final class Sketch {
+
+    private final LogarithmicMapping mapping;
+    private final Store positive;
+    private final Store negative;
+
+    private long zeroCount;
+    private long count;
+    private double minimum = Double.NaN;
+    private double maximum = Double.NaN;
+
+    Sketch(LogarithmicMapping mapping, int maxBucketCount) {
+      this.mapping = mapping;
+      this.positive = new Store(maxBucketCount);
+      this.negative = new Store(maxBucketCount);
+    }
+
+    void insert(double value, long n) {
+      if (value >= mapping.minIndexableValue()) {
+        positive.add(mapping.index(value), n);
+      } else if (value <= -mapping.minIndexableValue()) {
+        negative.add(mapping.index(-value), n);
+      } else {
+        zeroCount += n;
+      }
+      count += n;
+      if (!(value >= minimum)) {
+        minimum = value;
+      }
+      if (!(value <= maximum)) {
+        maximum = value;
+      }
+    }
+
+    void merge(Sketch other) {
+      if (other.count > 0) {
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeroCount += other.zeroCount;
+        count += other.count;
+        if (!(other.minimum >= minimum)) {
+          minimum = other.minimum;
+        }
+        if (!(other.maximum <= maximum)) {
+          maximum = other.maximum;
+        }
+      }
+    }
+
+    void clear() {
+      positive.clear();
+      negative.clear();
+      zeroCount = 0;
+      count = 0;
+      minimum = Double.NaN;
+      maximum = Double.NaN;
+    }
+  }
+
+  /**
+   * A dense array of bucket counts that collapses its lowest buckets once it spans more than its maximum bucket count.
+   */
+  static final class Store {
+
+    private static final long[] EMPTY_LONG_ARRAY = new long[0];
+    private static final int CHUNK_SIZE = 64;
+
+    private final int maxBucketCount;
+
+    private long[] counts = EMPTY_LONG_ARRAY;
+    private int offset;
+    private int minIndex;
+    private int maxIndex;
+    private long total;
+    private boolean collapsed;
+
+    Store(int maxBucketCount) {
+      this.maxBucketCount = maxBucketCount;
+    }
+
+    long count(int index) {
+      return counts[index - offset];
+    }
+
+    void add(int index, long count) {
+      if (total == 0) {
+        ensureCapacity(index, index);
+        minIndex = maxIndex = index;
+      } else if (index < minIndex) {
+        if (collapsed) {
+          index = minIndex;
+        } else if (maxIndex - index >= maxBucketCount) {
+          index = maxIndex - maxBucketCount + 1;
+          collapsed = true;
+          if (index < minIndex) {
+            ensureCapacity(index, maxIndex);
+            minIndex = index;
+          }
+        } else {
+          ensureCapacity(index, maxIndex);
+          minIndex = index;
+        }
+      } else if (index > maxIndex) {
+        if (index - minIndex >= maxBucketCount) {
+          collapse(index - maxBucketCount + 1, index);
+        } else {
+          ensureCapacity(minIndex, index);
+          maxIndex = index;
+        }
+      }
+      counts[index - offset] += count;
+      total += count;
+    }
+
+    void merge(Store other) {
+      if (other.total > 0) {
+        if (other.collapsed && total > 0 && minIndex < other.minIndex) {
+          collapse(other.minIndex, max(maxIndex, other.minIndex));
+        }
+        for (int i = other.maxIndex; i >= other.minIndex; i--) {
+          long count = other.count(i);
+          if (count > 0) {
+            add(i, count);
+          }
+        }
+      }
+      collapsed |= other.collapsed;
+    }
+
+    void clear() {
+      if (total > 0) {
+        fill(counts, minIndex - offset, maxIndex - offset + 1, 0L);
+        total = 0;
+      }
+      collapsed = false;
+    }
+
+    /*
+     * Folds all buckets below lowest in to lowest, and extends the store to cover up to highest.
+     */
+    private void collapse(int lowest, int highest) {
+      long folded = 0;
+      for (int i = minIndex, end = min(lowest - 1, maxIndex); i <= end; i++) {
+        folded += counts[i - offset];
+        counts[i - offset] = 0L;
+      }
+      ensureCapacity(lowest, highest);
+      counts[lowest - offset] += folded;
+      minIndex = lowest;
+      maxIndex = highest;
+      collapsed = true;
+    }
+
+    private void ensureCapacity(int lowest, int highest) {
+      if (lowest < offset || highest >= offset + counts.length) {
+        int required = highest - lowest + 1;
+        int length = min(maxBucketCount, (required + CHUNK_SIZE + (CHUNK_SIZE - 1)) & -CHUNK_SIZE);
+        int newOffset = lowest - ((length - required) >> 1);
+        long[] newCounts = new long[length];
+        int from = max(offset, newOffset);
+        int to = min(offset + counts.length, newOffset + length);
+        if (from < to) {
+          System.arraycopy(counts, from - offset, newCounts, from - newOffset, to - from);
+        }
+        this.counts = newCounts;
+        this.offset = newOffset;
+      }
+    }
+  }
+}
@@ -23,12 +23,16 @@
 
 package org.terracotta.statistics.derived.histogram;
 
+import java.util.Arrays;
+import java.util.Objects;
 import java.util.Spliterator;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -67,6 +71,15 @@ public class Striped<T> {
       }
     }
 
+    final long visit(ToLongFunction<? super T> visitor) {
+      while (!GUARD_UPDATER.compareAndSet(this, 0, 1));
+      try {
+        return visitor.applyAsLong(entity);
+      } finally {
+        GUARD_UPDATER.set(this, 0);
+      }
+    }
+
     @Override
     public String toString() {
       while (!GUARD_UPDATER.compareAndSet(this, 0, 1));
@@ -108,6 +121,22 @@ public class Striped<T> {
     }
   }
 
+  /**
+   * Applies {@code visitor} to each stripe while holding that stripe's guard.
+   * <p>
+   *   Unlike {@link #stream()} the visitor is excluded from the stripe for its whole execution, so it may safely read or
+   *   mutate state that concurrent {@link #process(Consumer)} calls also touch.
+   * </p>
+   *
+   * @param visitor stripe visitor
+   * @return the visitor results
+   */
+  protected final LongStream visit(ToLongFunction<? super T> visitor) {
+    Cell<T>[] cs = cells;
+    Stream<Cell<T>> all = cs == null ? of(base) : concat(of(base), Arrays.stream(cs).filter(Objects::nonNull));
+    return all.mapToLong(cell -> cell.visit(visitor));
+  }
+
   protected final void process(Consumer<T> process) {
     Cell<T>[] cs = cells;
     if (cs != null || !base.process(process)) {
@@ -0,0 +1,74 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.statistics.derived.histogram;
+
+/**
+ * A concurrent sliding-window counter striped over a dynamic set of {@link ExponentialHistogram} instances.
+ * <p>
+ *   Inserts contend only on a single stripe, while counts are the sum over all stripes.  Each stripe occupies
+ *   {@code O(log(N) / epsilon)} space for {@code N} events in the window.
+ * </p>
+ */
+public class StripedExponentialHistogram extends Striped<ExponentialHistogram> {
+
+  public StripedExponentialHistogram(double epsilon, long window) {
+    super(() -> new ExponentialHistogram(epsilon, window));
+  }
+
+  /**
+   * Insert a single event at {@code time}
+   *
+   * @param time event timestamp
+   */
+  public void insert(long time) {
+    process(eh -> eh.insert(time));
+  }
+
+  /**
+   * Bulk insert {@code count} events at {@code time}.
+   *
+   * @param time event time
+   * @param count event count
+   * @throws IllegalArgumentException if count is negative
+   */
+  public void insert(long time, long count) throws IllegalArgumentException {
+    if (count < 0) {
+      throw new IllegalArgumentException("negative count");
+    }
+    process(eh -> eh.insert(time, count));
+  }
+
+  /**
+   * Expire old events from all stripes.
+   *
+   * @param time current timestamp
+   * @return the count following expiry
+   */
+  public long expire(long time) {
+    return visit(eh -> eh.expire(time)).sum();
+  }
+
+  /**
+   * Returns the approximate current count.
+   *
+   * @return the approximate count
+   */
+  public long count() {
+    return visit(ExponentialHistogram::count).sum();
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.histogram;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * A biased histogram maintained over a sliding window of rotating time slices.
+ * <p>
+ *   The window is split in to {@code sliceCount} slices, each an unwindowed {@link BarSplittingBiasedHistogram} with
+ *   exact bar counts.  Recording an event only touches the slice covering the event time, and expiry drops whole
+ *   slices.  This avoids the cost of maintaining an {@link ExponentialHistogram} per bar, at the expense of only
+ *   knowing the window boundary to within one slice (a fractional error of {@code 1/sliceCount}).
+ * </p>
+ * <p>
+ *   This class is *not thread-safe*, safe consumption in a multi-threaded environment will require some form of
+ *   external locking.
+ * </p>
+ */
+public class TimeSlicedHistogram implements Histogram {
+
+  private static final double DEFAULT_MAX_COEFFICIENT = 1.7;
+  private static final int DEFAULT_EXPANSION_FACTOR = 7;
+
+  private final TimeSlices<BarSplittingBiasedHistogram> slices;
+
+  /**
+   * Create a histogram maintained over a sliding time window of rotating slices.
+   * <p>
+   *   The constructed histogram is:
+   * </p>
+   * <ul>
+   *   <li>maintained over {@code window} sliding window</li>
+   *   <li>split in to {@code sliceCount} rotating time slices</li>
+   *   <li>consists of {@code bucketCount} buckets</li>
+   *   <li>where {@code b1.size() ~= b0.size * phi}</li>
+   *   <li>with each bucket internally composed of {@code expansionFactor} bars</li>
+   *   <li>where bars are split when there size exceeds {@code maxCoefficient} of their target size</li>
+   * </ul>
+   *
+   * @param maxCoefficient relative split threshold
+   * @param phi histogram bucket bias factor
+   * @param expansionFactor number of bars per bucket
+   * @param bucketCount number of buckets
+   * @param window sliding window size
+   * @param sliceCount number of window slices
+   * @throws IllegalArgumentException if the window cannot be split in to {@code sliceCount} slices
+   */
+  public TimeSlicedHistogram(double maxCoefficient, double phi, int expansionFactor, int bucketCount, long window, int sliceCount) throws IllegalArgumentException {
+    this.slices = new TimeSlices<>(window, sliceCount,
+        () -> BarSplittingBiasedHistogram.unwindowed(maxCoefficient, phi, expansionFactor, bucketCount),
+        BarSplittingBiasedHistogram::clear);
+  }
+
+  /**
+   * Create a histogram maintained over a sliding time window of rotating slices.
+   * <p>
+   *   The constructed histogram is:
+   * </p>
+   * <ul>
+   *   <li>maintained over {@code window} sliding window</li>
+   *   <li>split in to {@code sliceCount} rotating time slices</li>
+   *   <li>consists of {@code bucketCount} buckets</li>
+   *   <li>where {@code b1.size() ~= b0.size * phi}</li>
+   * </ul>
+   *
+   * @param phi histogram bucket bias factor
+   * @param bucketCount number of buckets
+   * @param window sliding window size
+   * @param sliceCount number of window slices
+   * @throws IllegalArgumentException if the window cannot be split in to {@code sliceCount} slices
+   */
+  public TimeSlicedHistogram(double phi, int bucketCount, long window, int sliceCount) throws IllegalArgumentException {
+    this(DEFAULT_MAX_COEFFICIENT, phi, DEFAULT_EXPANSION_FACTOR, bucketCount, window, sliceCount);
+  }
+
+  /**
+   * Record an event of the given {@code value} occuring at he given {@code time}
+   * <p>
+   *   Events older than the oldest retained slice are discarded.
+   * </p>
+   *
+   * @param value event value
+   * @param time event time
+   */
+  @Override
+  public void event(double value, long time) {
+    BarSplittingBiasedHistogram slice = slices.slice(time);
+    if (slice != null) {
+      slice.event(value, time);
+    }
+  }
+
+  @Override
+  public void event(double value, long time, long count) throws IllegalArgumentException {
+    if (count < 0) {
+      throw new IllegalArgumentException("negative count");
+    }
+    BarSplittingBiasedHistogram slice = slices.slice(time);
+    if (slice != null) {
+      slice.event(value, time, count);
+    }
+  }
+
+  /**
+   * Expire the slices that have fully left the window.
+   *
+   * @param time current timestamp
+   */
+  @Override
+  public void expire(long time) {
+    slices.expire(time);
+  }
+
+  @Override
+  public List<Bucket> getBuckets() {
+    if (size() == 0) {
+      return singletonList(new ImmutableBucket(Double.NaN, Double.NaN, 0));
+    } else {
+      return HistogramUnion.buckets(this::occupied);
+    }
+  }
+
+  @Override
+  public double getMinimum() {
+    return occupied().mapToDouble(BarSplittingBiasedHistogram::getMinimum).min().orElse(Double.NaN);
+  }
+
+  @Override
+  public double getMaximum() {
+    return occupied().mapToDouble(BarSplittingBiasedHistogram::getMaximum).max().orElse(Double.NaN);
+  }
+
+  @Override
+  public double[] getQuantileBounds(double quantile) throws IllegalArgumentException {
+    if (quantile > 1.0 || quantile < 0.0) {
+      throw new IllegalArgumentException("Invalid quantile requested: " + quantile);
+    } else if (size() == 0) {
+      return new double[] {Double.NaN, Double.NaN};
+    } else {
+      return HistogramUnion.quantileBounds(this::occupied, quantile);
+    }
+  }
+
+  @Override
+  public long size() {
+    return HistogramUnion.size(slices::stream);
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   *   The lower bound excludes the slice straddling the start of the window as of the last call to
+   *   {@link #expire(long)}.
+   * </p>
+   */
+  @Override
+  public double[] getSizeBounds() {
+    long size = size();
+    BarSplittingBiasedHistogram straddling = slices.straddling();
+    return new double[] {straddling == null ? size : size - straddling.size(), size};
+  }
+
+  @Override
+  public String toString() {
+    return getBuckets().toString();
+  }
+
+  private Stream<BarSplittingBiasedHistogram> occupied() {
+    return slices.stream().filter(slice -> slice.size() > 0);
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.histogram;
+
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.lang.Math.floorDiv;
+import static java.lang.Math.floorMod;
+
+/**
+ * A ring of rotating time slices covering a sliding window.
+ * <p>
+ *   The window is split in to {@code sliceCount} slices aligned on multiples of the slice length, with one additional
+ *   slice to hold the partially expired slice at the start of the window.  Slices are reset and reused lazily as time
+ *   moves forward, so recording only ever touches the slice covering the event time, and expiry drops whole slices.
+ * </p>
+ * <p>
+ *   This class is *not thread-safe*, safe consumption in a multi-threaded environment will require some form of
+ *   external locking.
+ * </p>
+ *
+ * @param <T> the slice type
+ */
+final class TimeSlices<T> {
+
+  private static final long UNUSED = Long.MIN_VALUE;
+
+  private final long window;
+  private final long sliceLength;
+  private final Consumer<? super T> reset;
+  private final Object[] slices;
+  private final long[] epochs;
+
+  private long windowStart = Long.MIN_VALUE;
+  private long newest = UNUSED;
+
+  TimeSlices(long window, int sliceCount, Supplier<? extends T> factory, Consumer<? super T> reset) throws IllegalArgumentException {
+    if (sliceCount <= 0) {
+      throw new IllegalArgumentException("Slice count must be positive: " + sliceCount);
+    } else if (window < sliceCount) {
+      throw new IllegalArgumentException("Window must be at least as long as the slice count: " + window);
+    }
+    this.window = window;
+    this.sliceLength = window / sliceCount;
+    this.reset = reset;
+    this.slices = new Object[sliceCount + 1];
+    this.epochs = new long[sliceCount + 1];
+    for (int i = 0; i < slices.length; i++) {
+      slices[i] = factory.get();
+      epochs[i] = UNUSED;
+    }
+  }
+
+  /**
+   * Returns the slice covering {@code time}, rotating out any older slice occupying its position.
+   *
+   * @param time event time
+   * @return the covering slice, or {@code null} if {@code time} is too old to be held
+   */
+  T slice(long time) {
+    return sliceForEpoch(floorDiv(time, sliceLength));
+  }
+
+  /**
+   * Returns the slice for the given epoch (slice aligned time), rotating out any older slice occupying its position.
+   *
+   * @param epoch slice epoch
+   * @return the slice, or {@code null} if {@code epoch} is too old to be held
+   */
+  T sliceForEpoch(long epoch) {
+    if (newest != UNUSED && epoch < newest - sliceCount()) {
+      return null;
+    } else if (epoch > newest) {
+      newest = epoch;
+    }
+    int index = (int) floorMod(epoch, (long) slices.length);
+    long current = epochs[index];
+    if (current == epoch) {
+      return get(index);
+    } else if (current < epoch) {
+      T slice = get(index);
+      if (current != UNUSED) {
+        reset.accept(slice);
+      }
+      epochs[index] = epoch;
+      return slice;
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Resets all slices that have fully left the window.
+   *
+   * @param time current timestamp
+   * @return {@code true} if any slices were reset
+   */
+  boolean expire(long time) {
+    long start = time < Long.MIN_VALUE + window ? Long.MIN_VALUE : time - window;
+    long threshold = floorDiv(start, sliceLength);
+    boolean expired = false;
+    for (int i = 0; i < slices.length; i++) {
+      if (epochs[i] != UNUSED && epochs[i] < threshold) {
+        reset.accept(get(i));
+        epochs[i] = UNUSED;
+        expired = true;
+      }
+    }
+    this.windowStart = start;
+    return expired;
+  }
+
+  /**
+   * Returns the slice straddling the start of the window as of the last expiry.
+   * <p>
+   *   Only part of this slice's contents lie within the window, but they cannot be distinguished from those that don't.
+   * </p>
+   *
+   * @return the straddling slice, or {@code null} if there is none
+   */
+  T straddling() {
+    if (windowStart != Long.MIN_VALUE) {
+      long epoch = floorDiv(windowStart, sliceLength);
+      int index = (int) floorMod(epoch, (long) slices.length);
+      if (epochs[index] == epoch && windowStart > epoch * sliceLength) {
+        return get(index);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Performs the given action for each live slice and its epoch.
+   *
+   * @param action action to perform
+   */
+  void forEach(ObjLongConsumer<? super T> action) {
+    for (int i = 0; i < slices.length; i++) {
+      if (epochs[i] != UNUSED) {
+        action.accept(get(i), epochs[i]);
+      }
+    }
+  }
+
+  /**
+   * Returns a stream of the live slices.
+   *
+   * @return live slice stream
+   */
+  Stream<T> stream() {
+    return IntStream.range(0, slices.length).filter(i -> epochs[i] != UNUSED).mapToObj(this::get);
+  }
+
+  long window() {
+    return window;
+  }
+
+  long sliceLength() {
+    return sliceLength;
+  }
+
+  int sliceCount() {
+    return slices.length - 1;
+  }
+
+  @SuppressWarnings("unchecked")
+  private T get(int index) {
+    return (T) slices[index];
+  }
+}
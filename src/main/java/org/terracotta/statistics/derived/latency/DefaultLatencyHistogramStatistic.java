@@ -18,7 +18,9 @@ package org.terracotta.statistics.derived.latency;
 
 import org.terracotta.statistics.Time;
 import org.terracotta.statistics.derived.histogram.BarSplittingBiasedHistogram;
+import org.terracotta.statistics.derived.histogram.ForwardDecayHistogram;
 import org.terracotta.statistics.derived.histogram.Histogram;
+import org.terracotta.statistics.derived.histogram.TimeSlicedHistogram;
 import org.terracotta.statistics.observer.ChainedEventObserver;
 
 import java.time.Duration;
@@ -26,6 +28,7 @@ import java.util.List;
 import java.util.function.Function;
 import java.util.function.LongSupplier;
 
+import static java.lang.Math.min;
 import static java.lang.Math.nextDown;
 
 /**
@@ -33,7 +36,7 @@ import static java.lang.Math.nextDown;
  */
 public class DefaultLatencyHistogramStatistic implements LatencyHistogramStatistic, ChainedEventObserver {
 
-  private final BarSplittingBiasedHistogram histogram;
+  private final Histogram histogram;
   private final LongSupplier timeSupplier;
   private final long pruningDelay;
 
@@ -79,6 +82,7 @@ public class DefaultLatencyHistogramStatistic implements LatencyHistogramStatist
   };
 
   private long nextPruning;
+  private long expectedInterval;
 
   /**
    * Create a histogram maintained over a sliding time window.
@@ -103,9 +107,7 @@ public class DefaultLatencyHistogramStatistic implements LatencyHistogramStatist
       int bucketCount,
       Duration window,
       LongSupplier timeSupplier) {
-    this.timeSupplier = timeSupplier;
-    this.histogram = new BarSplittingBiasedHistogram(phi, bucketCount, window.toNanos());
-    this.pruningDelay = window.toNanos() / 2;
+    this(new BarSplittingBiasedHistogram(phi, bucketCount, window.toNanos()), window, timeSupplier);
   }
 
   public DefaultLatencyHistogramStatistic(double phi,
@@ -114,6 +116,71 @@ public class DefaultLatencyHistogramStatistic implements LatencyHistogramStatist
     this(phi, bucketCount, window, Time::time);
   }
 
+  /**
+   * Create a histogram maintained over a sliding time window of rotating slices.
+   * <p>
+   * The constructed histogram is:
+   * </p>
+   * <ul>
+   * <li>maintained over {@code window} sliding window</li>
+   * <li>split in to {@code windowSlices} rotating time slices</li>
+   * <li>consists of {@code bucketCount} buckets</li>
+   * <li>where {@code b1.size() ~= b0.size * phi}</li>
+   * </ul>
+   * Recording a latency is cheaper than with the default windowing, but the window boundary is only known to within
+   * one slice ({@code window / windowSlices}).
+   *
+   * @param phi          histogram bucket bias factor
+   * @param bucketCount  number of buckets
+   * @param window       sliding window size, in ns
+   * @param windowSlices number of window slices
+   * @param timeSupplier the supplier of time, which must be in the same unit as the time passed to the {{@link #event(long, long)}} method.
+   * @throws IllegalArgumentException if the window cannot be split in to {@code windowSlices} slices
+   */
+  public DefaultLatencyHistogramStatistic(
+      double phi,
+      int bucketCount,
+      Duration window,
+      int windowSlices,
+      LongSupplier timeSupplier) throws IllegalArgumentException {
+    this(new TimeSlicedHistogram(phi, bucketCount, window.toNanos(), windowSlices), window, timeSupplier);
+  }
+
+  public DefaultLatencyHistogramStatistic(double phi,
+                                          int bucketCount,
+                                          Duration window,
+                                          int windowSlices) throws IllegalArgumentException {
+    this(phi, bucketCount, window, windowSlices, Time::time);
+  }
+
+  /**
+   * Create a recency weighted histogram in place of a sliding window.
+   * <p>
+   * Each latency is weighted by {@code exp((t - now) / meanLifetime)}, so recording and expiry are both constant time.
+   * Percentiles are reported to within a relative error of {@code relativeAccuracy}, and counts are the decayed
+   * (weighted) event counts.
+   * </p>
+   *
+   * @param relativeAccuracy percentile relative accuracy
+   * @param meanLifetime     mean lifetime of a recorded latency, in ns
+   * @param timeSupplier     the supplier of time, which must be in the same unit as the time passed to the {{@link #event(long, long)}} method.
+   * @return a forward decaying latency histogram statistic
+   * @throws IllegalArgumentException if any of the parameters are out of range
+   */
+  public static DefaultLatencyHistogramStatistic forwardDecaying(double relativeAccuracy, Duration meanLifetime, LongSupplier timeSupplier) throws IllegalArgumentException {
+    return new DefaultLatencyHistogramStatistic(new ForwardDecayHistogram(relativeAccuracy, meanLifetime.toNanos()), meanLifetime, timeSupplier);
+  }
+
+  public static DefaultLatencyHistogramStatistic forwardDecaying(double relativeAccuracy, Duration meanLifetime) throws IllegalArgumentException {
+    return forwardDecaying(relativeAccuracy, meanLifetime, Time::time);
+  }
+
+  private DefaultLatencyHistogramStatistic(Histogram histogram, Duration window, LongSupplier timeSupplier) {
+    this.timeSupplier = timeSupplier;
+    this.histogram = histogram;
+    this.pruningDelay = window.toNanos() / 2;
+  }
+
   @Override
   public List<org.terracotta.statistics.derived.histogram.Histogram.Bucket> buckets() {
     return query(LatencyHistogramQuery::buckets);
@@ -144,9 +211,30 @@ public class DefaultLatencyHistogramStatistic implements LatencyHistogramStatist
     return query(h -> h.percentileBounds(percent));
   }
 
+  /**
+   * Sets the expected interval between operations, enabling correction for coordinated omission.
+   * <p>
+   * When a latency {@code L} exceeds the expected interval {@code I}, the operations that would have been issued during
+   * the stall are back-filled as the synthetic latencies {@code L - I, L - 2I, ...} down to {@code I}.  These are
+   * recorded as a few bulk inserts (one per band of latencies within 1/8th of each other) rather than one by one.
+   * </p>
+   *
+   * @param expectedInterval expected interval between operations, or {@link Duration#ZERO} to disable correction
+   * @throws IllegalArgumentException if {@code expectedInterval} is negative
+   */
+  public synchronized void setExpectedInterval(Duration expectedInterval) throws IllegalArgumentException {
+    if (expectedInterval.isNegative()) {
+      throw new IllegalArgumentException("Expected interval must not be negative: " + expectedInterval);
+    }
+    this.expectedInterval = expectedInterval.toNanos();
+  }
+
   @Override
   public synchronized void event(long time, long latency) {
     histogram.event(latency, time);
+    if (expectedInterval > 0 && latency / expectedInterval > 1) {
+      backfill(time, latency, expectedInterval);
+    }
     tryExpire(false, () -> time);
   }
 
@@ -175,6 +263,21 @@ public class DefaultLatencyHistogramStatistic implements LatencyHistogramStatist
     }
   }
 
+  /*
+   * Back-fill the synthetic latencies latency - k * interval for k = 1..n in bands of roughly 1/8th of their value,
+   * recording each band as a bulk insert of its mean.
+   */
+  private void backfill(long time, long latency, long interval) {
+    long n = latency / interval - 1;
+    for (long k = 1; k <= n; ) {
+      long high = latency - k * interval;
+      long end = min(n, (latency - (high - (high >>> 3))) / interval);
+      long low = latency - end * interval;
+      histogram.event((high + low) / 2.0, time, end - k + 1);
+      k = end + 1;
+    }
+  }
+
   private static Long nullOrVal(double val) {
     return Double.isNaN(val) ? null : (long) val;
   }
@@ -20,19 +20,35 @@ import org.terracotta.statistics.derived.OperationResultSampler;
 import org.terracotta.statistics.observer.ChainedOperationObserver;
 
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicReference;
 
 /**
+ * A JSR-107 style latency monitor reporting in microseconds.
+ * <p>
+ *   Latencies are accumulated in to one of two accumulators.  {@link #clear()} and {@link #intervalSnapshot()} swap
+ *   the accumulators, and then use a writer-reader phaser to wait for any writer still using the previous accumulator,
+ *   so no updates are lost and nothing is allocated.
+ * </p>
+ *
  * @author cdennis
  * @author Mathieu Carbou
  */
 public class Jsr107LatencyMonitor<T extends Enum<T>> implements ChainedOperationObserver<T>, LatencyStatistic {
 
   private final OperationResultSampler<T> sampling;
-  private final AtomicReference<LatencyAccumulator> statistic = new AtomicReference<>(LatencyAccumulator.empty());
+  private final WriterReaderPhaser phaser = new WriterReaderPhaser();
+  private volatile LatencyAccumulator active = LatencyAccumulator.empty();
+  // guarded by phaser
+  private LatencyAccumulator inactive = LatencyAccumulator.empty();
 
   public Jsr107LatencyMonitor(Set<T> targets, double sampling) {
-    this.sampling = new OperationResultSampler<>(targets, sampling, (time, latency) -> statistic.get().accumulate(latency));
+    this.sampling = new OperationResultSampler<>(targets, sampling, (time, latency) -> {
+      long token = phaser.writerEnter();
+      try {
+        active.accumulate(latency);
+      } finally {
+        phaser.writerExit(token);
+      }
+    });
   }
 
   @Override
@@ -50,7 +66,7 @@ public class Jsr107LatencyMonitor<T extends Enum<T>> implements ChainedOperation
    */
   @Override
   public double average() {
-    LatencyAccumulator accumulator = statistic.get();
+    LatencyAccumulator accumulator = active;
     long count = accumulator.count();
     if (count == 0) {
       //Someone involved with 107 can't do math
@@ -63,18 +79,70 @@ public class Jsr107LatencyMonitor<T extends Enum<T>> implements ChainedOperation
 
   @Override
   public Long minimum() {
-    LatencyAccumulator accumulator = statistic.get();
+    LatencyAccumulator accumulator = active;
     return accumulator.isEmpty() ? 0L : accumulator.minimum() / 1_000L;
   }
 
   @Override
   public Long maximum() {
-    LatencyAccumulator accumulator = statistic.get();
+    LatencyAccumulator accumulator = active;
     return accumulator.isEmpty() ? 0L : accumulator.maximum() / 1_000L;
   }
 
-  public synchronized void clear() {
-    statistic.set(LatencyAccumulator.empty());
+  /**
+   * Returns a snapshot of the monitored latencies, in microseconds.
+   * <p>
+   *   Unlike the individual accessors, an empty snapshot reports a {@code null} minimum and maximum and a {@code NaN}
+   *   average.
+   * </p>
+   *
+   * @return a snapshot in microseconds
+   */
+  @Override
+  public LatencySnapshot snapshot() {
+    return microseconds(active.snapshot());
+  }
+
+  /**
+   * Returns a snapshot of the latencies monitored since the previous interval snapshot (or clear), in microseconds,
+   * and starts a new interval.
+   * <p>
+   *   Every monitored latency is reported in exactly one interval.
+   * </p>
+   *
+   * @return a snapshot of the completed interval in microseconds
+   */
+  public LatencySnapshot intervalSnapshot() {
+    synchronized (phaser) {
+      return microseconds(flip().snapshot());
+    }
+  }
+
+  public void clear() {
+    synchronized (phaser) {
+      flip();
+    }
+  }
+
+  /*
+   * Swaps the (reset) inactive accumulator in, and waits for writers to drain from the previously active accumulator.
+   */
+  private LatencyAccumulator flip() {
+    LatencyAccumulator completed = active;
+    inactive.reset();
+    active = inactive;
+    phaser.flip();
+    inactive = completed;
+    return completed;
+  }
+
+  private static LatencySnapshot microseconds(LatencySnapshot snapshot) {
+    if (snapshot.isEmpty()) {
+      return snapshot;
+    } else {
+      //We use nanoseconds, 107 uses microseconds
+      return new LatencySnapshot(snapshot.count(), snapshot.total() / 1_000L, snapshot.minimum() / 1_000L, snapshot.maximum() / 1_000L);
+    }
   }
 
 }
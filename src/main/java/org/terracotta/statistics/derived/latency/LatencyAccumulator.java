@@ -18,26 +18,20 @@ package org.terracotta.statistics.derived.latency;
 
 import org.terracotta.statistics.observer.ChainedEventObserver;
 
-import java.util.concurrent.atomic.LongAccumulator;
-import java.util.concurrent.atomic.LongAdder;
-
 /**
  * This accumulator accumulate latency metrics. It is lock-free so when computing
  * some values,it is possible that a thread is writing some values while
  * the snapshot is being computed. So there is the possibility of an error in the
  * result.
+ * <p>
+ * Each event updates a single fused cell holding the count, total, minimum and
+ * maximum together, so an update selects one stripe and touches one cache line.
  *
  * @author Mathieu Carbou
  */
 public class LatencyAccumulator implements LatencyStatistic, ChainedEventObserver {
 
-  private static final long DEFAULT_MIN = Long.MAX_VALUE;
-  private static final long DEFAULT_MAX = Long.MIN_VALUE;
-
-  private final LongAdder count = new LongAdder();
-  private final LongAdder total = new LongAdder();
-  private final LongAccumulator minimum = new LongAccumulator(Math::min, DEFAULT_MIN);
-  private final LongAccumulator maximum = new LongAccumulator(Math::max, DEFAULT_MAX);
+  private final StripedLatencyCells cells = new StripedLatencyCells();
 
   private LatencyAccumulator(long... latencies) {
     for (long latency : latencies) {
@@ -46,29 +40,61 @@ public class LatencyAccumulator implements LatencyStatistic, ChainedEventObserve
   }
 
   public void accumulate(long latency) {
-    count.increment();
-    total.add(latency);
-    minimum.accumulate(latency);
-    maximum.accumulate(latency);
+    cells.accumulate(1L, latency, latency, latency);
+  }
+
+  /**
+   * Accumulates a latency, correcting for coordinated omission.
+   * <p>
+   * When {@code latency} exceeds {@code expectedInterval} the operations that would have been issued during the stall
+   * are back-filled as the synthetic latencies {@code latency - expectedInterval, latency - 2 * expectedInterval, ...}
+   * down to {@code expectedInterval}.  The real and synthetic latencies form an arithmetic series, so they are
+   * accumulated exactly in a single update.
+   *
+   * @param latency          the measured latency
+   * @param expectedInterval the expected interval between operations, or zero to disable correction
+   */
+  public void accumulate(long latency, long expectedInterval) {
+    long n = expectedInterval > 0 ? latency / expectedInterval : 0;
+    if (n > 1) {
+      long minimum = latency - (n - 1) * expectedInterval;
+      long total = (n & 1) == 0 ? (n >>> 1) * (latency + minimum) : n * ((latency + minimum) >>> 1);
+      cells.accumulate(n, total, minimum, latency);
+    } else {
+      accumulate(latency);
+    }
   }
 
   public void accumulate(LatencyAccumulator accumulator) {
-    count.add(accumulator.count());
-    total.add(accumulator.total());
-    minimum.accumulate(accumulator.minimum());
-    maximum.accumulate(accumulator.maximum());
+    accumulate(accumulator.snapshot());
+  }
+
+  void accumulate(LatencySnapshot snapshot) {
+    if (!snapshot.isEmpty()) {
+      cells.accumulate(snapshot.count(), snapshot.total(), snapshot.minimum(), snapshot.maximum());
+    }
+  }
+
+  /**
+   * Discards all accumulated latencies.
+   * <p>
+   *   This is only accurate when no concurrent accumulation is occurring.
+   * </p>
+   */
+  void reset() {
+    cells.reset();
   }
 
   public long count() {
-    return count.sum();
+    return cells.count();
   }
 
   public long total() {
-    return total.sum();
+    return cells.snapshot().total();
   }
 
   public boolean isEmpty() {
-    return count.sum() == 0;
+    return cells.count() == 0;
   }
 
   @Override
@@ -78,17 +104,22 @@ public class LatencyAccumulator implements LatencyStatistic, ChainedEventObserve
 
   @Override
   public Long maximum() {
-    return isEmpty() ? null : maximum.get();
+    return snapshot().maximum();
   }
 
   @Override
   public Long minimum() {
-    return isEmpty() ? null : minimum.get();
+    return snapshot().minimum();
   }
 
   @Override
   public double average() {
-    return ((double) total.sum()) / count.sum();
+    return snapshot().average();
+  }
+
+  @Override
+  public LatencySnapshot snapshot() {
+    return cells.snapshot();
   }
 
   @Override
@@ -0,0 +1,144 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.latency;
+
+import org.terracotta.statistics.StatisticType;
+import org.terracotta.statistics.ValueStatistic;
+import org.terracotta.statistics.observer.ChainedEventObserver;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.lang.Math.exp;
+import static java.lang.Math.pow;
+import static org.terracotta.statistics.Time.time;
+
+/**
+ * An exponentially weighted moving average of event latency.
+ * <p>
+ *   Latencies are summed in to a pair of striped counters, which are folded in to exponentially weighted count and
+ *   total averages once per tick.  Their ratio is the event-weighted average latency, which holds steady through idle
+ *   periods.  Ticks happen lazily, on the first event or read after each tick boundary, so the statistic holds constant
+ *   state regardless of the averaging period.
+ * </p>
+ */
+public class LatencyExponentialMovingAverage implements ChainedEventObserver, ValueStatistic<Double> {
+
+  private static final long DEFAULT_TICK_SECONDS = 5;
+
+  private final LongAdder count = new LongAdder();
+  private final LongAdder total = new LongAdder();
+  private final AtomicLong lastTick;
+  private final long tickNanos;
+  private final double alpha;
+
+  private volatile double averageCount;
+  private volatile double averageTotal;
+
+  /**
+   * Creates a latency average with the given time constant, ticking every 5 seconds.
+   *
+   * @param time averaging time constant
+   * @param unit time constant unit
+   */
+  public LatencyExponentialMovingAverage(long time, TimeUnit unit) {
+    this(time, unit, DEFAULT_TICK_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Creates a latency average with the given time constant and tick interval.
+   *
+   * @param time averaging time constant
+   * @param unit time constant unit
+   * @param tick tick interval
+   * @param tickUnit tick interval unit
+   * @throws IllegalArgumentException if the tick interval is shorter than a nanosecond
+   */
+  public LatencyExponentialMovingAverage(long time, TimeUnit unit, long tick, TimeUnit tickUnit) throws IllegalArgumentException {
+    this.tickNanos = tickUnit.toNanos(tick);
+    if (tickNanos <= 0) {
+      throw new IllegalArgumentException("Tick interval must be at least 1ns: " + tick + " " + tickUnit);
+    }
+    this.alpha = 1 - exp(-((double) tickNanos) / unit.toNanos(time));
+    this.lastTick = new AtomicLong(time());
+  }
+
+  public static LatencyExponentialMovingAverage oneMinute() {
+    return new LatencyExponentialMovingAverage(1, TimeUnit.MINUTES);
+  }
+
+  public static LatencyExponentialMovingAverage fiveMinute() {
+    return new LatencyExponentialMovingAverage(5, TimeUnit.MINUTES);
+  }
+
+  public static LatencyExponentialMovingAverage fifteenMinute() {
+    return new LatencyExponentialMovingAverage(15, TimeUnit.MINUTES);
+  }
+
+  @Override
+  public Double value() {
+    return average();
+  }
+
+  @Override
+  public StatisticType type() {
+    return StatisticType.GAUGE;
+  }
+
+  /**
+   * @return The average in ns or NaN if no value
+   */
+  public double average() {
+    tickIfNecessary(time());
+    return averageTotal / averageCount;
+  }
+
+  @Override
+  public void event(long time, long latency) {
+    tickIfNecessary(time);
+    count.increment();
+    total.add(latency);
+  }
+
+  /*
+   * The thread that claims a tick boundary folds the pending counters in to the first elapsed tick, and decays the
+   * averages over any further (idle) ticks.  Decay leaves the average latency unchanged, but gives the next events
+   * their proper weight.
+   */
+  private void tickIfNecessary(long now) {
+    long last = lastTick.get();
+    long age = now - last;
+    if (age >= tickNanos) {
+      long ticks = age / tickNanos;
+      if (lastTick.compareAndSet(last, last + ticks * tickNanos)) {
+        long tickCount = count.sumThenReset();
+        long tickTotal = total.sumThenReset();
+        if (averageCount == 0.0) {
+          averageCount = tickCount;
+          averageTotal = tickTotal;
+        } else {
+          averageCount += alpha * (tickCount - averageCount);
+          averageTotal += alpha * (tickTotal - averageTotal);
+        }
+        double decay = pow(1 - alpha, ticks - 1);
+        averageCount *= decay;
+        averageTotal *= decay;
+      }
+    }
+  }
+}
@@ -33,6 +33,11 @@ public class LatencyPeriodAccumulator implements LatencyStatistic, ChainedEventO
     accumulator = LatencyAccumulator.accumulator(latencies);
   }
 
+  LatencyPeriodAccumulator(long start, long length, LatencySnapshot snapshot) {
+    this(start, length);
+    accumulator.accumulate(snapshot);
+  }
+
   public boolean isBefore(long time) {
     return end <= time;
   }
@@ -94,6 +99,11 @@ public class LatencyPeriodAccumulator implements LatencyStatistic, ChainedEventO
     return accumulator.average();
   }
 
+  @Override
+  public LatencySnapshot snapshot() {
+    return accumulator.snapshot();
+  }
+
   @Override
   public String toString() {
     return "LatencyPeriodAccumulator{" +
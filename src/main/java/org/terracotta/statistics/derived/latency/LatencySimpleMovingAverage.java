@@ -16,17 +16,23 @@
  */
 package org.terracotta.statistics.derived.latency;
 
+import org.terracotta.statistics.derived.EpochPartition;
 import org.terracotta.statistics.observer.ChainedEventObserver;
 
-import java.util.Iterator;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
 
+import static java.lang.Math.floorDiv;
+import static java.lang.Math.floorMod;
 import static org.terracotta.statistics.Time.time;
 
 /**
+ * Latency statistics over a sliding window.
+ * <p>
+ *   Latencies are accumulated in to a fixed ring of partitions, each covering an aligned {@code window / partitionCount}
+ *   slice of time.  Partitions are reused in place as the window slides, so recording an event never allocates, and
+ *   reading is a scan of the ring.
+ * </p>
+ *
  * @author cdennis
  * @author Mathieu Carbou
  */
@@ -34,8 +40,7 @@ public class LatencySimpleMovingAverage implements ChainedEventObserver, Latency
 
   private static final int PARTITION_COUNT = 10;
 
-  private final Queue<LatencyPeriodAccumulator> archive = new ConcurrentLinkedQueue<>();
-  private final AtomicReference<LatencyPeriodAccumulator> activePartition;
+  private final Partition[] partitions;
 
   private final long windowSize;
   private final long partitionSize;
@@ -46,108 +51,70 @@ public class LatencySimpleMovingAverage implements ChainedEventObserver, Latency
 
   public LatencySimpleMovingAverage(long time, TimeUnit unit, int partitionCount) {
     this.windowSize = unit.toNanos(time);
-    this.partitionSize = windowSize / partitionCount;
-    this.activePartition = new AtomicReference<>(new LatencyPeriodAccumulator(Long.MIN_VALUE, partitionSize));
+    this.partitionSize = Math.max(1L, windowSize / partitionCount);
+    //one extra partition holds the partially expired slice at the start of the window
+    this.partitions = new Partition[partitionCount + 1];
+    for (int i = 0; i < partitions.length; i++) {
+      partitions[i] = new Partition();
+    }
   }
 
   @Override
   public final double average() {
-    long startTime = time() - windowSize;
-
-    LatencyPeriodAccumulator current = activePartition.get();
-    if (current.isBefore(startTime)) {
-      return Double.NaN;
-    } else {
-      long total = current.accumulator().total();
-      long count = current.accumulator().count();
-
-      for (Iterator<LatencyPeriodAccumulator> it = archive.iterator(); it.hasNext(); ) {
-        LatencyPeriodAccumulator partition = it.next();
-        if (partition == current) {
-          break;
-        } else if (partition.isBefore(startTime)) {
-          it.remove();
-        } else {
-          total += partition.accumulator().total();
-          count += partition.accumulator().count();
-        }
-      }
-
-      return ((double) total) / count;
-    }
+    return snapshot().average();
   }
 
   @Override
   public final Long maximum() {
-    long startTime = time() - windowSize;
-
-    LatencyPeriodAccumulator current = activePartition.get();
-    if (current.isBefore(startTime)) {
-      return null;
-    } else {
-      long maximum = current.maximum();
-      for (Iterator<LatencyPeriodAccumulator> it = archive.iterator(); it.hasNext(); ) {
-        LatencyPeriodAccumulator partition = it.next();
-        if (partition == current) {
-          break;
-        } else if (partition.isBefore(startTime)) {
-          it.remove();
-        } else {
-          maximum = Math.max(maximum, partition.maximum());
-        }
-      }
-
-      return maximum;
-    }
+    return snapshot().maximum();
   }
 
   @Override
   public final Long minimum() {
+    return snapshot().minimum();
+  }
+
+  @Override
+  public LatencySnapshot snapshot() {
     long startTime = time() - windowSize;
 
-    LatencyPeriodAccumulator current = activePartition.get();
-    if (current.isBefore(startTime)) {
-      return null;
-    } else {
-      long minimum = current.minimum();
-      for (Iterator<LatencyPeriodAccumulator> it = archive.iterator(); it.hasNext(); ) {
-        LatencyPeriodAccumulator partition = it.next();
-        if (partition == current) {
-          break;
-        } else if (partition.isBefore(startTime)) {
-          it.remove();
-        } else {
-          minimum = Math.min(minimum, partition.minimum());
+    long count = 0;
+    long total = 0;
+    long minimum = Long.MAX_VALUE;
+    long maximum = Long.MIN_VALUE;
+    for (Partition partition : partitions) {
+      if (partition.isLive(startTime, partitionSize)) {
+        LatencySnapshot snapshot = partition.accumulator.snapshot();
+        if (!snapshot.isEmpty()) {
+          count += snapshot.count();
+          total += snapshot.total();
+          minimum = Math.min(minimum, snapshot.minimum());
+          maximum = Math.max(maximum, snapshot.maximum());
         }
       }
-
-      return minimum;
     }
+    return new LatencySnapshot(count, total, minimum, maximum);
   }
 
   @Override
   public void event(long timeNs, long latencyNs) {
-    while (true) {
-      LatencyPeriodAccumulator partition = activePartition.get();
-      if (partition.tryAccumulate(timeNs, latencyNs)) {
-        return;
-      } else {
-        if (activePartition.compareAndSet(partition, new LatencyPeriodAccumulator(timeNs, partitionSize, latencyNs))) {
-          archive(partition);
-          return;
-        }
-      }
+    long epoch = floorDiv(timeNs, partitionSize);
+    Partition partition = partitions[(int) floorMod(epoch, (long) partitions.length)];
+    if (partition.claim(epoch)) {
+      partition.accumulator.accumulate(latencyNs);
     }
   }
 
-  private void archive(LatencyPeriodAccumulator partition) {
-    archive.add(partition);
-    long startTime = partition.end() - windowSize;
-    for (LatencyPeriodAccumulator earliest = archive.peek(); earliest != null && earliest.isBefore(startTime); earliest = archive.peek()) {
-      if (archive.remove(earliest)) {
-        break;
-      }
+  /**
+   * A reusable accumulator, stamped with the epoch (time / partition size) it is currently accumulating.
+   */
+  private static final class Partition extends EpochPartition {
+
+    private final LatencyAccumulator accumulator = LatencyAccumulator.empty();
+
+    @Override
+    protected void reset() {
+      accumulator.reset();
     }
   }
-
 }
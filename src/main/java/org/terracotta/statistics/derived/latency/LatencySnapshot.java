@@ -0,0 +1,116 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.latency;
+
+/**
+ * An immutable, consistent view of the latency statistics over some set of events.
+ * <p>
+ *   Snapshots are computed in a single pass over the underlying statistic, so the count, total, minimum, maximum and
+ *   average all describe the same set of events.
+ * </p>
+ */
+public final class LatencySnapshot implements LatencyStatistic {
+
+  private static final LatencySnapshot EMPTY = new LatencySnapshot(0L, 0L, Long.MAX_VALUE, Long.MIN_VALUE);
+  private static final long UNKNOWN = -1L;
+
+  private final long count;
+  private final long total;
+  private final long minimum;
+  private final long maximum;
+  private final double average;
+
+  LatencySnapshot(long count, long total, long minimum, long maximum) {
+    this(count, total, minimum, maximum, ((double) total) / count);
+  }
+
+  private LatencySnapshot(long count, long total, long minimum, long maximum, double average) {
+    this.count = count;
+    this.total = total;
+    this.minimum = minimum;
+    this.maximum = maximum;
+    this.average = average;
+  }
+
+  /**
+   * Returns a snapshot of a statistic that does not track its event count.
+   *
+   * @param minimum minimum latency
+   * @param maximum maximum latency
+   * @param average average latency
+   * @return a snapshot with an unknown count and total
+   */
+  static LatencySnapshot uncounted(long minimum, long maximum, double average) {
+    return new LatencySnapshot(UNKNOWN, UNKNOWN, minimum, maximum, average);
+  }
+
+  /**
+   * @return an empty snapshot
+   */
+  public static LatencySnapshot empty() {
+    return EMPTY;
+  }
+
+  /**
+   * @return The number of events, or {@code -1} if unknown
+   */
+  public long count() {
+    return count;
+  }
+
+  /**
+   * @return The sum of the event latencies, or {@code -1} if unknown
+   */
+  public long total() {
+    return total;
+  }
+
+  public boolean isEmpty() {
+    return count == 0;
+  }
+
+  @Override
+  public Long minimum() {
+    return isEmpty() ? null : minimum;
+  }
+
+  @Override
+  public Long maximum() {
+    return isEmpty() ? null : maximum;
+  }
+
+  @Override
+  public double average() {
+    return average;
+  }
+
+  @Override
+  public LatencySnapshot snapshot() {
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return "LatencySnapshot{" +
+        "count=" + count +
+        ", total=" + total +
+        ", minimum=" + minimum() +
+        ", maximum=" + maximum() +
+        ", average=" + average() +
+        '}';
+  }
+}
@@ -40,6 +40,26 @@ public interface LatencyStatistic {
    */
   double average();
 
+  /**
+   * Returns the count, total, minimum, maximum and average in one consistent view, computed in a single pass.
+   * <p>
+   *   The default implementation assembles the snapshot from {@link #minimum()}, {@link #maximum()} and
+   *   {@link #average()}, so it is not consistent under concurrent updates and reports an unknown ({@code -1}) count
+   *   and total.  Implementations that track a count should override it.
+   * </p>
+   *
+   * @return a snapshot of this statistic
+   */
+  default LatencySnapshot snapshot() {
+    Long minimum = minimum();
+    Long maximum = maximum();
+    if (minimum == null || maximum == null) {
+      return LatencySnapshot.empty();
+    } else {
+      return LatencySnapshot.uncounted(minimum, maximum, average());
+    }
+  }
+
   default ValueStatistic<Double> averageStatistic() {
     return gauge(this::average);
   }
@@ -0,0 +1,128 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.latency;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * An immutable summary of the latencies observed in a single window.
+ * <p>
+ *   Alongside the exact count, total, minimum and maximum a summary carries a precomputed value for each of the
+ *   quantiles it was configured with.
+ * </p>
+ */
+public final class LatencySummary implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final long count;
+  private final long total;
+  private final long minimum;
+  private final long maximum;
+  private final double[] quantiles;
+  private final long[] values;
+
+  LatencySummary(long count, long total, long minimum, long maximum, double[] quantiles, long[] values) {
+    this.count = count;
+    this.total = total;
+    this.minimum = minimum;
+    this.maximum = maximum;
+    this.quantiles = quantiles;
+    this.values = values;
+  }
+
+  /**
+   * @return The number of events
+   */
+  public long count() {
+    return count;
+  }
+
+  /**
+   * @return The sum of the event latencies
+   */
+  public long total() {
+    return total;
+  }
+
+  public boolean isEmpty() {
+    return count == 0;
+  }
+
+  public Long minimum() {
+    return isEmpty() ? null : minimum;
+  }
+
+  public Long maximum() {
+    return isEmpty() ? null : maximum;
+  }
+
+  public double average() {
+    return ((double) total) / count;
+  }
+
+  /**
+   * @return The quantiles summarized
+   */
+  public double[] quantiles() {
+    return quantiles.clone();
+  }
+
+  /**
+   * Returns the (approximate) latency at the given quantile.
+   *
+   * @param quantile a summarized quantile
+   * @return the latency at {@code quantile}, or {@code null} if the summary is empty
+   * @throws IllegalArgumentException if {@code quantile} is not one of the summarized quantiles
+   */
+  public Long quantile(double quantile) throws IllegalArgumentException {
+    for (int i = 0; i < quantiles.length; i++) {
+      if (quantiles[i] == quantile) {
+        return isEmpty() ? null : values[i];
+      }
+    }
+    throw new IllegalArgumentException("Quantile " + quantile + " is not summarized: " + Arrays.toString(quantiles));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof LatencySummary)) return false;
+    LatencySummary that = (LatencySummary) o;
+    return count == that.count && total == that.total && minimum == that.minimum && maximum == that.maximum
+        && Arrays.equals(quantiles, that.quantiles) && Arrays.equals(values, that.values);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Long.hashCode(count) + Arrays.hashCode(values);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("LatencySummary{")
+        .append("count=").append(count)
+        .append(", minimum=").append(minimum())
+        .append(", maximum=").append(maximum())
+        .append(", average=").append(average());
+    for (int i = 0; i < quantiles.length; i++) {
+      sb.append(", p").append(quantiles[i] * 100).append('=').append(isEmpty() ? null : values[i]);
+    }
+    return sb.append('}').toString();
+  }
+}
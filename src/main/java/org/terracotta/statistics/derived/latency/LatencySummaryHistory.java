@@ -0,0 +1,358 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.latency;
+
+import org.terracotta.statistics.Sample;
+import org.terracotta.statistics.SampledStatistic;
+import org.terracotta.statistics.StatisticType;
+import org.terracotta.statistics.Time;
+import org.terracotta.statistics.derived.histogram.Striped;
+import org.terracotta.statistics.observer.ChainedEventObserver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import static java.lang.Long.numberOfLeadingZeros;
+import static java.lang.Math.ceil;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Keeps a history of latency summaries (count, average, minimum, maximum and quantiles) over tumbling windows.
+ * <p>
+ *   As with {@link MaximumLatencyHistory} the history is based on a sample count and not a time frame: windows are
+ *   only opened when events occur.
+ * <p>
+ *   The active window records each latency with a single striped insert: every stripe holds a log-linear bucket array
+ *   (16 buckets per power of two, so quantiles are reported to within roughly 3%) along with its count, total, minimum
+ *   and maximum.  A closed window stays live for one further window, so that writers racing its closure are still
+ *   counted.  It is then summarized once, and its quantiles, count, total, minimum and maximum are frozen in to
+ *   primitive ring arrays.  Reading the history only copies the frozen values out.
+ */
+public class LatencySummaryHistory implements ChainedEventObserver, SampledStatistic<LatencySummary> {
+
+  private static final double[] DEFAULT_QUANTILES = {0.5, 0.99, 0.999};
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) << SUB_BUCKET_BITS;
+
+  /*
+   * Stripe layout: the bucket counts followed by the count, total, minimum and maximum.
+   */
+  private static final int COUNT = BUCKETS;
+  private static final int TOTAL = BUCKETS + 1;
+  private static final int MINIMUM = BUCKETS + 2;
+  private static final int MAXIMUM = BUCKETS + 3;
+
+  private final AtomicReference<Window> latestWindow = new AtomicReference<>();
+  private final boolean retainsClosed;
+  private final double[] quantiles;
+  private final long[] starts;
+  private final long[] counts;
+  private final long[] totals;
+  private final long[] minima;
+  private final long[] maxima;
+  private final long[] values;
+  private final long windowSizeNs;
+  private final LongSupplier timeSupplier;
+  private volatile long drift;
+
+  // guarded by this
+  private Window closing;
+  private int head;
+  private int size;
+
+  /**
+   * Creates a history summarizing the median, 99th and 99.9th percentiles.
+   *
+   * @param historySize    The number of samples to keep
+   * @param windowSize     The size of each window
+   * @param windowSizeUnit Window size unit
+   * @param timeSupplier   The millisecond time source
+   */
+  public LatencySummaryHistory(int historySize, long windowSize, TimeUnit windowSizeUnit, LongSupplier timeSupplier) {
+    this(historySize, windowSize, windowSizeUnit, timeSupplier, DEFAULT_QUANTILES);
+  }
+
+  /**
+   * @param historySize    The number of samples to keep
+   * @param windowSize     The size of each window
+   * @param windowSizeUnit Window size unit
+   * @param timeSupplier   The millisecond time source
+   * @param quantiles      The quantiles to summarize in each window
+   */
+  public LatencySummaryHistory(int historySize, long windowSize, TimeUnit windowSizeUnit, LongSupplier timeSupplier, double... quantiles) {
+    if (historySize < 1) {
+      throw new IllegalArgumentException("History size must be positive: " + historySize);
+    }
+    for (double quantile : quantiles) {
+      if (!(quantile >= 0.0 && quantile <= 1.0)) {
+        throw new IllegalArgumentException("Quantile must be in the range [0.0..1.0]: " + quantile);
+      }
+    }
+    this.quantiles = quantiles.clone();
+    Arrays.sort(this.quantiles);
+    //the active and closing windows occupy the last two history slots
+    int frozen = max(historySize - 2, 0);
+    this.retainsClosed = historySize > 1;
+    this.starts = new long[frozen];
+    this.counts = new long[frozen];
+    this.totals = new long[frozen];
+    this.minima = new long[frozen];
+    this.maxima = new long[frozen];
+    this.values = new long[frozen * quantiles.length];
+    this.windowSizeNs = TimeUnit.NANOSECONDS.convert(windowSize, windowSizeUnit);
+    this.timeSupplier = timeSupplier;
+    this.drift = Time.time() - timeSupplier.getAsLong() * 1_000_000;
+  }
+
+  @Override
+  public void event(long timeNs, long latencyNs) {
+    while (true) {
+      Window window = latestWindow.get();
+      if (window != null && window.tryAccumulate(timeNs, latencyNs)) {
+        return;
+      }
+      Window newWindow = new Window(timeNs, windowSizeNs);
+      if (latestWindow.compareAndSet(window, newWindow)) {
+        this.drift = Time.time() - timeSupplier.getAsLong() * 1_000_000;
+        newWindow.tryAccumulate(timeNs, latencyNs);
+        if (window != null) {
+          close(window);
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Returns a summary of the current window.
+   * <p>
+   *   Unlike the history this computes the quantiles of the (still open) window on each call.
+   * </p>
+   *
+   * @return the current window summary, or {@code null} if the current window has closed
+   */
+  @Override
+  public LatencySummary value() {
+    Window window = latestWindow.get();
+    if (window == null || window.end <= Time.time()) {
+      return null;
+    }
+    return summarize(window);
+  }
+
+  @Override
+  public StatisticType type() {
+    return StatisticType.GAUGE;
+  }
+
+  @Override
+  public List<Sample<LatencySummary>> history() {
+    return samples(Long.MIN_VALUE, drift);
+  }
+
+  @Override
+  public List<Sample<LatencySummary>> history(long sinceMillis) {
+    long drift = this.drift;
+    return samples(sinceMillis * 1_000_000 + drift, drift);
+  }
+
+  private synchronized List<Sample<LatencySummary>> samples(long sinceNs, long drift) {
+    List<Sample<LatencySummary>> samples = new ArrayList<>(size + 2);
+    for (int i = firstStartAtOrAfter(sinceNs); i < size; i++) {
+      int index = slot(i);
+      int offset = index * quantiles.length;
+      LatencySummary summary = new LatencySummary(counts[index], totals[index], minima[index], maxima[index],
+          quantiles, Arrays.copyOfRange(values, offset, offset + quantiles.length));
+      samples.add(new Sample<>((starts[index] - drift) / 1_000_000, summary));
+    }
+    if (closing != null && closing.start >= sinceNs) {
+      samples.add(new Sample<>((closing.start - drift) / 1_000_000, summarize(closing)));
+    }
+    Window active = latestWindow.get();
+    if (active != null && active.start >= sinceNs) {
+      samples.add(new Sample<>((active.start - drift) / 1_000_000, summarize(active)));
+    }
+    return samples;
+  }
+
+  private LatencySummary summarize(Window window) {
+    long[] merged = window.merge();
+    long[] windowValues = new long[quantiles.length];
+    quantiles(quantiles, merged, windowValues, 0);
+    boolean empty = merged[COUNT] == 0;
+    return new LatencySummary(merged[COUNT], merged[TOTAL], empty ? 0 : merged[MINIMUM], empty ? 0 : merged[MAXIMUM],
+        quantiles, windowValues);
+  }
+
+  /*
+   * Binary search for the first (logical) ring position whose window starts at or after sinceNs.
+   */
+  private int firstStartAtOrAfter(long sinceNs) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (starts[slot(mid)] < sinceNs) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private int slot(int position) {
+    int index = head + position;
+    return index >= starts.length ? index - starts.length : index;
+  }
+
+  /*
+   * Retains a just closed window, freezing the previously closed window in to the ring (overwriting the oldest window
+   * when full).
+   */
+  private synchronized void close(Window closed) {
+    if (!retainsClosed) {
+      return;
+    }
+    Window previous = closing;
+    closing = closed;
+    if (previous == null || starts.length == 0) {
+      return;
+    }
+    if (size == starts.length) {
+      head = slot(1);
+      size--;
+    }
+    int tail = slot(size);
+    long[] merged = previous.merge();
+    boolean empty = merged[COUNT] == 0;
+    starts[tail] = previous.start;
+    counts[tail] = merged[COUNT];
+    totals[tail] = merged[TOTAL];
+    minima[tail] = empty ? 0 : merged[MINIMUM];
+    maxima[tail] = empty ? 0 : merged[MAXIMUM];
+    quantiles(quantiles, merged, values, tail * quantiles.length);
+    size++;
+  }
+
+  /*
+   * Single pass over the merged buckets resolving the (sorted) quantiles, clamped to the exact minimum and maximum.
+   */
+  private static void quantiles(double[] quantiles, long[] merged, long[] target, int offset) {
+    long count = merged[COUNT];
+    if (count == 0) {
+      Arrays.fill(target, offset, offset + quantiles.length, 0L);
+      return;
+    }
+    long minimum = merged[MINIMUM];
+    long maximum = merged[MAXIMUM];
+    long cumulative = 0;
+    int bucket = -1;
+    for (int q = 0; q < quantiles.length; q++) {
+      long rank = max(1L, (long) ceil(quantiles[q] * count));
+      while (cumulative < rank && bucket < BUCKETS - 1) {
+        cumulative += merged[++bucket];
+      }
+      target[offset + q] = min(maximum, max(minimum, bucketValue(bucket)));
+    }
+  }
+
+  /*
+   * Log-linear bucketing: values below 16 get their own bucket, above that each power of two is split in to 16.
+   */
+  static int bucket(long latency) {
+    if (latency < SUB_BUCKETS) {
+      return (int) max(latency, 0);
+    } else {
+      int shift = (Long.SIZE - 1 - numberOfLeadingZeros(latency)) - SUB_BUCKET_BITS;
+      return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((latency >>> shift) & (SUB_BUCKETS - 1));
+    }
+  }
+
+  /*
+   * The midpoint of the given bucket.
+   */
+  static long bucketValue(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    } else {
+      int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+      long lower = ((long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1)))) << shift;
+      return lower + ((1L << shift) >>> 1);
+    }
+  }
+
+  private static final class Window extends Striped<long[]> {
+
+    private final long start;
+    private final long end;
+
+    Window(long start, long length) {
+      super(Window::stripe);
+      this.start = start;
+      this.end = start + length;
+    }
+
+    boolean tryAccumulate(long time, long latency) {
+      // compare by end only, see LatencyPeriodAccumulator.tryAccumulate
+      if (time < end) {
+        int bucket = bucket(latency);
+        process(stripe -> {
+          stripe[bucket]++;
+          stripe[COUNT]++;
+          stripe[TOTAL] += latency;
+          stripe[MINIMUM] = min(stripe[MINIMUM], latency);
+          stripe[MAXIMUM] = max(stripe[MAXIMUM], latency);
+        });
+        return true;
+      } else {
+        return false;
+      }
+    }
+
+    /*
+     * Merges all stripes, each read under its guard.
+     */
+    long[] merge() {
+      long[] merged = stripe();
+      merged[COUNT] = visit(stripe -> {
+        for (int i = 0; i < BUCKETS; i++) {
+          merged[i] += stripe[i];
+        }
+        merged[TOTAL] += stripe[TOTAL];
+        merged[MINIMUM] = min(merged[MINIMUM], stripe[MINIMUM]);
+        merged[MAXIMUM] = max(merged[MAXIMUM], stripe[MAXIMUM]);
+        return stripe[COUNT];
+      }).sum();
+      return merged;
+    }
+
+    private static long[] stripe() {
+      long[] stripe = new long[MAXIMUM + 1];
+      stripe[MINIMUM] = Long.MAX_VALUE;
+      stripe[MAXIMUM] = Long.MIN_VALUE;
+      return stripe;
+    }
+  }
+}
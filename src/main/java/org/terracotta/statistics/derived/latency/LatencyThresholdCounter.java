@@ -0,0 +1,327 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.latency;
+
+import org.terracotta.statistics.Table;
+import org.terracotta.statistics.TableValueStatistic;
+import org.terracotta.statistics.ValueStatistic;
+import org.terracotta.statistics.ValueStatistics;
+import org.terracotta.statistics.observer.ChainedEventObserver;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+import static java.lang.Math.floorDiv;
+import static java.lang.Math.floorMod;
+import static org.terracotta.statistics.Time.time;
+import static org.terracotta.statistics.ValueStatistics.counter;
+import static org.terracotta.statistics.ValueStatistics.gauge;
+
+/**
+ * Counts the operations whose latency exceeds each of a fixed set of thresholds.
+ * <p>
+ *   This is a cheap alternative to a full latency histogram when only "how many operations took longer than 1ms / 10ms
+ *   / 100ms" is needed.  Recording an event is a branch-free linear scan of the (few) thresholds followed by a single
+ *   counter increment.  Counts are either cumulative, or kept in a ring of rotating time slices covering a sliding
+ *   window, in which case each slice is a row of {@code thresholds.length + 1} counters in a single shared array.
+ * </p>
+ * <p>
+ *   Like {@link org.terracotta.statistics.derived.EventRateSimpleMovingAverage} slices are reused in place as the
+ *   window slides, so recording never allocates, and reads are not atomic with respect to concurrent updates.
+ * </p>
+ */
+public class LatencyThresholdCounter implements ChainedEventObserver {
+
+  private static final long RESETTING = Long.MIN_VALUE;
+  private static final long UNUSED = Long.MIN_VALUE + 1;
+
+  private final long[] thresholds;
+  private final int width;
+  private final long window;
+  private final long sliceLength;
+  private final AtomicLongArray epochs;
+  private final AtomicLongArray counts;
+
+  /**
+   * Creates a cumulative threshold counter.
+   *
+   * @param thresholds strictly increasing latency thresholds
+   * @throws IllegalArgumentException if {@code thresholds} is empty or not strictly increasing
+   */
+  public LatencyThresholdCounter(long... thresholds) throws IllegalArgumentException {
+    this.thresholds = checkThresholds(thresholds);
+    this.width = thresholds.length + 1;
+    this.window = 0;
+    this.sliceLength = 0;
+    this.epochs = null;
+    this.counts = new AtomicLongArray(width);
+  }
+
+  /**
+   * Creates a threshold counter over a sliding window of rotating slices.
+   *
+   * @param window     window size
+   * @param unit       window size unit
+   * @param sliceCount number of window slices
+   * @param thresholds strictly increasing latency thresholds
+   * @throws IllegalArgumentException if {@code thresholds} is empty or not strictly increasing, or if the window cannot
+   * be split in to {@code sliceCount} slices
+   */
+  public LatencyThresholdCounter(long window, TimeUnit unit, int sliceCount, long... thresholds) throws IllegalArgumentException {
+    if (sliceCount <= 0) {
+      throw new IllegalArgumentException("Slice count must be positive: " + sliceCount);
+    }
+    this.window = unit.toNanos(window);
+    if (this.window < sliceCount) {
+      throw new IllegalArgumentException("Window must be at least as long as the slice count: " + this.window);
+    }
+    this.thresholds = checkThresholds(thresholds);
+    this.width = thresholds.length + 1;
+    this.sliceLength = this.window / sliceCount;
+    //one extra slice holds the partially expired slice at the start of the window
+    this.epochs = new AtomicLongArray(sliceCount + 1);
+    for (int i = 0; i < epochs.length(); i++) {
+      epochs.set(i, UNUSED);
+    }
+    this.counts = new AtomicLongArray((sliceCount + 1) * width);
+  }
+
+  @Override
+  public void event(long time, long latency) {
+    int row = sliceLength == 0 ? 0 : claim(floorDiv(time, sliceLength));
+    if (row >= 0) {
+      counts.getAndIncrement(row * width + bucket(latency));
+    }
+  }
+
+  /**
+   * @return the latency thresholds
+   */
+  public long[] thresholds() {
+    return thresholds.clone();
+  }
+
+  /**
+   * @return the number of operations in the window
+   */
+  public long count() {
+    return sum(windowStart(window), 0);
+  }
+
+  /**
+   * Returns the number of operations in the window whose latency exceeded {@code threshold}.
+   *
+   * @param threshold a configured threshold
+   * @return the number of operations exceeding {@code threshold}
+   * @throws IllegalArgumentException if {@code threshold} is not one of the configured thresholds
+   */
+  public long exceeding(long threshold) throws IllegalArgumentException {
+    return sum(windowStart(window), indexOf(threshold) + 1);
+  }
+
+  /**
+   * Returns the fraction of the operations in the window whose latency exceeded {@code threshold}.
+   *
+   * @param threshold a configured threshold
+   * @return the fraction of operations exceeding {@code threshold}, or {@code 0.0} if there were none
+   * @throws IllegalArgumentException if {@code threshold} is not one of the configured thresholds
+   */
+  public double ratio(long threshold) throws IllegalArgumentException {
+    return ratio(window, threshold);
+  }
+
+  /**
+   * Returns the rate at which the error budget of a latency objective is being consumed over the counter's window, or
+   * over all operations if the counter is cumulative.
+   * <p>
+   *   An objective of {@code 0.99} tolerates 1% of operations exceeding {@code threshold}.  A burn rate of {@code 1.0}
+   *   consumes that budget exactly, higher values consume it proportionately faster.
+   * </p>
+   *
+   * @param threshold a configured threshold
+   * @param objective fraction of operations that should not exceed {@code threshold}
+   * @return the error budget burn rate
+   * @throws IllegalArgumentException if {@code threshold} is not one of the configured thresholds, or the objective is
+   * not in the range (0.0..1.0)
+   */
+  public double burnRate(long threshold, double objective) throws IllegalArgumentException {
+    return ratio(window, threshold) / errorBudget(objective);
+  }
+
+  /**
+   * Returns the rate at which the error budget of a latency objective is being consumed over the most recent
+   * {@code window}, to within one slice.
+   *
+   * @param threshold a configured threshold
+   * @param objective fraction of operations that should not exceed {@code threshold}
+   * @param window    burn rate window, no longer than the counter's window
+   * @param unit      burn rate window unit
+   * @return the error budget burn rate
+   * @throws IllegalArgumentException if {@code threshold} is not one of the configured thresholds, the objective is not
+   * in the range (0.0..1.0), the window is longer than the counter's window, or the counter is cumulative
+   * @see #burnRate(long, double)
+   */
+  public double burnRate(long threshold, double objective, long window, TimeUnit unit) throws IllegalArgumentException {
+    double budget = errorBudget(objective);
+    if (sliceLength == 0) {
+      throw new IllegalArgumentException("Cumulative counters have no burn rate window");
+    }
+    long burnWindow = unit.toNanos(window);
+    if (burnWindow > this.window) {
+      throw new IllegalArgumentException("Burn rate window " + burnWindow + "ns is longer than the counter window " + this.window + "ns");
+    }
+    return ratio(burnWindow, threshold) / budget;
+  }
+
+  /**
+   * @param threshold a configured threshold
+   * @return a statistic of the operations exceeding {@code threshold}, a counter if cumulative, otherwise a gauge
+   * @throws IllegalArgumentException if {@code threshold} is not one of the configured thresholds
+   */
+  public ValueStatistic<Long> exceedingStatistic(long threshold) throws IllegalArgumentException {
+    indexOf(threshold);
+    return countStatistic(() -> exceeding(threshold));
+  }
+
+  /**
+   * Returns a table statistic with a row per threshold holding the {@code exceeding} count and its {@code ratio}.
+   *
+   * @return the threshold table
+   */
+  public ValueStatistic<Table> table() {
+    TableValueStatistic.Builder builder = TableValueStatistic.newBuilder("exceeding", "ratio");
+    for (long threshold : thresholds) {
+      builder.withRow(Long.toString(threshold), row -> row
+          .registerStatistic("exceeding", countStatistic(() -> exceeding(threshold)))
+          .registerStatistic("ratio", ValueStatistics.ratio(() -> ratio(threshold))));
+    }
+    return builder.build();
+  }
+
+  /*
+   * Windowed counts fall as slices expire, so only cumulative counts are exported as counters.
+   */
+  private ValueStatistic<Long> countStatistic(Supplier<Long> count) {
+    return sliceLength == 0 ? counter(count) : gauge(count);
+  }
+
+  private static double errorBudget(double objective) throws IllegalArgumentException {
+    if (!(objective > 0.0 && objective < 1.0)) {
+      throw new IllegalArgumentException("Objective must be in the range (0.0..1.0): " + objective);
+    }
+    return 1.0 - objective;
+  }
+
+  /*
+   * The number of thresholds strictly below latency, without an early exit so the comparisons compile branch-free.
+   */
+  int bucket(long latency) {
+    int bucket = 0;
+    for (long threshold : thresholds) {
+      bucket += latency > threshold ? 1 : 0;
+    }
+    return bucket;
+  }
+
+  private double ratio(long window, long threshold) {
+    long since = windowStart(window);
+    long exceeding = sum(since, indexOf(threshold) + 1);
+    long count = sum(since, 0);
+    return count == 0 ? 0.0 : ((double) exceeding) / count;
+  }
+
+  private long windowStart(long window) {
+    if (sliceLength == 0) {
+      return Long.MIN_VALUE;
+    } else {
+      long now = time();
+      return now < Long.MIN_VALUE + window ? Long.MIN_VALUE : now - window;
+    }
+  }
+
+  private long sum(long since, int fromBucket) {
+    long sum = 0;
+    int rows = sliceLength == 0 ? 1 : epochs.length();
+    for (int row = 0; row < rows; row++) {
+      if (sliceLength != 0) {
+        long epoch = epochs.get(row);
+        if (epoch == UNUSED || epoch == RESETTING || (epoch + 1) * sliceLength <= since) {
+          continue;
+        }
+      }
+      for (int b = fromBucket; b < width; b++) {
+        sum += counts.get(row * width + b);
+      }
+    }
+    return sum;
+  }
+
+  /*
+   * Claims the row for the given epoch, lazily resetting it if it holds an older epoch.  Returns -1 if the row has
+   * already moved on to a later epoch.
+   */
+  private int claim(long epoch) {
+    int row = (int) floorMod(epoch, (long) epochs.length());
+    while (true) {
+      long current = epochs.get(row);
+      if (current == epoch) {
+        return row;
+      } else if (current == RESETTING) {
+        Thread.yield();
+      } else if (current > epoch) {
+        return -1;
+      } else if (epochs.compareAndSet(row, current, RESETTING)) {
+        for (int b = 0; b < width; b++) {
+          counts.set(row * width + b, 0L);
+        }
+        epochs.set(row, epoch);
+        return row;
+      }
+    }
+  }
+
+  private int indexOf(long threshold) throws IllegalArgumentException {
+    int index = Arrays.binarySearch(thresholds, threshold);
+    if (index < 0) {
+      throw new IllegalArgumentException("Threshold " + threshold + " is not one of " + Arrays.toString(thresholds));
+    }
+    return index;
+  }
+
+  private static long[] checkThresholds(long[] thresholds) throws IllegalArgumentException {
+    if (thresholds.length == 0) {
+      throw new IllegalArgumentException("At least one threshold is required");
+    }
+    for (int i = 1; i < thresholds.length; i++) {
+      if (thresholds[i] <= thresholds[i - 1]) {
+        throw new IllegalArgumentException("Thresholds must be strictly increasing: " + Arrays.toString(thresholds));
+      }
+    }
+    return thresholds.clone();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("LatencyThresholdCounter{count=").append(count());
+    for (long threshold : thresholds) {
+      sb.append(", >").append(threshold).append('=').append(exceeding(threshold));
+    }
+    return sb.append('}').toString();
+  }
+}
@@ -22,14 +22,12 @@ import org.terracotta.statistics.StatisticType;
 import org.terracotta.statistics.Time;
 import org.terracotta.statistics.observer.ChainedEventObserver;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.LongSupplier;
-import java.util.stream.Collectors;
 
 /**
  * Keeps a history of the maximum operation latencies over a specific window.
@@ -39,18 +37,32 @@ import java.util.stream.Collectors;
  * If you set a history to 100 samples and a window of 500ms, you won't have a complete
  * time-frame of 10 seconds. You can have a sample at t0, then another one at t0 + 1 sec depending
  * on when the operations occur.
+ * <p>
+ * Only the active window, and the window before it, accumulate in to mutable (striped) state. A closed
+ * window stays live for one further window, so that writers racing its closure are still counted, and
+ * is then frozen in to primitive ring arrays, which are searched by start time.
  *
  * @author Mathieu Carbou
  */
 public class MaximumLatencyHistory implements ChainedEventObserver, SampledStatistic<Long> {
 
   private final AtomicReference<LatencyPeriodAccumulator> latestAccumulator = new AtomicReference<>();
-  private final Queue<LatencyPeriodAccumulator> archive;
+  private final boolean retainsClosed;
+  private final long[] starts;
+  private final long[] counts;
+  private final long[] totals;
+  private final long[] minima;
+  private final long[] maxima;
   private final long windowSizeNs;
   private final Consumer<LatencyPeriodAccumulator> sink;
   private final LongSupplier timeSupplier;
   private volatile long drift;
 
+  // guarded by this
+  private LatencyPeriodAccumulator closing;
+  private int head;
+  private int size;
+
   public MaximumLatencyHistory(int historySize, long windowSize, TimeUnit windowSizeUnit, LongSupplier timeSupplier) {
     this(historySize, windowSize, windowSizeUnit, timeSupplier, accumulator -> {});
   }
@@ -62,7 +74,17 @@ public class MaximumLatencyHistory implements ChainedEventObserver, SampledStati
    * @param sink           The sink used to collect the old values that are discarded from the history.
    */
   public MaximumLatencyHistory(int historySize, long windowSize, TimeUnit windowSizeUnit, LongSupplier timeSupplier, Consumer<LatencyPeriodAccumulator> sink) {
-    this.archive = new ArrayBlockingQueue<>(historySize);
+    if (historySize < 1) {
+      throw new IllegalArgumentException("History size must be positive: " + historySize);
+    }
+    //the active and closing windows occupy the last two history slots
+    int frozen = Math.max(historySize - 2, 0);
+    this.retainsClosed = historySize > 1;
+    this.starts = new long[frozen];
+    this.counts = new long[frozen];
+    this.totals = new long[frozen];
+    this.minima = new long[frozen];
+    this.maxima = new long[frozen];
     this.windowSizeNs = TimeUnit.NANOSECONDS.convert(windowSize, windowSizeUnit);
     this.sink = sink;
     this.timeSupplier = timeSupplier;
@@ -81,9 +103,14 @@ public class MaximumLatencyHistory implements ChainedEventObserver, SampledStati
         // The difference between system time and nano time needs to be recomputed
         // in case the computer went to sleep. In this case, the system time advance but not the nano time.
         this.drift = Time.time() - timeSupplier.getAsLong() * 1_000_000;
-        // Insertion will in theory be in order because for whole duration of the new window, 
-        // there cannot be another thread that will try to insert at the same time.
-        insert(newAccumulator);
+        // Closing will in theory be in order because for whole duration of the new window,
+        // there cannot be another thread that will try to close at the same time.
+        if (accumulator != null) {
+          LatencyPeriodAccumulator discarded = close(accumulator);
+          if (discarded != null) {
+            sink.accept(discarded);
+          }
+        }
         return;
       }
     }
@@ -98,6 +125,19 @@ public class MaximumLatencyHistory implements ChainedEventObserver, SampledStati
     return accumulator.maximum();
   }
 
+  /**
+   * Returns a snapshot of the latencies in the current window.
+   *
+   * @return the current window snapshot, or an empty snapshot if the current window has closed
+   */
+  public LatencySnapshot snapshot() {
+    LatencyPeriodAccumulator accumulator = latestAccumulator.get();
+    if (accumulator == null || accumulator.end() <= Time.time()) {
+      return LatencySnapshot.empty();
+    }
+    return accumulator.snapshot();
+  }
+
   @Override
   public StatisticType type() {
     return StatisticType.GAUGE;
@@ -105,29 +145,84 @@ public class MaximumLatencyHistory implements ChainedEventObserver, SampledStati
 
   @Override
   public List<Sample<Long>> history() {
-    long drift = this.drift;
-    return archive.stream()
-        .map(acumulator -> new Sample<>((acumulator.start() - drift) / 1_000_000, acumulator.maximum()))
-        .collect(Collectors.toList());
+    return samples(Long.MIN_VALUE, drift);
   }
 
   @Override
   public List<Sample<Long>> history(long sinceMillis) {
     long drift = this.drift;
-    long sinceNs = sinceMillis * 1_000_000 + drift;
-    return archive.stream()
-        .filter(acumulator -> acumulator.start() >= sinceNs)
-        .map(acumulator -> new Sample<>((acumulator.start() - drift) / 1_000_000, acumulator.maximum()))
-        .collect(Collectors.toList());
+    return samples(sinceMillis * 1_000_000 + drift, drift);
+  }
+
+  private synchronized List<Sample<Long>> samples(long sinceNs, long drift) {
+    List<Sample<Long>> samples = new ArrayList<>(size + 2);
+    for (int i = firstStartAtOrAfter(sinceNs); i < size; i++) {
+      int index = slot(i);
+      samples.add(new Sample<>((starts[index] - drift) / 1_000_000, maxima[index]));
+    }
+    if (closing != null && closing.start() >= sinceNs) {
+      samples.add(new Sample<>((closing.start() - drift) / 1_000_000, closing.maximum()));
+    }
+    LatencyPeriodAccumulator active = latestAccumulator.get();
+    if (active != null && active.start() >= sinceNs) {
+      samples.add(new Sample<>((active.start() - drift) / 1_000_000, active.maximum()));
+    }
+    return samples;
   }
 
-  private void insert(LatencyPeriodAccumulator newAccumulator) {
-    while (!archive.offer(newAccumulator)) {
-      LatencyPeriodAccumulator removed = archive.poll();
-      if (removed != null) {
-        sink.accept(removed);
+  /*
+   * Binary search for the first (logical) ring position whose window starts at or after sinceNs.
+   */
+  private int firstStartAtOrAfter(long sinceNs) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (starts[slot(mid)] < sinceNs) {
+        low = mid + 1;
+      } else {
+        high = mid;
       }
     }
+    return low;
+  }
+
+  private int slot(int position) {
+    int index = head + position;
+    return index >= starts.length ? index - starts.length : index;
+  }
+
+  /*
+   * Retains a just closed window, freezing the previously closed window in to the ring, and returns the window that
+   * is displaced from the history (if any).
+   */
+  private synchronized LatencyPeriodAccumulator close(LatencyPeriodAccumulator closed) {
+    if (!retainsClosed) {
+      return closed;
+    }
+    LatencyPeriodAccumulator previous = closing;
+    closing = closed;
+    if (previous == null) {
+      return null;
+    } else if (starts.length == 0) {
+      return previous;
+    }
+    LatencyPeriodAccumulator discarded = null;
+    if (size == starts.length) {
+      LatencySnapshot oldest = new LatencySnapshot(counts[head], totals[head], minima[head], maxima[head]);
+      discarded = new LatencyPeriodAccumulator(starts[head], windowSizeNs, oldest);
+      head = slot(1);
+      size--;
+    }
+    LatencySnapshot snapshot = previous.snapshot();
+    int tail = slot(size);
+    starts[tail] = previous.start();
+    counts[tail] = snapshot.count();
+    totals[tail] = snapshot.total();
+    minima[tail] = snapshot.isEmpty() ? Long.MAX_VALUE : snapshot.minimum();
+    maxima[tail] = snapshot.isEmpty() ? Long.MIN_VALUE : snapshot.maximum();
+    size++;
+    return discarded;
   }
 
 }
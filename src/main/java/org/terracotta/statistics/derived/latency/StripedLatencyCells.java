@@ -0,0 +1,222 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.latency;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A striped set of fused latency cells.
+ * <p>
+ *   Each cell holds a count, total, minimum and maximum together on its own cache line, so recording a latency selects
+ *   a single stripe and touches a single line.  The count is updated by CAS, and a failed CAS is taken as a sign of
+ *   contention that moves the thread to another stripe (expanding the stripes up to the number of CPUs).  The minimum
+ *   and maximum are only CASed when the latency actually changes them.
+ * </p>
+ * <p>
+ *   Like {@link java.util.concurrent.atomic.LongAdder}, reads are not atomic with respect to concurrent updates.
+ * </p>
+ */
+final class StripedLatencyCells {
+
+  private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+  private static final ThreadLocal<int[]> PROBE = ThreadLocal.withInitial(() -> new int[1]);
+
+  private static final AtomicIntegerFieldUpdater<StripedLatencyCells> BUSY_UPDATER = AtomicIntegerFieldUpdater.newUpdater(StripedLatencyCells.class, "busy");
+
+  private final Cell base = new Cell();
+  private volatile Cell[] cells;
+  private volatile int busy;
+
+  void accumulate(long count, long total, long minimum, long maximum) {
+    Cell[] cs = cells;
+    if (cs == null) {
+      if (base.tryAccumulate(count, total, minimum, maximum)) {
+        return;
+      }
+    } else {
+      Cell cell = cs[probe()[0] & (cs.length - 1)];
+      if (cell != null && cell.tryAccumulate(count, total, minimum, maximum)) {
+        return;
+      }
+    }
+    accumulateWithContention(count, total, minimum, maximum);
+  }
+
+  private void accumulateWithContention(long count, long total, long minimum, long maximum) {
+    int[] probe = probe();
+    if (probe[0] == 0) {
+      probe[0] = ThreadLocalRandom.current().nextInt() | 1;
+    }
+    for (boolean collide = false; ; probe[0] = advanceProbe(probe[0])) {
+      Cell[] cs = cells;
+      if (cs == null) {
+        if (busy == 0 && BUSY_UPDATER.compareAndSet(this, 0, 1)) {
+          try {
+            if (cells == null) {
+              Cell[] newCells = new Cell[2];
+              Cell cell = new Cell();
+              cell.tryAccumulate(count, total, minimum, maximum);
+              newCells[probe[0] & 1] = cell;
+              cells = newCells;
+              return;
+            }
+          } finally {
+            busy = 0;
+          }
+        } else if (base.tryAccumulate(count, total, minimum, maximum)) {
+          return;
+        }
+      } else {
+        int n = cs.length;
+        Cell cell = cs[probe[0] & (n - 1)];
+        if (cell == null) {
+          if (busy == 0 && BUSY_UPDATER.compareAndSet(this, 0, 1)) {
+            try {
+              Cell[] rs = cells;
+              int j = probe[0] & (rs.length - 1);
+              if (rs[j] == null) {
+                Cell created = new Cell();
+                created.tryAccumulate(count, total, minimum, maximum);
+                rs[j] = created;
+                return;
+              }
+            } finally {
+              busy = 0;
+            }
+          }
+          collide = false;
+        } else if (cell.tryAccumulate(count, total, minimum, maximum)) {
+          return;
+        } else if (n >= NCPU || cells != cs) {
+          collide = false;
+        } else if (!collide) {
+          collide = true;
+        } else if (busy == 0 && BUSY_UPDATER.compareAndSet(this, 0, 1)) {
+          try {
+            if (cells == cs) {
+              Cell[] rs = new Cell[n << 1];
+              System.arraycopy(cs, 0, rs, 0, n);
+              cells = rs;
+            }
+          } finally {
+            busy = 0;
+          }
+          collide = false;
+        }
+      }
+    }
+  }
+
+  long count() {
+    long sum = base.count;
+    Cell[] cs = cells;
+    if (cs != null) {
+      for (Cell cell : cs) {
+        if (cell != null) {
+          sum += cell.count;
+        }
+      }
+    }
+    return sum;
+  }
+
+  LatencySnapshot snapshot() {
+    long count = base.count;
+    long total = base.total;
+    long minimum = base.minimum;
+    long maximum = base.maximum;
+    Cell[] cs = cells;
+    if (cs != null) {
+      for (Cell cell : cs) {
+        if (cell != null) {
+          count += cell.count;
+          total += cell.total;
+          minimum = Math.min(minimum, cell.minimum);
+          maximum = Math.max(maximum, cell.maximum);
+        }
+      }
+    }
+    return new LatencySnapshot(count, total, minimum, maximum);
+  }
+
+  void reset() {
+    base.reset();
+    Cell[] cs = cells;
+    if (cs != null) {
+      for (Cell cell : cs) {
+        if (cell != null) {
+          cell.reset();
+        }
+      }
+    }
+  }
+
+  private static int[] probe() {
+    return PROBE.get();
+  }
+
+  private static int advanceProbe(int probe) {
+    probe ^= probe << 13;
+    probe ^= probe >>> 17;
+    probe ^= probe << 5;
+    return probe;
+  }
+
+  /**
+   * A fused latency cell, padded to occupy its own cache line.
+   */
+  static final class Cell {
+
+    private static final AtomicLongFieldUpdater<Cell> COUNT_UPDATER = AtomicLongFieldUpdater.newUpdater(Cell.class, "count");
+    private static final AtomicLongFieldUpdater<Cell> TOTAL_UPDATER = AtomicLongFieldUpdater.newUpdater(Cell.class, "total");
+    private static final AtomicLongFieldUpdater<Cell> MINIMUM_UPDATER = AtomicLongFieldUpdater.newUpdater(Cell.class, "minimum");
+    private static final AtomicLongFieldUpdater<Cell> MAXIMUM_UPDATER = AtomicLongFieldUpdater.newUpdater(Cell.class, "maximum");
+
+    private long p0, p1, p2, p3, p4, p5, p6;
+    volatile long count;
+    volatile long total;
+    volatile long minimum = Long.MAX_VALUE;
+    volatile long maximum = Long.MIN_VALUE;
+    private long q0, q1, q2, q3, q4, q5, q6;
+
+    /*
+     * The count CAS doubles as the contention probe: it is the only update that can fail.
+     */
+    boolean tryAccumulate(long n, long sum, long min, long max) {
+      long c = count;
+      if (COUNT_UPDATER.compareAndSet(this, c, c + n)) {
+        TOTAL_UPDATER.getAndAdd(this, sum);
+        long m;
+        while (min < (m = minimum) && !MINIMUM_UPDATER.compareAndSet(this, m, min));
+        while (max > (m = maximum) && !MAXIMUM_UPDATER.compareAndSet(this, m, max));
+        return true;
+      } else {
+        return false;
+      }
+    }
+
+    void reset() {
+      count = 0;
+      total = 0;
+      minimum = Long.MAX_VALUE;
+      maximum = Long.MIN_VALUE;
+    }
+  }
+}
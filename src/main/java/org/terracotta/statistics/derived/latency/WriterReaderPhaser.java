@@ -0,0 +1,70 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.latency;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A phaser that lets a single reader (at a time) wait out all writers that entered a critical section before a flip.
+ * <p>
+ *   Writers are wait-free: entering and exiting a critical section are each a single atomic increment.  Readers hold
+ *   this object's monitor while flipping.  This follows Gil Tene's {@code WriterReaderPhaser}.
+ * </p>
+ */
+final class WriterReaderPhaser {
+
+  private static final AtomicLongFieldUpdater<WriterReaderPhaser> START_UPDATER = AtomicLongFieldUpdater.newUpdater(WriterReaderPhaser.class, "startEpoch");
+  private static final AtomicLongFieldUpdater<WriterReaderPhaser> EVEN_END_UPDATER = AtomicLongFieldUpdater.newUpdater(WriterReaderPhaser.class, "evenEndEpoch");
+  private static final AtomicLongFieldUpdater<WriterReaderPhaser> ODD_END_UPDATER = AtomicLongFieldUpdater.newUpdater(WriterReaderPhaser.class, "oddEndEpoch");
+
+  private volatile long startEpoch = 0;
+  private volatile long evenEndEpoch = 0;
+  private volatile long oddEndEpoch = Long.MIN_VALUE;
+
+  /**
+   * Enters a writer critical section.
+   *
+   * @return a token to pass to {@link #writerExit(long)}
+   */
+  long writerEnter() {
+    return START_UPDATER.getAndIncrement(this);
+  }
+
+  void writerExit(long token) {
+    (token < 0 ? ODD_END_UPDATER : EVEN_END_UPDATER).getAndIncrement(this);
+  }
+
+  /**
+   * Flips the phase, and waits for all writers that entered before the flip to exit.
+   * <p>
+   *   Callers must hold this phaser's monitor.
+   * </p>
+   */
+  void flip() {
+    boolean nextPhaseIsEven = startEpoch < 0;
+    long initialStart = nextPhaseIsEven ? 0 : Long.MIN_VALUE;
+    if (nextPhaseIsEven) {
+      evenEndEpoch = initialStart;
+    } else {
+      oddEndEpoch = initialStart;
+    }
+    long startAtFlip = START_UPDATER.getAndSet(this, initialStart);
+    while ((nextPhaseIsEven ? oddEndEpoch : evenEndEpoch) != startAtFlip) {
+      Thread.yield();
+    }
+  }
+}
@@ -18,6 +18,10 @@ package org.terracotta.statistics.archive;
 
 import org.junit.Test;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.hamcrest.collection.IsArrayContainingInOrder.arrayContaining;
 import static org.hamcrest.collection.IsArrayWithSize.emptyArray;
 import static org.hamcrest.core.Is.is;
@@ -80,4 +84,44 @@ public class CircularBufferTest {
     assertThat(buffer.toArray(Object[].class), instanceOf(Object[].class));
     assertThat(buffer.toArray(Object[].class), arrayContaining(string2, string3));
   }
+
+  @Test
+  public void testSuffixSince() {
+    CircularBuffer<Long> buffer = new CircularBuffer<>(4);
+    assertThat(buffer.toArraySince(Long[].class, Long::longValue, 0L), emptyArray());
+    for (long i = 0; i < 10; i++) {
+      buffer.insert(i * 10);
+    }
+    assertThat(buffer.toArraySince(Long[].class, Long::longValue, 0L), arrayContaining(60L, 70L, 80L, 90L));
+    assertThat(buffer.toArraySince(Long[].class, Long::longValue, 70L), arrayContaining(70L, 80L, 90L));
+    assertThat(buffer.toArraySince(Long[].class, Long::longValue, 71L), arrayContaining(80L, 90L));
+    assertThat(buffer.toArraySince(Long[].class, Long::longValue, 91L), emptyArray());
+  }
+
+  @Test
+  public void testReadersSeeConsistentSnapshotsWhileWriting() throws Exception {
+    CircularBuffer<Long> buffer = new CircularBuffer<>(16);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<?> writer = executor.submit(() -> {
+        for (long i = 0; i < 1_000_000; i++) {
+          buffer.insert(i);
+        }
+      });
+      while (!writer.isDone()) {
+        Long[] snapshot = buffer.toArray(Long[].class);
+        for (int i = 1; i < snapshot.length; i++) {
+          assertThat(snapshot[i], is(snapshot[i - 1] + 1));
+        }
+        if (snapshot.length > 0 && snapshot[0] >= 16) {
+          assertThat(snapshot.length, is(16));
+        }
+      }
+      writer.get();
+      Long[] snapshot = buffer.toArray(Long[].class);
+      assertThat(snapshot[15], is(999_999L));
+    } finally {
+      executor.shutdown();
+    }
+  }
 }
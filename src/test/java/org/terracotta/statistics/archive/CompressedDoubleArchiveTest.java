@@ -0,0 +1,187 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.archive;
+
+import org.hamcrest.collection.IsEmptyCollection;
+import org.junit.Test;
+import org.terracotta.statistics.Sample;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class CompressedDoubleArchiveTest {
+
+  @Test
+  public void testEmptyArchive() {
+    CompressedDoubleArchive archive = new CompressedDoubleArchive(2);
+    assertThat(archive.getArchive(), IsEmptyCollection.empty());
+    assertThat(archive.cursor(Long.MIN_VALUE).next(), is(false));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testOccupiedArchive() {
+    CompressedDoubleArchive archive = new CompressedDoubleArchive(2);
+    archive.add(0, 42.0);
+    archive.add(new Sample<>(1000, 43.5));
+    archive.add(new Sample<Double>(2000, null));
+    assertThat(archive.getArchive(), contains(new Sample<>(0L, 42.0), new Sample<>(1000L, 43.5)));
+    assertThat(archive.getArchive(1), contains(new Sample<>(1000L, 43.5)));
+  }
+
+  @Test
+  public void testIrregularSamplesRoundTrip() {
+    Random rndm = new Random(42);
+    CompressedDoubleArchive archive = new CompressedDoubleArchive(10000, 8, (timestamp, value) -> {
+      throw new AssertionError();
+    });
+    List<Sample<Double>> expected = new ArrayList<>();
+    double[] specials = {Double.NaN, -0.0, Double.POSITIVE_INFINITY, Double.MIN_VALUE, Double.MAX_VALUE};
+    long timestamp = Long.MIN_VALUE / 2;
+    for (int i = 0; i < 10000; i++) {
+      switch (rndm.nextInt(4)) {
+        case 0: timestamp += 1000; break;
+        case 1: timestamp += rndm.nextInt(5000); break;
+        default: timestamp += rndm.nextInt() & Integer.MAX_VALUE;
+      }
+      double value;
+      switch (rndm.nextInt(4)) {
+        case 0: value = expected.isEmpty() ? 0.0 : expected.get(expected.size() - 1).getSample(); break;
+        case 1: value = specials[rndm.nextInt(specials.length)]; break;
+        case 2: value = rndm.nextInt(100); break;
+        default: value = rndm.nextGaussian() * 1e6;
+      }
+      archive.add(timestamp, value);
+      expected.add(new Sample<>(timestamp, value));
+    }
+    assertThat(archive.getArchive(), is(expected));
+  }
+
+  @Test
+  public void testRegularSamplesCompress() {
+    List<Long> spilled = new ArrayList<>();
+    CompressedDoubleArchive archive = new CompressedDoubleArchive(1, 64, (timestamp, value) -> spilled.add(timestamp));
+    long timestamp = 0;
+    double value = 100;
+    while (spilled.isEmpty()) {
+      archive.add(timestamp += 1000, value += 1);
+    }
+    //a single 512 byte block should hold at least 10x what sixteen bytes per sample would
+    assertThat(spilled.size() >= 10 * 512 / 16, is(true));
+  }
+
+  @Test
+  public void testEvictionSpillsOldestBlock() {
+    List<Long> spilled = new ArrayList<>();
+    CompressedDoubleArchive archive = new CompressedDoubleArchive(2, 8, (timestamp, value) -> spilled.add(timestamp));
+    List<Long> added = new ArrayList<>();
+    for (long i = 0; i < 1000; i++) {
+      archive.add(i * 1000, i);
+      added.add(i * 1000);
+    }
+    List<Long> retained = new ArrayList<>();
+    archive.forEach((timestamp, value) -> retained.add(timestamp));
+    List<Long> all = new ArrayList<>(spilled);
+    all.addAll(retained);
+    assertThat(all, is(added));
+    assertThat(archive.getArchive(retained.get(1)).size(), is(retained.size() - 1));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testClear() {
+    CompressedDoubleArchive archive = new CompressedDoubleArchive(2, 64, (timestamp, value) -> {
+      throw new AssertionError();
+    });
+    for (long i = 0; i < 100; i++) {
+      archive.add(i, i);
+      if (i % 10 == 9) {
+        archive.clear();
+      }
+    }
+    assertThat(archive.getArchive(), IsEmptyCollection.empty());
+    archive.add(100, 100);
+    assertThat(archive.getArchive(), contains(new Sample<>(100L, 100.0)));
+  }
+
+  @Test
+  public void testReadersSeeConsistentSamplesWhileWriting() throws Exception {
+    CompressedDoubleArchive archive = new CompressedDoubleArchive(4, 8, (timestamp, value) -> {});
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<?> writer = executor.submit(() -> {
+        for (long i = 0; i < 1_000_000; i++) {
+          archive.add(i, -i);
+        }
+      });
+      while (!writer.isDone()) {
+        List<double[]> samples = new ArrayList<>();
+        archive.forEach(100, (timestamp, value) -> samples.add(new double[] {timestamp, value}));
+        for (int i = 0; i < samples.size(); i++) {
+          assertThat(samples.get(i)[1], is(-samples.get(i)[0]));
+          assertThat(samples.get(i)[0] >= 100, is(true));
+          if (i > 0) {
+            assertThat(samples.get(i)[0] > samples.get(i - 1)[0], is(true));
+          }
+        }
+      }
+      writer.get();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testSteadyStateAddsDoNotAllocate() {
+    assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    CompressedDoubleArchive archive = new CompressedDoubleArchive(4, 8, (timestamp, value) -> {});
+    Random rndm = new Random(42);
+    double[] values = new double[100000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = Math.abs(rndm.nextGaussian()) * 1000;
+    }
+
+    long time = 0;
+    for (double value : values) {
+      archive.add(time += 1000, value);
+    }
+
+    long thread = Thread.currentThread().getId();
+    long overhead = -(threads.getThreadAllocatedBytes(thread) - threads.getThreadAllocatedBytes(thread));
+    long before = threads.getThreadAllocatedBytes(thread);
+    for (double value : values) {
+      archive.add(time += 1000, value);
+    }
+    long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+    assertThat(allocated, is(0L));
+  }
+}
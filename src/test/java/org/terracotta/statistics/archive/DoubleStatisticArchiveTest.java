@@ -0,0 +1,54 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.archive;
+
+import org.hamcrest.collection.IsEmptyCollection;
+import org.junit.Test;
+import org.terracotta.statistics.Sample;
+
+import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
+import static org.junit.Assert.assertThat;
+
+public class DoubleStatisticArchiveTest {
+
+  @Test
+  public void testEmptyArchive() {
+    DoubleStatisticArchive archive = new DoubleStatisticArchive(2);
+    assertThat(archive.getArchive(), IsEmptyCollection.empty());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testOccupiedArchive() {
+    DoubleStatisticArchive archive = new DoubleStatisticArchive(2);
+    archive.add(0, 0.5);
+    archive.add(new Sample<>(1, Double.NaN));
+    archive.add(new Sample<>(2, -0.0));
+    assertThat(archive.getArchive(), contains(new Sample<>(1, Double.NaN), new Sample<>(2, -0.0)));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testArchiveOverspill() {
+    DoubleStatisticArchive overspill = new DoubleStatisticArchive(1);
+    DoubleStatisticArchive archive = new DoubleStatisticArchive(1, overspill::add);
+    archive.add(0, 1.5);
+    archive.add(1, 2.5);
+    assertThat(archive.getArchive(), contains(new Sample<>(1, 2.5)));
+    assertThat(overspill.getArchive(), contains(new Sample<>(0, 1.5)));
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.archive;
+
+import org.hamcrest.collection.IsEmptyCollection;
+import org.junit.Test;
+import org.terracotta.statistics.Sample;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class LongStatisticArchiveTest {
+
+  @Test
+  public void testEmptyArchive() {
+    LongStatisticArchive archive = new LongStatisticArchive(2);
+    assertThat(archive.getArchive(), IsEmptyCollection.empty());
+    archive.forEach((timestamp, value) -> {
+      throw new AssertionError();
+    });
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testOccupiedArchive() {
+    LongStatisticArchive archive = new LongStatisticArchive(2);
+    archive.add(0, 42L);
+    archive.add(new Sample<>(1, 43L));
+    archive.add(new Sample<Long>(2, null));
+    assertThat(archive.getArchive(), contains(new Sample<>(0, 42L), new Sample<>(1, 43L)));
+    assertThat(archive.getArchive(1), contains(new Sample<>(1, 43L)));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testArchiveOverspill() {
+    LongStatisticArchive overspill = new LongStatisticArchive(1);
+    LongStatisticArchive archive = new LongStatisticArchive(1, overspill::add);
+    archive.add(0, 1L);
+    archive.add(1, 2L);
+    assertThat(archive.getArchive(), contains(new Sample<>(1, 2L)));
+    assertThat(overspill.getArchive(), contains(new Sample<>(0, 1L)));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testShrinkingCapacitySpillsOldest() {
+    LongStatisticArchive overspill = new LongStatisticArchive(4);
+    LongStatisticArchive archive = new LongStatisticArchive(4, overspill::add);
+    for (long i = 0; i < 4; i++) {
+      archive.add(i, i * 10);
+    }
+    archive.setCapacity(2);
+    assertThat(archive.getArchive(), contains(new Sample<>(2, 20L), new Sample<>(3, 30L)));
+    assertThat(overspill.getArchive(), contains(new Sample<>(0, 0L), new Sample<>(1, 10L)));
+  }
+
+  @Test
+  public void testReadersSeeConsistentSamplesWhileWriting() throws Exception {
+    LongStatisticArchive archive = new LongStatisticArchive(16);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<?> writer = executor.submit(() -> {
+        for (long i = 0; i < 1_000_000; i++) {
+          archive.add(i, -i);
+        }
+      });
+      while (!writer.isDone()) {
+        List<long[]> samples = new ArrayList<>();
+        archive.forEach(100, (timestamp, value) -> samples.add(new long[] {timestamp, value}));
+        for (int i = 0; i < samples.size(); i++) {
+          assertThat(samples.get(i)[1], is(-samples.get(i)[0]));
+          assertThat(samples.get(i)[0] >= 100, is(true));
+          if (i > 0) {
+            assertThat(samples.get(i)[0] > samples.get(i - 1)[0], is(true));
+          }
+        }
+      }
+      writer.get();
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.archive;
+
+import org.hamcrest.collection.IsEmptyCollection;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.terracotta.statistics.Sample;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.collection.IsArrayWithSize.arrayWithSize;
+import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class MappedSegmentArchiveTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testEmptyArchive() throws Exception {
+    try (MappedSegmentArchive archive = new MappedSegmentArchive(folder.getRoot().toPath(), 4, 2)) {
+      assertThat(archive.getLongArchive(Long.MIN_VALUE), IsEmptyCollection.empty());
+      archive.forEachDouble(Long.MIN_VALUE, (timestamp, value) -> {
+        throw new AssertionError();
+      });
+    }
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testSinceSpansSegments() throws Exception {
+    try (MappedSegmentArchive archive = new MappedSegmentArchive(folder.getRoot().toPath(), 2, 4)) {
+      for (long i = 0; i < 6; i++) {
+        archive.add(i * 10, i);
+      }
+      assertThat(archive.getLongArchive(25), contains(new Sample<>(30L, 3L), new Sample<>(40L, 4L), new Sample<>(50L, 5L)));
+      assertThat(archive.getLongArchive(40), contains(new Sample<>(40L, 4L), new Sample<>(50L, 5L)));
+      assertThat(archive.getLongArchive(51), IsEmptyCollection.empty());
+    }
+  }
+
+  @Test
+  public void testRetentionDeletesOldestSegments() throws Exception {
+    try (MappedSegmentArchive archive = new MappedSegmentArchive(folder.getRoot().toPath(), 2, 2)) {
+      for (long i = 0; i < 7; i++) {
+        archive.add(i, i);
+      }
+      List<Long> timestamps = new ArrayList<>();
+      archive.forEachLong(Long.MIN_VALUE, (timestamp, value) -> timestamps.add(timestamp));
+      assertThat(timestamps, contains(4L, 5L, 6L));
+      assertThat(folder.getRoot().listFiles(), arrayWithSize(2));
+    }
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testReopenRecoversSamples() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    try (MappedSegmentArchive archive = new MappedSegmentArchive(directory, 4, 4)) {
+      for (long i = 0; i < 6; i++) {
+        archive.add(i, i * 0.5);
+      }
+    }
+    try (MappedSegmentArchive archive = new MappedSegmentArchive(directory, 4, 4)) {
+      archive.add(6, 3.0);
+      assertThat(archive.getDoubleArchive(4), contains(new Sample<>(4L, 2.0), new Sample<>(5L, 2.5), new Sample<>(6L, 3.0)));
+    }
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testDecreasingTimestampsAreClampedAndSurviveReopen() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    try (MappedSegmentArchive archive = new MappedSegmentArchive(directory, 8, 4)) {
+      archive.add(10, 1L);
+      archive.add(20, 2L);
+      archive.add(15, 3L);
+      archive.add(30, 4L);
+      assertThat(archive.getLongArchive(Long.MIN_VALUE), contains(new Sample<>(10L, 1L), new Sample<>(20L, 2L),
+          new Sample<>(20L, 3L), new Sample<>(30L, 4L)));
+    }
+    try (MappedSegmentArchive archive = new MappedSegmentArchive(directory, 8, 4)) {
+      assertThat(archive.getLongArchive(Long.MIN_VALUE), contains(new Sample<>(10L, 1L), new Sample<>(20L, 2L),
+          new Sample<>(20L, 3L), new Sample<>(30L, 4L)));
+      archive.add(25, 5L);
+      assertThat(archive.getLongArchive(30), contains(new Sample<>(30L, 4L), new Sample<>(30L, 5L)));
+    }
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testReopenDiscardsTornRecord() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    try (MappedSegmentArchive archive = new MappedSegmentArchive(directory, 4, 4)) {
+      archive.add(0, 1L);
+      archive.add(1, 2L);
+    }
+    File[] segments = folder.getRoot().listFiles();
+    assertThat(segments, arrayWithSize(1));
+    try (RandomAccessFile file = new RandomAccessFile(segments[0], "rw")) {
+      //a crash after writing the timestamp and value, but before the check word (records follow a one record header)
+      file.seek(3 * 3 * Long.BYTES);
+      file.writeLong(2);
+      file.writeLong(3);
+    }
+    try (MappedSegmentArchive archive = new MappedSegmentArchive(directory, 4, 4)) {
+      assertThat(archive.getLongArchive(Long.MIN_VALUE), contains(new Sample<>(0L, 1L), new Sample<>(1L, 2L)));
+      archive.add(2, 4L);
+      assertThat(archive.getLongArchive(2), contains(new Sample<>(2L, 4L)));
+    }
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testArchiveOverspill() throws Exception {
+    try (MappedSegmentArchive overspill = new MappedSegmentArchive(folder.getRoot().toPath(), 16, 2)) {
+      DoubleStatisticArchive archive = new DoubleStatisticArchive(1, overspill::add);
+      archive.add(0, 1.0);
+      archive.add(1, 2.0);
+      assertThat(archive.getArchive(), contains(new Sample<>(1L, 2.0)));
+      assertThat(overspill.getDoubleArchive(Long.MIN_VALUE), contains(new Sample<>(0L, 1.0)));
+    }
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testReopenWithDifferentSegmentSize() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    try (MappedSegmentArchive archive = new MappedSegmentArchive(directory, 2, 8)) {
+      for (long i = 0; i < 5; i++) {
+        archive.add(i, i);
+      }
+    }
+    try (MappedSegmentArchive archive = new MappedSegmentArchive(directory, 4, 8)) {
+      archive.add(5, 5L);
+      archive.add(6, 6L);
+      assertThat(archive.getLongArchive(3), contains(new Sample<>(3L, 3L), new Sample<>(4L, 4L), new Sample<>(5L, 5L), new Sample<>(6L, 6L)));
+      assertThat(archive.getLongArchive(Long.MIN_VALUE).size(), is(7));
+    }
+    try (MappedSegmentArchive archive = new MappedSegmentArchive(directory, 1, 8)) {
+      assertThat(archive.getLongArchive(Long.MIN_VALUE).size(), is(7));
+    }
+  }
+
+  @Test
+  public void testCloseReleasesSegmentFiles() throws Exception {
+    MappedSegmentArchive archive = new MappedSegmentArchive(folder.getRoot().toPath(), 2, 4);
+    for (long i = 0; i < 5; i++) {
+      archive.add(i, i);
+    }
+    archive.close();
+    for (File segment : folder.getRoot().listFiles()) {
+      Files.delete(segment.toPath());
+    }
+    assertThat(archive.getLongArchive(Long.MIN_VALUE), IsEmptyCollection.empty());
+  }
+
+  @Test
+  public void testReadersSeeConsistentSamplesWhileRetiring() throws Exception {
+    try (MappedSegmentArchive archive = new MappedSegmentArchive(folder.getRoot().toPath(), 16, 2)) {
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      try {
+        Future<?> writer = executor.submit(() -> {
+          for (long i = 0; i < 200_000; i++) {
+            archive.add(i, -i);
+          }
+        });
+        while (!writer.isDone()) {
+          List<long[]> samples = new ArrayList<>();
+          archive.forEachLong(100, (timestamp, value) -> samples.add(new long[] {timestamp, value}));
+          for (int i = 0; i < samples.size(); i++) {
+            assertThat(samples.get(i)[1], is(-samples.get(i)[0]));
+            assertThat(samples.get(i)[0] >= 100, is(true));
+            if (i > 0) {
+              assertThat(samples.get(i)[0] > samples.get(i - 1)[0], is(true));
+            }
+          }
+        }
+        writer.get();
+      } finally {
+        executor.shutdown();
+      }
+      assertThat(folder.getRoot().listFiles(), arrayWithSize(2));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testClosedArchiveRejectsSamples() throws Exception {
+    MappedSegmentArchive archive = new MappedSegmentArchive(folder.getRoot().toPath(), 4, 2);
+    archive.close();
+    archive.add(0, 0L);
+  }
+
+  @Test
+  public void testSampleCountIsPreserved() throws Exception {
+    try (MappedSegmentArchive archive = new MappedSegmentArchive(folder.getRoot().toPath(), 64, 2)) {
+      for (long i = 0; i < 100; i++) {
+        archive.add(i, i);
+      }
+      assertThat(archive.getLongArchive(0).size(), is(100));
+    }
+  }
+}
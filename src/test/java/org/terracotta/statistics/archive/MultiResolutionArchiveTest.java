@@ -0,0 +1,145 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.archive;
+
+import org.junit.Test;
+import org.terracotta.statistics.Sample;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.terracotta.statistics.archive.MultiResolutionArchive.Tier.of;
+
+public class MultiResolutionArchiveTest {
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testFinestCoveringTierIsRead() {
+    MultiResolutionArchive archive = new MultiResolutionArchive(10, StandardConsolidation.AVERAGE, of(10, SECONDS, 6), of(60, SECONDS, 10));
+    for (int i = 0; i < 120; i++) {
+      archive.add(i * 1000L, i);
+    }
+
+    assertThat(archive.getArchive(115_000), contains(new Sample<>(115_000L, 115.0), new Sample<>(116_000L, 116.0),
+        new Sample<>(117_000L, 117.0), new Sample<>(118_000L, 118.0), new Sample<>(119_000L, 119.0)));
+    assertThat(archive.getArchive(60_000), contains(new Sample<>(60_000L, 64.5), new Sample<>(70_000L, 74.5),
+        new Sample<>(80_000L, 84.5), new Sample<>(90_000L, 94.5), new Sample<>(100_000L, 104.5),
+        new Sample<>(110_000L, 110.0), new Sample<>(111_000L, 111.0), new Sample<>(112_000L, 112.0),
+        new Sample<>(113_000L, 113.0), new Sample<>(114_000L, 114.0), new Sample<>(115_000L, 115.0),
+        new Sample<>(116_000L, 116.0), new Sample<>(117_000L, 117.0), new Sample<>(118_000L, 118.0),
+        new Sample<>(119_000L, 119.0)));
+    assertThat(archive.getArchive().subList(0, 7), contains(new Sample<>(0L, 29.5), new Sample<>(60_000L, 64.5),
+        new Sample<>(70_000L, 74.5), new Sample<>(80_000L, 84.5), new Sample<>(90_000L, 94.5),
+        new Sample<>(100_000L, 104.5), new Sample<>(110_000L, 110.0)));
+    assertThat(archive.getArchive().size(), is(16));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testConsolidationFunctions() {
+    for (StandardConsolidation consolidation : StandardConsolidation.values()) {
+      MultiResolutionArchive archive = new MultiResolutionArchive(1, consolidation, of(10, MILLISECONDS, 4));
+      archive.add(0, 3.0);
+      archive.add(1, 1.0);
+      archive.add(2, 2.0);
+      archive.add(10, 0.0);
+
+      double expected;
+      switch (consolidation) {
+        case MINIMUM:
+          expected = 1.0;
+          break;
+        case MAXIMUM:
+          expected = 3.0;
+          break;
+        case AVERAGE:
+          expected = 2.0;
+          break;
+        case LAST:
+          expected = 2.0;
+          break;
+        case SUM:
+          expected = 6.0;
+          break;
+        default:
+          throw new AssertionError(consolidation);
+      }
+      assertThat(archive.getArchive(0), contains(new Sample<>(0L, expected), new Sample<>(10L, 0.0)));
+    }
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testTiersCanConsolidateIndependently() {
+    Consolidation range = (count, sum, minimum, maximum, last) -> maximum - minimum;
+    MultiResolutionArchive archive = new MultiResolutionArchive(1, StandardConsolidation.AVERAGE,
+        of(10, MILLISECONDS, 4, StandardConsolidation.MAXIMUM), of(20, MILLISECONDS, 4), of(40, MILLISECONDS, 4, range));
+    archive.add(0, 3.0);
+    archive.add(1, 1.0);
+    archive.add(15, 2.0);
+    archive.add(40, 0.0);
+
+    assertThat(archive.getArchive(0), contains(new Sample<>(0L, 3.0), new Sample<>(10L, 2.0), new Sample<>(40L, 0.0)));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testCustomConsolidationOfCoarsestTier() {
+    Consolidation range = (count, sum, minimum, maximum, last) -> maximum - minimum;
+    MultiResolutionArchive archive = new MultiResolutionArchive(1, StandardConsolidation.AVERAGE,
+        of(10, MILLISECONDS, 1), of(40, MILLISECONDS, 4, range));
+    archive.add(0, 3.0);
+    archive.add(1, 1.0);
+    archive.add(15, 2.0);
+    archive.add(40, 0.0);
+
+    assertThat(archive.getArchive(0), contains(new Sample<>(0L, 2.0), new Sample<>(40L, 0.0)));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testCoarseReadsIncludeTheNewestSamples() {
+    MultiResolutionArchive archive = new MultiResolutionArchive(5, StandardConsolidation.AVERAGE, of(10, SECONDS, 100));
+    for (int i = 0; i < 25; i++) {
+      archive.add(i * 1000L, i);
+    }
+
+    assertThat(archive.getArchive(0), contains(new Sample<>(0L, 4.5), new Sample<>(10_000L, 14.5),
+        new Sample<>(20_000L, 20.0), new Sample<>(21_000L, 21.0), new Sample<>(22_000L, 22.0),
+        new Sample<>(23_000L, 23.0), new Sample<>(24_000L, 24.0)));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testTailIsReadFromTheFinestTierHoldingIt() {
+    MultiResolutionArchive archive = new MultiResolutionArchive(2, StandardConsolidation.AVERAGE, of(10, SECONDS, 3), of(100, SECONDS, 100));
+    for (int i = 0; i < 125; i++) {
+      archive.add(i * 1000L, i);
+    }
+
+    //the raw ring no longer holds 100s onwards, so the tail comes from the 10s tier, and then the raw ring
+    assertThat(archive.getArchive(0), contains(new Sample<>(0L, 49.5), new Sample<>(100_000L, 104.5),
+        new Sample<>(110_000L, 114.5), new Sample<>(123_000L, 123.0), new Sample<>(124_000L, 124.0)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTiersMustCoarsen() {
+    new MultiResolutionArchive(10, StandardConsolidation.AVERAGE, of(60, SECONDS, 6), of(10, SECONDS, 10));
+  }
+}
@@ -20,6 +20,7 @@ import org.hamcrest.collection.IsEmptyCollection;
 import org.junit.Test;
 import org.terracotta.statistics.Sample;
 
+import static java.util.stream.Collectors.toList;
 import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertThat;
@@ -39,6 +40,16 @@ public class StatisticArchiveTest {
     assertThat(archive.getArchive(0).size(), equalTo(2));
   }
 
+  @Test
+  public void testSinceIncludesAllSamplesWithEqualTimestamps() {
+    StatisticArchive<Integer> archive = new StatisticArchive<>(8);
+    for (int i = 0; i < 12; i++) {
+      archive.add(new Sample<>(i / 3, i));
+    }
+    assertThat(archive.getArchive(2).stream().map(Sample::getSample).collect(toList()), contains(6, 7, 8, 9, 10, 11));
+    assertThat(archive.getArchive(4), IsEmptyCollection.empty());
+  }
+
   @Test
   public void testEmptyArchive() {
     StatisticArchive<String> archive = new StatisticArchive<>(2);
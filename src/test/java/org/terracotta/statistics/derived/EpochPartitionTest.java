@@ -0,0 +1,59 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class EpochPartitionTest {
+
+  @Test
+  public void testClaimResetsOnlyForLaterEpochs() {
+    CountingPartition partition = new CountingPartition();
+    assertThat(partition.epoch(), is(Long.MIN_VALUE));
+    assertThat(partition.isLive(Long.MIN_VALUE, 10), is(false));
+
+    assertThat(partition.claim(5), is(true));
+    assertThat(partition.claim(5), is(true));
+    assertThat(partition.resets, is(1));
+    assertThat(partition.claim(4), is(false));
+    assertThat(partition.claim(6), is(true));
+    assertThat(partition.resets, is(2));
+    assertThat(partition.epoch(), is(6L));
+  }
+
+  @Test
+  public void testLiveWhileEndIsAfterWindowStart() {
+    CountingPartition partition = new CountingPartition();
+    partition.claim(2);
+
+    assertThat(partition.isLive(29, 10), is(true));
+    assertThat(partition.isLive(30, 10), is(false));
+  }
+
+  private static final class CountingPartition extends EpochPartition {
+
+    private int resets;
+
+    @Override
+    protected void reset() {
+      resets++;
+    }
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.terracotta.statistics.MutableTimeSource;
+import org.terracotta.statistics.StatisticType;
+import org.terracotta.statistics.Time;
+import org.terracotta.statistics.TimeMocking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.junit.Assert.assertThat;
+
+public class EventCountSlidingWindowTest {
+
+  public static final MutableTimeSource SOURCE = TimeMocking.push(new MutableTimeSource());
+
+  @AfterClass
+  public static void installTimeSource() {
+    TimeMocking.pop();
+  }
+
+  @Test
+  public void testNoEventBehavior() {
+    EventCountSlidingWindow stat = new EventCountSlidingWindow(1, TimeUnit.MINUTES);
+    assertThat(stat.value(), is(0L));
+    assertThat(stat.type(), is(StatisticType.COUNTER));
+  }
+
+  @Test
+  public void testEventsExpireFromWindow() {
+    EventCountSlidingWindow stat = new EventCountSlidingWindow(1, TimeUnit.SECONDS);
+    for (int i = 0; i < 1000; i++) {
+      stat.event(Time.time(), 0L);
+      SOURCE.advanceTime(1, TimeUnit.MILLISECONDS);
+    }
+    assertThat(stat.value().doubleValue(), closeTo(1000, 10));
+
+    SOURCE.advanceTime(500, TimeUnit.MILLISECONDS);
+    assertThat(stat.value().doubleValue(), closeTo(500, 5));
+
+    SOURCE.advanceTime(1, TimeUnit.SECONDS);
+    assertThat(stat.value(), is(0L));
+  }
+
+  @Test
+  public void testConcurrentEventsAreCounted() throws Exception {
+    EventCountSlidingWindow stat = new EventCountSlidingWindow(1, TimeUnit.HOURS);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 100000; i++) {
+            stat.event(Time.time(), 0L);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertThat(stat.value().doubleValue(), closeTo(400000, 4000));
+  }
+
+  @Test
+  public void testReadsDuringConcurrentEvents() throws Exception {
+    EventCountSlidingWindow stat = new EventCountSlidingWindow(10, TimeUnit.MILLISECONDS);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 1000000; i++) {
+            stat.event(Time.time(), 0L);
+          }
+        }));
+      }
+      while (!futures.stream().allMatch(Future::isDone)) {
+        SOURCE.advanceTime(1, TimeUnit.MILLISECONDS);
+        long count = stat.value();
+        assertThat(count >= 0L && count <= 4000000L, is(true));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    SOURCE.advanceTime(20, TimeUnit.MILLISECONDS);
+    assertThat(stat.value(), is(0L));
+  }
+}
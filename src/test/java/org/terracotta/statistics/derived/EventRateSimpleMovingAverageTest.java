@@ -123,6 +123,31 @@ public class EventRateSimpleMovingAverageTest {
     }
   }
 
+  @Test
+  public void testSetWindowKeepsRecordedEvents() {
+    EventRateSimpleMovingAverage stat = new EventRateSimpleMovingAverage(1, TimeUnit.SECONDS);
+    double rate = new EventDriver(stat, 50, 10, 20, TimeUnit.MILLISECONDS).call();
+
+    stat.setWindow(2, TimeUnit.SECONDS);
+    assertThat(stat.rate(TimeUnit.SECONDS), closeTo(rate / 2, EXPECTED_ACCURACY * rate / 2));
+
+    //carried over counts keep the resolution of the old partitions
+    stat.setWindow(500, TimeUnit.MILLISECONDS);
+    assertThat(stat.rate(TimeUnit.SECONDS), CombinableMatcher.both(greaterThan(rate / 2)).and(lessThanOrEqualTo(rate)));
+  }
+
+  @Test
+  public void testPartitionExpiresWhenItsEndLeavesTheWindow() {
+    EventRateSimpleMovingAverage stat = new EventRateSimpleMovingAverage(1, TimeUnit.SECONDS);
+    long partitionEnd = (Time.time() / TimeUnit.MILLISECONDS.toNanos(100) + 1) * TimeUnit.MILLISECONDS.toNanos(100);
+    stat.event(Time.time(), 0);
+
+    SOURCE.advanceTime(partitionEnd + TimeUnit.SECONDS.toNanos(1) - 1 - Time.time(), TimeUnit.NANOSECONDS);
+    assertThat(stat.rateUsingSeconds(), greaterThan(0.0));
+    SOURCE.advanceTime(1, TimeUnit.NANOSECONDS);
+    Assert.assertThat(stat.rateUsingSeconds(), Is.is(0.0));
+  }
+
   static class EventDriver implements Callable<Double> {
 
     private final ChainedEventObserver stat;
@@ -0,0 +1,85 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import org.junit.Test;
+import org.terracotta.statistics.Time;
+import org.terracotta.util.Outcome;
+
+import java.time.Duration;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.OrderingComparison.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class OperationResourceSamplerTest {
+
+  private static volatile Object sink;
+
+  @Test
+  public void testOneInNOperationsAreSampled() {
+    OperationResourceSampler<Outcome> sampler = new OperationResourceSampler<>(Outcome.class, 4, 0.7, 20, Duration.ofMinutes(1));
+    assumeTrue(sampler.isCpuTimeMeasured());
+
+    for (int i = 0; i < 100; i++) {
+      sampler.begin(Time.time());
+      sampler.end(Time.time(), 0L, i % 2 == 0 ? Outcome.GOOD : Outcome.BAD);
+    }
+
+    assertThat(sampler.cpuTime(Outcome.GOOD).count() + sampler.cpuTime(Outcome.BAD).count(), is(25L));
+  }
+
+  @Test
+  public void testAllocatedBytesAreMeasured() {
+    OperationResourceSampler<Outcome> sampler = new OperationResourceSampler<>(Outcome.class, 1, 0.7, 20, Duration.ofMinutes(1));
+    assumeTrue(sampler.isAllocationMeasured());
+
+    for (int i = 0; i < 10; i++) {
+      sampler.begin(Time.time());
+      sink = new byte[1024 * 1024];
+      sampler.end(Time.time(), 0L, Outcome.GOOD);
+    }
+
+    assertThat(sampler.allocatedBytes(Outcome.GOOD).count(), is(10L));
+    assertThat(sampler.allocatedBytes(Outcome.GOOD).minimum(), greaterThanOrEqualTo(1024L * 1024L));
+    assertThat(sampler.allocatedBytes(Outcome.BAD).count(), is(0L));
+  }
+
+  @Test
+  public void testNestedOperationsAreIgnored() {
+    OperationResourceSampler<Outcome> sampler = new OperationResourceSampler<>(Outcome.class, 1, 0.7, 20, Duration.ofMinutes(1));
+    assumeTrue(sampler.isAllocationMeasured());
+
+    for (int i = 0; i < 10; i++) {
+      sampler.begin(Time.time());
+      sink = new byte[1024 * 1024];
+      sampler.begin(Time.time());
+      sampler.end(Time.time(), 0L, Outcome.BAD);
+      sampler.end(Time.time(), 0L, Outcome.GOOD);
+    }
+
+    assertThat(sampler.allocatedBytes(Outcome.GOOD).count(), is(10L));
+    assertThat(sampler.allocatedBytes(Outcome.GOOD).minimum(), greaterThanOrEqualTo(1024L * 1024L));
+    assertThat(sampler.allocatedBytes(Outcome.BAD).count(), is(0L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidInterval() {
+    new OperationResourceSampler<>(Outcome.class, 0, 0.7, 20, Duration.ofMinutes(1));
+  }
+}
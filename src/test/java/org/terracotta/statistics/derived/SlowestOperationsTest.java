@@ -0,0 +1,84 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.terracotta.statistics.MutableTimeSource;
+import org.terracotta.statistics.Time;
+import org.terracotta.statistics.TimeMocking;
+import org.terracotta.util.Outcome;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.collection.IsEmptyCollection.empty;
+import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class SlowestOperationsTest {
+
+  public static final MutableTimeSource SOURCE = TimeMocking.push(new MutableTimeSource());
+
+  @AfterClass
+  public static void installTimeSource() {
+    TimeMocking.pop();
+  }
+
+  @Test
+  public void testKeepsSlowestPerWindow() {
+    AtomicInteger tags = new AtomicInteger();
+    SlowestOperations<Outcome> slowest = new SlowestOperations<>(3, 10, SECONDS, tags::incrementAndGet);
+
+    long start = (Time.time() / SECONDS.toNanos(10) + 1) * SECONDS.toNanos(10);
+    SOURCE.advanceTime(start - Time.time(), NANOSECONDS);
+    Random random = new Random(42);
+    for (int i = 0; i < 10000; i++) {
+      slowest.end(start + i, random.nextInt(1000), Outcome.GOOD);
+    }
+    slowest.end(start + 10000, 5000, Outcome.BAD);
+    slowest.end(start + 10001, 4000, Outcome.GOOD);
+
+    List<SlowestOperations.Exemplar<Outcome>> current = slowest.current();
+    assertThat(current.stream().map(SlowestOperations.Exemplar::latency).collect(toList()), contains(5000L, 4000L, 999L));
+    assertThat(current.get(0).result(), is(Outcome.BAD));
+    assertThat(current.get(0).time(), is(start + 10000));
+    assertThat(current.get(0).thread(), is(Thread.currentThread().getName()));
+    assertThat(tags.get() < 100, is(true));
+    assertThat(slowest.previous(), empty());
+
+    SOURCE.advanceTime(10, SECONDS);
+    assertThat(slowest.current(), empty());
+    assertThat(slowest.previous().stream().map(SlowestOperations.Exemplar::latency).collect(toList()), contains(5000L, 4000L, 999L));
+
+    slowest.end(Time.time(), 1, Outcome.GOOD);
+    assertThat(slowest.current().size(), is(1));
+
+    SOURCE.advanceTime(30, SECONDS);
+    assertThat(slowest.previous(), empty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidCount() {
+    new SlowestOperations<Outcome>(0, 10, SECONDS);
+  }
+}
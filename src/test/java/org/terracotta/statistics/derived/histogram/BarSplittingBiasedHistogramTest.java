@@ -18,11 +18,15 @@ package org.terracotta.statistics.derived.histogram;
 
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
 import static java.lang.Math.nextUp;
 import static java.util.stream.IntStream.range;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
 
 public class BarSplittingBiasedHistogramTest {
 
@@ -47,4 +51,70 @@ public class BarSplittingBiasedHistogramTest {
     assertThat(bsbh.getQuantileBounds(0.0)[0], is(Double.NaN));
     assertThat(bsbh.getQuantileBounds(1.0)[1], is(Double.NaN));
   }
+
+  @Test
+  public void testCompactExpiryOfNegativeTimestamps() {
+    BarSplittingBiasedHistogram bsbh = new BarSplittingBiasedHistogram(1.7, 0.7, 4, 10, 0.01, 1_000_000, 1);
+    long time = -10_000_000_000L;
+    range(0, 100).forEach(i -> bsbh.event(i, time + i));
+
+    assertThat(bsbh.size(), is(100L));
+
+    bsbh.expire(time + 5_000_000);
+
+    assertThat(bsbh.size(), is(0L));
+    assertThat(bsbh.getQuantileBounds(0.0)[0], is(Double.NaN));
+  }
+
+  @Test
+  public void testBulkEventsMatchIndividualEvents() {
+    BarSplittingBiasedHistogram bulk = new BarSplittingBiasedHistogram(10, 100);
+    BarSplittingBiasedHistogram individual = new BarSplittingBiasedHistogram(10, 100);
+    range(0, 20).forEach(i -> {
+      bulk.event(i, i, 5);
+      range(0, 5).forEach(j -> individual.event(i, i));
+    });
+
+    assertThat(bulk.size(), is(individual.size()));
+    assertThat(bulk.getMinimum(), is(individual.getMinimum()));
+    assertThat(bulk.getMaximum(), is(individual.getMaximum()));
+
+    bulk.expire(200);
+    assertThat(bulk.size(), is(0L));
+  }
+
+  @Test
+  public void testSteadyStateEventsDoNotAllocate() {
+    assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    BarSplittingBiasedHistogram bsbh = new BarSplittingBiasedHistogram(10, 100000);
+    Random rndm = new Random(42);
+    double[] values = new double[1000000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = Math.abs(rndm.nextGaussian()) * 1000;
+    }
+
+    /*
+     * Storage is recycled between bars rather than reallocated, so allow a few cycles for it to settle.
+     */
+    long time = 0;
+    for (int c = 0; c < 5; c++) {
+      for (double value : values) {
+        bsbh.event(value, time++);
+      }
+    }
+
+    long thread = Thread.currentThread().getId();
+    long overhead = -(threads.getThreadAllocatedBytes(thread) - threads.getThreadAllocatedBytes(thread));
+    long before = threads.getThreadAllocatedBytes(thread);
+    for (double value : values) {
+      bsbh.event(value, time++);
+    }
+    long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+    assertThat(allocated, is(0L));
+  }
 }
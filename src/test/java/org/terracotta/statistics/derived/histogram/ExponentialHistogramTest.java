@@ -165,6 +165,216 @@ public class ExponentialHistogramTest {
     }
   }
 
+  @Test
+  public void testNextExpiryTracksOldestBox() {
+    ExponentialHistogram eh = new ExponentialHistogram(0.1, 100);
+    assertThat(eh.nextExpiry(), is(Long.MAX_VALUE));
+
+    eh.insert(10);
+    eh.insert(20);
+    assertThat(eh.nextExpiry(), is(110L));
+
+    assertThat(eh.expire(109), is(2L));
+    assertThat(eh.expire(110), is(1L));
+    assertThat(eh.nextExpiry(), is(120L));
+
+    assertThat(eh.expire(120), is(0L));
+    assertThat(eh.nextExpiry(), is(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testCompactMousaviZanioloCounting() {
+    ExponentialHistogram eh = new ExponentialHistogram(0.5, 35, 1);
+    inject(eh, 16, 25);
+    inject(eh, 8, 34);
+    inject(eh, 4, 39);
+    inject(eh, 4, 43);
+    inject(eh, 2, 48);
+    inject(eh, 2, 51);
+    inject(eh, 1, 53);
+    inject(eh, 1, 55);
+    assertThat(eh.toString(), is("count = 30 : [1@55], [1@53], [2@51], [2@48], [4@43], [4@39], [8@34], [16@25]"));
+
+    eh.insert(58);
+    eh.expire(58);
+    assertThat(eh.toString(), is("count = 31 : [1@58], [1@55], [1@53], [2@51], [2@48], [4@43], [4@39], [8@34], [16@25]"));
+
+    eh.insert(60);
+    eh.expire(60);
+    assertThat(eh.toString(), is("count = 20 : [1@60], [1@58], [2@55], [4@51], [8@43], [8@34]"));
+  }
+
+  @Test
+  public void testCompactQuantizesToGranularity() {
+    ExponentialHistogram eh = new ExponentialHistogram(0.5, 100, 10);
+    eh.insert(1234);
+    eh.insert(-1234);
+    assertThat(eh.toString(), is("count = 2 : [1@-1240], [1@1230]"));
+  }
+
+  @Test
+  public void testCompactExpiresNegativeTimestamps() {
+    ExponentialHistogram full = new ExponentialHistogram(0.01, 1_000_000);
+    ExponentialHistogram compact = new ExponentialHistogram(0.01, 1_000_000, 1);
+
+    long time = -10_000_000_000L;
+    for (int i = 0; i < 10; i++) {
+      full.insert(time + i);
+      compact.insert(time + i);
+    }
+    assertThat(compact.toString(), is(full.toString()));
+
+    assertThat(full.expire(time + 5_000_000), is(0L));
+    assertThat(compact.expire(time + 5_000_000), is(0L));
+  }
+
+  @Test
+  public void testCompactRebasesBackwardsForEarlierEvents() {
+    ExponentialHistogram full = new ExponentialHistogram(0.1, 1L << 30);
+    ExponentialHistogram compact = new ExponentialHistogram(0.1, 1L << 30, 1);
+
+    long time = 1L << 40;
+    for (long t : new long[] {time, time - (1L << 29), time - (3L << 30)}) {
+      full.insert(t);
+      compact.insert(t);
+      assertThat(compact.toString(), is(full.toString()));
+    }
+
+    full.insert(-time);
+    compact.insert(-time);
+    assertThat(compact.expire(time), is(full.expire(time)));
+    assertThat(compact.toString(), is(full.toString()));
+  }
+
+  @Test
+  public void testCompactRebasesOverLongTimeSpans() {
+    ExponentialHistogram full = new ExponentialHistogram(0.1, 1000);
+    ExponentialHistogram compact = new ExponentialHistogram(0.1, 1000, 1);
+
+    long time = 1L << 50;
+    for (int burst = 0; burst < 1000; burst++) {
+      time += 1_000_000_007L;
+      for (int i = 0; i < 100; i++) {
+        full.insert(time + i);
+        compact.insert(time + i);
+        full.expire(time + i);
+        compact.expire(time + i);
+        assertThat(compact.toString(), is(full.toString()));
+      }
+    }
+  }
+
+  @Test
+  public void testCompactSplitAndMerge() {
+    Random rndm = new Random(42);
+    ExponentialHistogram full = new ExponentialHistogram(0.1, Long.MAX_VALUE);
+    ExponentialHistogram compact = new ExponentialHistogram(0.1, 1L << 30, 1);
+    for (int i = 0; i < 10000; i++) {
+      long time = rndm.nextInt(1000000);
+      full.insert(time);
+      compact.insert(time);
+    }
+
+    ExponentialHistogram fullSplit = full.split(0.3);
+    ExponentialHistogram compactSplit = compact.split(0.3);
+    assertThat(compactSplit.toString(), is(fullSplit.toString()));
+    assertThat(compact.toString(), is(full.toString()));
+
+    full.merge(fullSplit);
+    compact.merge(compactSplit);
+    assertThat(compact.toString(), is(full.toString()));
+  }
+
+  @Test
+  public void testCoalescedInsertsCommitAsBulkInsert() {
+    ExponentialHistogram bulk = new ExponentialHistogram(0.1, 1000, 1);
+    ExponentialHistogram coalesced = new ExponentialHistogram(0.1, 1000, 1, 10);
+
+    bulk.insert(100, 50);
+    bulk.insert(110, 50);
+    for (int i = 0; i < 100; i++) {
+      coalesced.insert(100 + (i / 5));
+    }
+    coalesced.expire(110);
+    assertThat(coalesced.toString(), is(bulk.toString()));
+    assertThat(coalesced.count(), is(bulk.count()));
+  }
+
+  @Test
+  public void testFullResolutionCoalescedInsertsCommitAsBulkInsert() {
+    ExponentialHistogram bulk = new ExponentialHistogram(0.1, 1000);
+    ExponentialHistogram coalesced = ExponentialHistogram.coalescing(0.1, 1000, 10);
+
+    bulk.insert(Integer.MAX_VALUE * 10L, 50);
+    for (int i = 0; i < 50; i++) {
+      coalesced.insert(Integer.MAX_VALUE * 10L + (i / 5));
+    }
+    coalesced.expire(Integer.MAX_VALUE * 10L);
+    assertThat(coalesced.toString(), is(bulk.toString()));
+    assertThat(coalesced.count(), is(bulk.count()));
+  }
+
+  @Test
+  public void testToStringLeavesPendingEventsUncommitted() {
+    ExponentialHistogram eh = new ExponentialHistogram(0.1, 1000, 1, 10);
+    eh.insert(100);
+    eh.insert(105);
+
+    assertThat(eh.toString(), is("count = 2 : [2@100 pending]"));
+    assertThat(eh.toString(), is("count = 2 : [2@100 pending]"));
+    eh.insert(107);
+    eh.expire(107);
+    assertThat(eh.toString(), is("count = 3 : [1@100], [1@100], [1@100]"));
+  }
+
+  @Test
+  public void testCoalescedWindowAccuracy() {
+    long seed = System.nanoTime();
+    Random rndm = new Random(seed);
+    ExponentialHistogram eh = new ExponentialHistogram(0.1, 1000, 1, 10);
+    Deque<Long> exact = new ArrayDeque<>();
+
+    try {
+      for (long time = 0; time < 100000; time++) {
+        for (int i = rndm.nextInt(4); i > 0; i--) {
+          eh.insert(time);
+          exact.addLast(time);
+        }
+        while (!exact.isEmpty() && time - exact.peekFirst() >= 1000) {
+          exact.removeFirst();
+        }
+        if (time % 997 == 0) {
+          eh.expire(time);
+          assertThat((double) eh.count(), closeTo(exact.size(), 0.1 * exact.size() + 40));
+        }
+      }
+      eh.expire(200000);
+      assertThat(eh.count(), is(0L));
+    } catch (Throwable t) {
+      throw new AssertionError("Failed seed : " + seed, t);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsZeroQuantum() {
+    new ExponentialHistogram(0.1, 1000, 1, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCompactRejectsZeroGranularity() {
+    new ExponentialHistogram(0.1, 1000, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCompactRejectsOverlongWindow() {
+    new ExponentialHistogram(0.1, Long.MAX_VALUE, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeRejectsMismatchedGranularity() {
+    new ExponentialHistogram(0.1, 1000).merge(new ExponentialHistogram(0.1, 1000, 1));
+  }
+
   private static void inject(ExponentialHistogram eh, int count, int before) {
     for (int i = 0; i < count; i++) {
       eh.insert(before);
@@ -0,0 +1,86 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.histogram;
+
+import org.junit.Test;
+
+import static java.lang.Math.exp;
+import static java.util.stream.IntStream.range;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.hamcrest.number.OrderingComparison.greaterThan;
+import static org.hamcrest.number.OrderingComparison.greaterThanOrEqualTo;
+import static org.hamcrest.number.OrderingComparison.lessThanOrEqualTo;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+public class ForwardDecayHistogramTest {
+
+  @Test
+  public void testQuantileBoundsOfEmptyHistogram() {
+    ForwardDecayHistogram histogram = new ForwardDecayHistogram(0.01, 100);
+
+    assertArrayEquals(histogram.getQuantileBounds(0.0), new double[]{Double.NaN, Double.NaN}, 0.0);
+    assertArrayEquals(histogram.getQuantileBounds(1.0), new double[]{Double.NaN, Double.NaN}, 0.0);
+    assertThat(histogram.size(), is(0L));
+  }
+
+  @Test
+  public void testWeightsDecayWithMeanLifetime() {
+    ForwardDecayHistogram histogram = new ForwardDecayHistogram(0.01, 100);
+    range(0, 1000).forEach(i -> histogram.event(10.0, 0));
+    assertThat(histogram.size(), is(1000L));
+
+    histogram.expire(100);
+    assertThat(histogram.getSizeBounds()[0], closeTo(1000 * exp(-1), 1e-6));
+
+    histogram.expire(10000);
+    assertThat(histogram.size(), is(0L));
+    assertThat(histogram.getBuckets().isEmpty(), is(true));
+  }
+
+  @Test
+  public void testRecentEventsDominateQuantiles() {
+    ForwardDecayHistogram histogram = new ForwardDecayHistogram(0.01, 100);
+    range(0, 1000).forEach(i -> histogram.event(1000.0, 0));
+    range(0, 1000).forEach(i -> histogram.event(10.0, 500));
+
+    double[] median = histogram.getQuantileBounds(0.5);
+    assertThat(median[0], lessThanOrEqualTo(10.0));
+    assertThat(median[1], greaterThan(10.0));
+    double[] maximum = histogram.getQuantileBounds(1.0);
+    assertThat(maximum[0], lessThanOrEqualTo(1000.0));
+    assertThat(maximum[1], greaterThan(1000.0));
+  }
+
+  @Test
+  public void testRescalingPreservesDistribution() {
+    ForwardDecayHistogram histogram = new ForwardDecayHistogram(0.01, 10);
+    range(0, 100000).forEach(i -> histogram.event(i % 100, i));
+
+    assertThat(histogram.getSizeBounds()[0], closeTo(10.5, 0.1));
+    double[] maximum = histogram.getQuantileBounds(1.0);
+    assertThat(maximum[1], greaterThan(99.0));
+    double[] minimum = histogram.getQuantileBounds(0.0);
+    assertThat(minimum[0], greaterThanOrEqualTo(50.0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNonFiniteValuesAreRejected() {
+    new ForwardDecayHistogram(0.01, 100).event(Double.POSITIVE_INFINITY, 0);
+  }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.histogram;
+
+import java.util.stream.DoubleStream;
+
+import static java.lang.Math.pow;
+
+public class RelativeErrorHistogramFittingTest extends HistogramFittingTest {
+
+  public RelativeErrorHistogramFittingTest(long seed, double biasRange, int bars, double slopeError, double centroidError, double widthError) {
+    super(seed, biasRange, bars, slopeError, centroidError, widthError);
+  }
+
+  /*
+   * There is no bias to apply, instead the accuracy is chosen so that the (per sign) bucket limit spans a decade.
+   */
+  @Override
+  protected Histogram histogram(double bias, int bars, DoubleStream data) {
+    double gamma = pow(10, 1.0 / bars);
+    RelativeErrorHistogram histogram = new RelativeErrorHistogram((gamma - 1) / (gamma + 1), bars, Long.MAX_VALUE, 10);
+    data.forEach(d -> histogram.event(d, 0));
+    return histogram;
+  }
+}
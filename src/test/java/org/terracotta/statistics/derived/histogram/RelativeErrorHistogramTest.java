@@ -0,0 +1,164 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.histogram;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static java.lang.Math.nextUp;
+import static java.util.stream.IntStream.range;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.OrderingComparison.greaterThanOrEqualTo;
+import static org.hamcrest.number.OrderingComparison.lessThan;
+import static org.hamcrest.number.OrderingComparison.lessThanOrEqualTo;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+public class RelativeErrorHistogramTest {
+
+  @Test
+  public void testQuantileBoundsOfEmptyHistogram() {
+    RelativeErrorHistogram histogram = new RelativeErrorHistogram(0.01, 100);
+
+    assertArrayEquals(histogram.getQuantileBounds(0.0), new double[]{Double.NaN, Double.NaN}, 0.0);
+    assertArrayEquals(histogram.getQuantileBounds(1.0), new double[]{Double.NaN, Double.NaN}, 0.0);
+    assertThat(histogram.getBuckets().isEmpty(), is(true));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNonFiniteValuesAreRejected() {
+    new RelativeErrorHistogram(0.01, 100).event(Double.NaN, 0);
+  }
+
+  @Test
+  public void testExactExtremes() {
+    RelativeErrorHistogram histogram = new RelativeErrorHistogram(0.01, 100);
+    range(0, 100).forEach(i -> histogram.event(i, i));
+
+    assertThat(histogram.getQuantileBounds(0.0)[0], is(0.0));
+    assertThat(histogram.getQuantileBounds(1.0)[1], is(nextUp(99.0)));
+    assertThat(histogram.getMinimum(), is(0.0));
+    assertThat(histogram.getMaximum(), is(99.0));
+  }
+
+  @Test
+  public void testNegativeAndZeroValues() {
+    RelativeErrorHistogram histogram = new RelativeErrorHistogram(0.01, 100);
+    histogram.event(-10.0, 0);
+    histogram.event(0.0, 0);
+    histogram.event(10.0, 0);
+
+    double[] lowest = histogram.getQuantileBounds(0.0);
+    assertThat(lowest[0], is(-10.0));
+    assertThat(lowest[1], greaterThanOrEqualTo(nextUp(-10.0)));
+    double[] median = histogram.getQuantileBounds(0.5);
+    assertThat(median[0], lessThanOrEqualTo(0.0));
+    assertThat(median[1], greaterThanOrEqualTo(nextUp(0.0)));
+    assertThat(histogram.getQuantileBounds(1.0)[1], is(nextUp(10.0)));
+    assertThat(histogram.size(), is(3L));
+  }
+
+  @Test
+  public void testRelativeAccuracyOfQuantiles() {
+    double accuracy = 0.01;
+    Random rndm = new Random();
+    double[] data = rndm.doubles().map(d -> Math.exp(d * 20.0)).limit(100000).toArray();
+    RelativeErrorHistogram histogram = new RelativeErrorHistogram(accuracy, 100);
+    Arrays.stream(data).forEach(d -> histogram.event(d, 0));
+    Arrays.sort(data);
+
+    for (double q : new double[] {0.0, 0.1, 0.5, 0.9, 0.99, 0.999, 1.0}) {
+      double exact = data[(int) Math.max(0, Math.ceil(q * data.length) - 1)];
+      double[] bounds = histogram.getQuantileBounds(q);
+      assertThat(bounds[0], lessThanOrEqualTo(exact));
+      assertThat(bounds[1], greaterThanOrEqualTo(exact));
+      assertThat(bounds[1] / bounds[0], lessThanOrEqualTo((1 + accuracy) / (1 - accuracy) * (1 + 1e-12)));
+    }
+  }
+
+  @Test
+  public void testCollapsingPreservesHighQuantiles() {
+    RelativeErrorHistogram histogram = new RelativeErrorHistogram(0.01, 64, 100, 1);
+    range(0, 1000).forEach(i -> histogram.event(Math.pow(1.1, i - 500), 0));
+
+    assertThat(histogram.getBuckets().size(), lessThanOrEqualTo(64));
+    assertThat(histogram.size(), is(1000L));
+    assertThat(histogram.getQuantileBounds(0.0)[0], is(Math.pow(1.1, -500)));
+    double[] top = histogram.getQuantileBounds(1.0);
+    assertThat(top[1] / top[0], lessThanOrEqualTo(1.01 / 0.99));
+  }
+
+  @Test
+  public void testExpiryDropsWholeSlices() {
+    RelativeErrorHistogram histogram = new RelativeErrorHistogram(0.01, 100, 100, 10);
+    range(0, 100).forEach(i -> histogram.event(i, i));
+
+    histogram.expire(105);
+    assertThat(histogram.size(), is(100L));
+    assertArrayEquals(histogram.getSizeBounds(), new double[] {90, 100}, 0.0);
+    histogram.expire(110);
+    assertThat(histogram.size(), is(90L));
+    assertArrayEquals(histogram.getSizeBounds(), new double[] {90, 90}, 0.0);
+    assertThat(histogram.getQuantileBounds(0.0)[0], is(10.0));
+
+    histogram.expire(300);
+    assertThat(histogram.size(), is(0L));
+  }
+
+  @Test
+  public void testMergeIsExact() {
+    Random rndm = new Random();
+    RelativeErrorHistogram a = new RelativeErrorHistogram(0.02, 1000);
+    RelativeErrorHistogram b = new RelativeErrorHistogram(0.02, 1000);
+    RelativeErrorHistogram all = new RelativeErrorHistogram(0.02, 1000);
+    range(0, 10000).forEach(i -> {
+      double value = rndm.nextGaussian() * 1000;
+      (rndm.nextBoolean() ? a : b).event(value, i / 10);
+      all.event(value, i / 10);
+    });
+
+    a.merge(b);
+    assertThat(a.getBuckets().toString(), is(all.getBuckets().toString()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeOfIncompatibleHistogramsFails() {
+    new RelativeErrorHistogram(0.01, 1000).merge(new RelativeErrorHistogram(0.02, 1000));
+  }
+
+  @Test
+  public void testBinaryRoundTrip() {
+    Random rndm = new Random();
+    RelativeErrorHistogram histogram = new RelativeErrorHistogram(0.01, 256, 1000, 10);
+    range(0, 10000).forEach(i -> histogram.event(rndm.nextGaussian() * Math.exp(rndm.nextDouble() * 50), i / 10));
+
+    RelativeErrorHistogram copy = RelativeErrorHistogram.fromBytes(histogram.toBytes());
+    assertThat(copy.getBuckets().toString(), is(histogram.getBuckets().toString()));
+    assertThat(copy.size(), is(histogram.size()));
+    assertThat(histogram.toBytes().length, lessThan(10000 * Long.BYTES));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTruncatedEncodingIsRejected() {
+    RelativeErrorHistogram histogram = new RelativeErrorHistogram(0.01, 100);
+    histogram.event(1.0, 0);
+    byte[] bytes = histogram.toBytes();
+    RelativeErrorHistogram.fromBytes(Arrays.copyOf(bytes, bytes.length - 1));
+  }
+}
@@ -40,7 +40,7 @@ import static org.hamcrest.core.IsCollectionContaining.hasItems;
 import static org.hamcrest.number.OrderingComparison.lessThanOrEqualTo;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertThat;
-import static org.terracotta.statistics.derived.histogram.StripedHistogram.mergeBars;
+import static org.terracotta.statistics.derived.histogram.HistogramUnion.mergeBars;
 
 public class StripedHistogramTest {
 
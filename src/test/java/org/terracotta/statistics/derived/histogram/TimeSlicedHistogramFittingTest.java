@@ -0,0 +1,33 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.histogram;
+
+import java.util.stream.DoubleStream;
+
+public class TimeSlicedHistogramFittingTest extends HistogramFittingTest {
+
+  public TimeSlicedHistogramFittingTest(long seed, double biasRange, int bars, double slopeError, double centroidError, double widthError) {
+    super(seed, biasRange, bars, slopeError, centroidError, widthError);
+  }
+
+  @Override
+  protected Histogram histogram(double bias, int bars, DoubleStream data) {
+    TimeSlicedHistogram histogram = new TimeSlicedHistogram(bias, bars, Long.MAX_VALUE, 10);
+    data.forEach(d -> histogram.event(d, 0));
+    return histogram;
+  }
+}
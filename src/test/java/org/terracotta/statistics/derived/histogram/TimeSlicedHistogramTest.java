@@ -0,0 +1,103 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.histogram;
+
+import org.junit.Test;
+
+import static java.lang.Math.nextUp;
+import static java.util.stream.IntStream.range;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.OrderingComparison.greaterThanOrEqualTo;
+import static org.hamcrest.number.OrderingComparison.lessThanOrEqualTo;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+public class TimeSlicedHistogramTest {
+
+  @Test
+  public void testQuantileBoundsOfEmptyHistogram() {
+    TimeSlicedHistogram histogram = new TimeSlicedHistogram(0.7, 10, 100, 10);
+
+    assertArrayEquals(histogram.getQuantileBounds(0.0), new double[]{Double.NaN, Double.NaN}, 0.0);
+    assertArrayEquals(histogram.getQuantileBounds(1.0), new double[]{Double.NaN, Double.NaN}, 0.0);
+    assertThat(histogram.getMinimum(), is(Double.NaN));
+  }
+
+  @Test
+  public void testExpiryDropsWholeSlices() {
+    TimeSlicedHistogram histogram = new TimeSlicedHistogram(0.7, 10, 100, 10);
+    range(0, 100).forEach(i -> histogram.event(i, i));
+
+    assertThat(histogram.getQuantileBounds(0.0)[0], is(0.0));
+    assertThat(histogram.getQuantileBounds(1.0)[1], is(nextUp(99.0)));
+
+    histogram.expire(105);
+    assertThat(histogram.size(), is(100L));
+    assertArrayEquals(histogram.getSizeBounds(), new double[] {90, 100}, 0.0);
+
+    histogram.expire(110);
+    assertThat(histogram.size(), is(90L));
+    assertThat(histogram.getQuantileBounds(0.0)[0], is(10.0));
+    assertThat(histogram.getMinimum(), is(10.0));
+
+    histogram.expire(200);
+    assertThat(histogram.size(), is(0L));
+    assertThat(histogram.getQuantileBounds(1.0)[1], is(Double.NaN));
+  }
+
+  @Test
+  public void testStaleEventsAreDiscarded() {
+    TimeSlicedHistogram histogram = new TimeSlicedHistogram(0.7, 10, 100, 10);
+    histogram.event(1.0, 1000);
+    histogram.event(2.0, 890);
+
+    assertThat(histogram.size(), is(1L));
+  }
+
+  @Test
+  public void testStaleEventsInUnusedSlicesAreDiscarded() {
+    TimeSlicedHistogram histogram = new TimeSlicedHistogram(0.7, 10, 100, 10);
+    histogram.event(1.0, 1000);
+    //epoch 88 maps to a slot that has never been used
+    histogram.event(2.0, 880);
+
+    assertThat(histogram.size(), is(1L));
+  }
+
+  @Test
+  public void testQuantilesSpanSlices() {
+    TimeSlicedHistogram histogram = new TimeSlicedHistogram(0.7, 10, 1000, 10);
+    range(0, 1000).forEach(i -> histogram.event(i % 100, i));
+
+    assertThat(histogram.size(), is(1000L));
+    double[] median = histogram.getQuantileBounds(0.5);
+    assertThat(median[0], lessThanOrEqualTo(50.0));
+    assertThat(median[1], greaterThanOrEqualTo(49.0));
+    assertThat(histogram.getBuckets().stream().mapToDouble(Histogram.Bucket::count).sum(), is(1000.0));
+  }
+
+  @Test
+  public void testUnwindowedBarsAreExact() {
+    BarSplittingBiasedHistogram histogram = BarSplittingBiasedHistogram.unwindowed(0.7, 10);
+    range(0, 10000).forEach(i -> histogram.event(i, i));
+    histogram.expire(Long.MAX_VALUE);
+
+    assertThat(histogram.size(), is(10000L));
+    assertArrayEquals(histogram.getSizeBounds(), new double[] {10000, 10000}, 0.0);
+    assertThat(histogram.bars().stream().mapToLong(BarSplittingBiasedHistogram.Bar::count).sum(), is(10000L));
+  }
+}
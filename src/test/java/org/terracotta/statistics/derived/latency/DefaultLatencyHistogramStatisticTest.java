@@ -0,0 +1,60 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.latency;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class DefaultLatencyHistogramStatisticTest {
+
+  @Test
+  public void testStallIsRecordedOnceWithoutCorrection() {
+    DefaultLatencyHistogramStatistic statistic = new DefaultLatencyHistogramStatistic(0.7, 20, Duration.ofSeconds(60), () -> 0L);
+    for (int i = 0; i < 1000; i++) {
+      statistic.event(0, 1_000_000L);
+    }
+    statistic.event(0, 2_000_000_000L);
+
+    assertThat(statistic.count(), is(1001L));
+    assertThat((double) statistic.percentile(0.9), closeTo(1_000_000.0, 100_000.0));
+  }
+
+  @Test
+  public void testStallIsBackFilledWithCorrection() {
+    DefaultLatencyHistogramStatistic statistic = new DefaultLatencyHistogramStatistic(0.7, 20, Duration.ofSeconds(60), () -> 0L);
+    statistic.setExpectedInterval(Duration.ofMillis(2));
+    for (int i = 0; i < 1000; i++) {
+      statistic.event(0, 1_000_000L);
+    }
+    statistic.event(0, 2_000_000_000L);
+
+    assertThat(statistic.count(), is(2000L));
+    assertThat(statistic.maximum(), is(2_000_000_000L));
+    assertThat(statistic.percentile(0.75), greaterThan(500_000_000L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeExpectedInterval() {
+    new DefaultLatencyHistogramStatistic(0.7, 20, Duration.ofSeconds(60)).setExpectedInterval(Duration.ofMillis(-1));
+  }
+}
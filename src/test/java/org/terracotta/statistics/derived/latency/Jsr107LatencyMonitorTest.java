@@ -0,0 +1,84 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.latency;
+
+import org.junit.Test;
+import org.terracotta.util.Outcome;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class Jsr107LatencyMonitorTest {
+
+  @Test
+  public void testIntervalSnapshotResets() {
+    Jsr107LatencyMonitor<Outcome> monitor = new Jsr107LatencyMonitor<>(EnumSet.of(Outcome.GOOD), 1.0);
+    monitor.end(0, 2_000L, Outcome.GOOD);
+    monitor.end(0, 4_000L, Outcome.GOOD);
+    monitor.end(0, 8_000L, Outcome.BAD);
+
+    LatencySnapshot interval = monitor.intervalSnapshot();
+    assertThat(interval.count(), is(2L));
+    assertThat(interval.minimum(), is(2L));
+    assertThat(interval.maximum(), is(4L));
+    assertThat(monitor.snapshot().isEmpty(), is(true));
+    assertThat(monitor.average(), is(0.0));
+
+    monitor.end(0, 6_000L, Outcome.GOOD);
+    interval = monitor.intervalSnapshot();
+    assertThat(interval.count(), is(1L));
+    assertThat(interval.maximum(), is(6L));
+    assertThat(monitor.intervalSnapshot().minimum(), nullValue());
+  }
+
+  @Test
+  public void testIntervalSnapshotsLoseNoUpdates() throws Exception {
+    Jsr107LatencyMonitor<Outcome> monitor = new Jsr107LatencyMonitor<>(EnumSet.of(Outcome.GOOD), 1.0);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> writers = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        writers.add(executor.submit(() -> {
+          for (int j = 0; j < 250_000; j++) {
+            monitor.end(0, 1_000L, Outcome.GOOD);
+          }
+        }));
+      }
+
+      long count = 0;
+      while (!writers.stream().allMatch(Future::isDone)) {
+        count += monitor.intervalSnapshot().count();
+      }
+      for (Future<?> writer : writers) {
+        writer.get();
+      }
+      count += monitor.intervalSnapshot().count();
+
+      assertThat(count, is(1_000_000L));
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
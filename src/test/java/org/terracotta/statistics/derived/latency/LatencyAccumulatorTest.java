@@ -18,6 +18,12 @@ package org.terracotta.statistics.derived.latency;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.Assert.assertThat;
@@ -48,6 +54,33 @@ public class LatencyAccumulatorTest {
     assertThat(stats.minimum(), is(Long.MIN_VALUE));
   }
 
+  @Test
+  public void testCoordinatedOmissionCorrection() {
+    LatencyAccumulator stats = LatencyAccumulator.empty();
+
+    stats.accumulate(5L, 10L);
+    assertThat(stats.count(), is(1L));
+    stats.accumulate(100L, 0L);
+    assertThat(stats.count(), is(2L));
+
+    LatencyAccumulator corrected = LatencyAccumulator.empty();
+    corrected.accumulate(1000L, 100L);
+    LatencyAccumulator expected = LatencyAccumulator.empty();
+    for (long latency = 1000L; latency >= 100L; latency -= 100L) {
+      expected.accumulate(latency);
+    }
+    assertThat(corrected.snapshot().count(), is(expected.snapshot().count()));
+    assertThat(corrected.snapshot().total(), is(expected.snapshot().total()));
+    assertThat(corrected.minimum(), is(expected.minimum()));
+    assertThat(corrected.maximum(), is(expected.maximum()));
+
+    corrected = LatencyAccumulator.empty();
+    corrected.accumulate(1050L, 100L);
+    assertThat(corrected.count(), is(10L));
+    assertThat(corrected.minimum(), is(150L));
+    assertThat(corrected.total(), is(10L * (1050L + 150L) / 2));
+  }
+
   @Test
   public void testMaximumBehavior() {
     LatencyAccumulator stats = LatencyAccumulator.empty();
@@ -94,4 +127,46 @@ public class LatencyAccumulatorTest {
     assertThat(a3.minimum(), is(1L));
     assertThat(a3.maximum(), is(6L));
   }
+
+  @Test
+  public void testSnapshot() {
+    assertThat(LatencyAccumulator.empty().snapshot().isEmpty(), is(true));
+    assertThat(LatencyAccumulator.empty().snapshot().minimum(), nullValue());
+    assertThat(LatencyAccumulator.empty().snapshot().maximum(), nullValue());
+
+    LatencySnapshot snapshot = LatencyAccumulator.accumulator(1, 2, 3, 6).snapshot();
+    assertThat(snapshot.count(), is(4L));
+    assertThat(snapshot.total(), is(12L));
+    assertThat(snapshot.minimum(), is(1L));
+    assertThat(snapshot.maximum(), is(6L));
+    assertThat(snapshot.average(), is(3.0));
+  }
+
+  @Test
+  public void testConcurrentAccumulation() throws Exception {
+    LatencyAccumulator stats = LatencyAccumulator.empty();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        long offset = t * 100000L;
+        futures.add(executor.submit(() -> {
+          for (long i = 1; i <= 100000; i++) {
+            stats.accumulate(offset + i);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    LatencySnapshot snapshot = stats.snapshot();
+    assertThat(snapshot.count(), is(400000L));
+    assertThat(snapshot.total(), is(400000L * 400001L / 2));
+    assertThat(snapshot.minimum(), is(1L));
+    assertThat(snapshot.maximum(), is(400000L));
+  }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.latency;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.terracotta.statistics.MutableTimeSource;
+import org.terracotta.statistics.StatisticType;
+import org.terracotta.statistics.Time;
+import org.terracotta.statistics.TimeMocking;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.junit.Assert.assertThat;
+
+public class LatencyExponentialMovingAverageTest {
+
+  public static final MutableTimeSource SOURCE = TimeMocking.push(new MutableTimeSource());
+
+  @AfterClass
+  public static void installTimeSource() {
+    TimeMocking.pop();
+  }
+
+  @Test
+  public void testNoEventsAverage() {
+    LatencyExponentialMovingAverage average = LatencyExponentialMovingAverage.oneMinute();
+    assertThat(average.average(), is(Double.NaN));
+    assertThat(average.type(), is(StatisticType.GAUGE));
+  }
+
+  @Test
+  public void testConstantLatency() {
+    LatencyExponentialMovingAverage average = LatencyExponentialMovingAverage.oneMinute();
+    for (int i = 0; i < 100; i++) {
+      average.event(Time.time(), 1000L);
+      SOURCE.advanceTime(1, TimeUnit.SECONDS);
+    }
+    assertThat(average.average(), closeTo(1000.0, 0.001));
+
+    SOURCE.advanceTime(1, TimeUnit.HOURS);
+    assertThat(average.value(), closeTo(1000.0, 0.001));
+  }
+
+  @Test
+  public void testAverageMovesTowardsNewLatency() {
+    LatencyExponentialMovingAverage average = LatencyExponentialMovingAverage.oneMinute();
+    for (int i = 0; i < 600; i++) {
+      average.event(Time.time(), 1000L);
+      SOURCE.advanceTime(1, TimeUnit.SECONDS);
+    }
+    for (int i = 0; i < 60; i++) {
+      average.event(Time.time(), 2000L);
+      SOURCE.advanceTime(1, TimeUnit.SECONDS);
+    }
+    assertThat(average.average(), closeTo(2000.0 - 1000.0 * Math.exp(-1), 50.0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testZeroTickIsRejected() {
+    new LatencyExponentialMovingAverage(1, TimeUnit.SECONDS, 0, TimeUnit.SECONDS);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeTickIsRejected() {
+    new LatencyExponentialMovingAverage(1, TimeUnit.SECONDS, -1, TimeUnit.NANOSECONDS);
+  }
+}
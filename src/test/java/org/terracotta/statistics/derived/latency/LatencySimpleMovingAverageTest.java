@@ -94,4 +94,35 @@ public class LatencySimpleMovingAverageTest {
     assertThat(average.minimum(), nullValue());
     assertThat(average.maximum(), nullValue());
   }
+
+  @Test
+  public void testPartitionsAreReusedAcrossManyWindows() {
+    LatencySimpleMovingAverage average = new LatencySimpleMovingAverage(100, TimeUnit.MILLISECONDS);
+    for (long latency = 1; latency <= 1000; latency++) {
+      average.event(Time.time(), latency);
+      SOURCE.advanceTime(10, TimeUnit.MILLISECONDS);
+    }
+    assertThat(average.minimum(), is(991L));
+    assertThat(average.maximum(), is(1000L));
+    assertThat(average.average(), is(995.5));
+  }
+
+  @Test
+  public void testSnapshotCoversWindow() {
+    LatencySimpleMovingAverage average = new LatencySimpleMovingAverage(100, TimeUnit.MILLISECONDS);
+    average.event(Time.time(), 1L);
+    SOURCE.advanceTime(50, TimeUnit.MILLISECONDS);
+    average.event(Time.time(), 3L);
+    average.event(Time.time(), 8L);
+
+    LatencySnapshot snapshot = average.snapshot();
+    assertThat(snapshot.count(), is(3L));
+    assertThat(snapshot.total(), is(12L));
+    assertThat(snapshot.minimum(), is(1L));
+    assertThat(snapshot.maximum(), is(8L));
+    assertThat(snapshot.average(), is(4.0));
+
+    SOURCE.advanceTime(200, TimeUnit.MILLISECONDS);
+    assertThat(average.snapshot().isEmpty(), is(true));
+  }
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.latency;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class LatencyStatisticTest {
+
+  @Test
+  public void testDefaultSnapshotOfEmptyStatistic() {
+    LatencySnapshot snapshot = statistic(null, null, Double.NaN).snapshot();
+    assertThat(snapshot.isEmpty(), is(true));
+    assertThat(snapshot.minimum(), nullValue());
+    assertThat(snapshot.maximum(), nullValue());
+  }
+
+  @Test
+  public void testDefaultSnapshotHasUnknownCount() {
+    LatencySnapshot snapshot = statistic(1L, 5L, 2.5).snapshot();
+    assertThat(snapshot.isEmpty(), is(false));
+    assertThat(snapshot.minimum(), is(1L));
+    assertThat(snapshot.maximum(), is(5L));
+    assertThat(snapshot.average(), is(2.5));
+    assertThat(snapshot.count(), is(-1L));
+    assertThat(snapshot.total(), is(-1L));
+  }
+
+  private static LatencyStatistic statistic(Long minimum, Long maximum, double average) {
+    return new LatencyStatistic() {
+      @Override
+      public Long minimum() {
+        return minimum;
+      }
+
+      @Override
+      public Long maximum() {
+        return maximum;
+      }
+
+      @Override
+      public double average() {
+        return average;
+      }
+    };
+  }
+}
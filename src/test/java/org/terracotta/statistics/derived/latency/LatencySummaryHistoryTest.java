@@ -0,0 +1,119 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.latency;
+
+import org.junit.Test;
+import org.terracotta.statistics.Sample;
+import org.terracotta.statistics.StatisticType;
+import org.terracotta.statistics.Time;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.Assert.assertThat;
+
+public class LatencySummaryHistoryTest {
+
+  @Test
+  public void type() {
+    LatencySummaryHistory history = new LatencySummaryHistory(2, 400, MILLISECONDS, Time::absoluteTime);
+    assertThat(history.type(), equalTo(StatisticType.GAUGE));
+    assertThat(history.value(), nullValue());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidQuantile() {
+    new LatencySummaryHistory(2, 400, MILLISECONDS, Time::absoluteTime, 0.5, 1.5);
+  }
+
+  @Test
+  public void bucketsAreWithinRelativeError() {
+    for (long latency = 0; latency < 1_000_000; latency += 7) {
+      assertThat((double) LatencySummaryHistory.bucketValue(LatencySummaryHistory.bucket(latency)), closeTo(latency, latency / 32.0 + 0.5));
+    }
+    long large = Long.MAX_VALUE;
+    assertThat((double) LatencySummaryHistory.bucketValue(LatencySummaryHistory.bucket(large)), closeTo(large, large / 32.0));
+  }
+
+  @Test
+  public void windowsAreSummarizedOnClose() {
+    LatencySummaryHistory history = new LatencySummaryHistory(3, 50, MILLISECONDS, Time::absoluteTime, 0.5, 0.99);
+
+    long base = Time.time();
+    for (int window = 0; window < 10; window++) {
+      long start = base + MILLISECONDS.toNanos(100 * window);
+      for (int i = 1; i <= 1000; i++) {
+        history.event(start, i * (window + 1));
+      }
+    }
+
+    List<Sample<LatencySummary>> samples = history.history();
+    assertThat(samples.size(), equalTo(3));
+    assertThat(samples.get(1).getTimestamp() - samples.get(0).getTimestamp(), equalTo(100L));
+    for (int i = 0; i < 3; i++) {
+      int scale = 8 + i;
+      LatencySummary summary = samples.get(i).getSample();
+      assertThat(summary.count(), equalTo(1000L));
+      assertThat(summary.minimum(), equalTo((long) scale));
+      assertThat(summary.maximum(), equalTo(1000L * scale));
+      assertThat(summary.average(), closeTo(500.5 * scale, 0.0));
+      assertThat((double) summary.quantile(0.5), closeTo(500 * scale, 500 * scale / 32.0));
+      assertThat((double) summary.quantile(0.99), closeTo(990 * scale, 990 * scale / 32.0));
+    }
+    assertThat(samples.get(0).getSample(), equalTo(samples.get(0).getSample()));
+    assertThat(history.history(samples.get(2).getTimestamp() - 1).size(), equalTo(1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unsummarizedQuantile() {
+    LatencySummaryHistory history = new LatencySummaryHistory(2, 400, MILLISECONDS, Time::absoluteTime, 0.5);
+    history.event(Time.time(), 1);
+    history.history().get(0).getSample().quantile(0.9);
+  }
+
+  @Test
+  public void concurrentEventsAreAllCounted() throws Exception {
+    LatencySummaryHistory history = new LatencySummaryHistory(1000, 200, MILLISECONDS, Time::absoluteTime);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 500_000; i++) {
+            history.event(Time.time(), i);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    long count = history.history().stream().mapToLong(sample -> sample.getSample().count()).sum();
+    assertThat(count, equalTo(2_000_000L));
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived.latency;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.terracotta.statistics.MutableTimeSource;
+import org.terracotta.statistics.StatisticType;
+import org.terracotta.statistics.Table;
+import org.terracotta.statistics.Time;
+import org.terracotta.statistics.TimeMocking;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.junit.Assert.assertThat;
+
+public class LatencyThresholdCounterTest {
+
+  public static final MutableTimeSource SOURCE = TimeMocking.push(new MutableTimeSource());
+
+  @AfterClass
+  public static void installTimeSource() {
+    TimeMocking.pop();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsortedThresholds() {
+    new LatencyThresholdCounter(10L, 5L);
+  }
+
+  @Test
+  public void testBucketing() {
+    LatencyThresholdCounter counter = new LatencyThresholdCounter(10L, 100L, 1000L);
+
+    assertThat(counter.bucket(Long.MIN_VALUE), is(0));
+    assertThat(counter.bucket(10L), is(0));
+    assertThat(counter.bucket(11L), is(1));
+    assertThat(counter.bucket(100L), is(1));
+    assertThat(counter.bucket(1000L), is(2));
+    assertThat(counter.bucket(Long.MAX_VALUE), is(3));
+  }
+
+  @Test
+  public void testCumulativeCounts() {
+    LatencyThresholdCounter counter = new LatencyThresholdCounter(10L, 100L, 1000L);
+    for (long latency = 1; latency <= 2000; latency++) {
+      counter.event(latency, latency);
+    }
+
+    assertThat(counter.count(), is(2000L));
+    assertThat(counter.exceeding(10L), is(1990L));
+    assertThat(counter.exceeding(100L), is(1900L));
+    assertThat(counter.exceeding(1000L), is(1000L));
+    assertThat(counter.ratio(1000L), is(0.5));
+
+    Table table = counter.table().value();
+    assertThat(table.getRowCount(), is(3));
+    assertThat(table.<Long>getStatistic("100", "exceeding").get().value(), is(1900L));
+    assertThat(table.<Double>getStatistic("1000", "ratio").get().value(), is(0.5));
+    assertThat(counter.exceedingStatistic(10L).value(), is(1990L));
+    assertThat(counter.exceedingStatistic(10L).type(), is(StatisticType.COUNTER));
+    assertThat(counter.burnRate(1000L, 0.9), closeTo(5.0, 1e-9));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCumulativeCounterRejectsBurnRateWindow() {
+    new LatencyThresholdCounter(10L, 100L).burnRate(10L, 0.99, 1, SECONDS);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownThreshold() {
+    new LatencyThresholdCounter(10L, 100L).exceeding(50L);
+  }
+
+  @Test
+  public void testWindowedCountsAndBurnRate() {
+    LatencyThresholdCounter counter = new LatencyThresholdCounter(60, SECONDS, 6, 1_000_000L);
+
+    long start = Time.time();
+    for (int second = 0; second < 60; second++) {
+      long time = start + SECONDS.toNanos(second);
+      for (int i = 0; i < 100; i++) {
+        //1% slow for the first 50s, then 10% slow
+        counter.event(time, i < (second < 50 ? 1 : 10) ? 5_000_000L : 100_000L);
+      }
+    }
+    SOURCE.advanceTime(59, SECONDS);
+
+    assertThat(counter.count(), is(6000L));
+    assertThat(counter.exceeding(1_000_000L), is(150L));
+    assertThat(counter.burnRate(1_000_000L, 0.99, 60, SECONDS), closeTo(2.5, 1e-9));
+    assertThat(counter.burnRate(1_000_000L, 0.99, 9, SECONDS), closeTo(10.0, 1e-9));
+    assertThat(counter.burnRate(1_000_000L, 0.99), closeTo(2.5, 1e-9));
+    assertThat(counter.exceedingStatistic(1_000_000L).type(), is(StatisticType.GAUGE));
+    assertThat(counter.table().value().getStatistic("1000000", "exceeding").get().type(), is(StatisticType.GAUGE));
+
+    SOURCE.advanceTime(120, SECONDS);
+    assertThat(counter.count(), is(0L));
+    assertThat(counter.burnRate(1_000_000L, 0.99, 60, SECONDS), is(0.0));
+  }
+}
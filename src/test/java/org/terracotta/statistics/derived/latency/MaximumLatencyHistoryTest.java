@@ -21,11 +21,17 @@ import org.terracotta.statistics.Sample;
 import org.terracotta.statistics.StatisticType;
 import org.terracotta.statistics.Time;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import static java.lang.Thread.sleep;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertThat;
@@ -143,4 +149,77 @@ public class MaximumLatencyHistoryTest {
     assertThat(history.get(0).getTimestamp() - t2, lessThan(10L));
   }
 
+  @SuppressWarnings("unchecked")
+  @Test
+  public void ringKeepsMostRecentWindows() {
+    Consumer<LatencyPeriodAccumulator> sink = mock(Consumer.class);
+    MaximumLatencyHistory latencyHistory = new MaximumLatencyHistory(3, 50, MILLISECONDS, Time::absoluteTime, sink);
+
+    long base = Time.time();
+    for (int window = 0; window < 10; window++) {
+      long start = base + MILLISECONDS.toNanos(100 * window);
+      latencyHistory.event(start, window);
+      latencyHistory.event(start + 1, window * 10);
+    }
+
+    List<Sample<Long>> history = latencyHistory.history();
+    assertThat(history.size(), equalTo(3));
+    assertThat(history.get(0).getSample(), equalTo(70L));
+    assertThat(history.get(1).getSample(), equalTo(80L));
+    assertThat(history.get(2).getSample(), equalTo(90L));
+    assertThat(history.get(1).getTimestamp() - history.get(0).getTimestamp(), equalTo(100L));
+
+    verify(sink, times(7)).accept(any(LatencyPeriodAccumulator.class));
+  }
+
+  @Test
+  public void sinkReceivesWholeWindows() {
+    List<LatencyPeriodAccumulator> discarded = new ArrayList<>();
+    MaximumLatencyHistory latencyHistory = new MaximumLatencyHistory(3, 50, MILLISECONDS, Time::absoluteTime, discarded::add);
+
+    long base = Time.time();
+    for (int window = 0; window < 4; window++) {
+      long start = base + MILLISECONDS.toNanos(100 * window);
+      latencyHistory.event(start, window + 1);
+      latencyHistory.event(start + 1, window + 5);
+    }
+
+    assertThat(discarded.size(), equalTo(1));
+    assertThat(discarded.get(0).accumulator().count(), equalTo(2L));
+    assertThat(discarded.get(0).minimum(), equalTo(1L));
+    assertThat(discarded.get(0).maximum(), equalTo(5L));
+    assertThat(discarded.get(0).start(), equalTo(base));
+  }
+
+  @Test
+  public void concurrentEventsAreAllCounted() throws Exception {
+    AtomicLong sunk = new AtomicLong();
+    MaximumLatencyHistory latencyHistory = new MaximumLatencyHistory(3, 200, MILLISECONDS, Time::absoluteTime,
+        accumulator -> sunk.addAndGet(accumulator.accumulator().count()));
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 500_000; i++) {
+            latencyHistory.event(Time.time(), i);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    //push every real window out through the sink
+    long future = Time.time() + SECONDS.toNanos(10);
+    for (int i = 0; i < 3; i++) {
+      latencyHistory.event(future + SECONDS.toNanos(i), 0);
+    }
+    assertThat(sunk.get(), equalTo(2_000_000L));
+  }
+
 }